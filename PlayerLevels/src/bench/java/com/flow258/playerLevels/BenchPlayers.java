@@ -0,0 +1,70 @@
+package com.flow258.playerLevels;
+
+import org.bukkit.Material;
+import org.bukkit.Statistic;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Player;
+
+import java.lang.reflect.Proxy;
+import java.util.UUID;
+
+/**
+ * Stand-ins for {@link Player} so benchmarks run without a server.
+ */
+final class BenchPlayers {
+
+    private BenchPlayers() {
+    }
+
+    /**
+     * Returns a player whose statistics are derived from the statistic and its
+     * material or entity, so every read returns a stable, non-zero value.
+     */
+    static Player create(UUID uuid, String name) {
+        return (Player) Proxy.newProxyInstance(Player.class.getClassLoader(), new Class<?>[]{Player.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getUniqueId":
+                            return uuid;
+                        case "getName":
+                            return name;
+                        case "isOnline":
+                            return true;
+                        case "getStatistic":
+                            return statistic(args);
+                        case "hashCode":
+                            return uuid.hashCode();
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "BenchPlayer[" + name + "]";
+                        default:
+                            return defaultValue(method.getReturnType());
+                    }
+                });
+    }
+
+    private static int statistic(Object[] args) {
+        int value = ((Statistic) args[0]).ordinal() + 1;
+        if (args.length > 1) {
+            if (args[1] instanceof Material material) {
+                value = value * 31 + material.ordinal();
+            } else if (args[1] instanceof EntityType entityType) {
+                value = value * 31 + entityType.ordinal();
+            }
+        }
+        return value;
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) return null;
+        if (type == boolean.class) return false;
+        if (type == char.class) return '\0';
+        if (type == long.class) return 0L;
+        if (type == float.class) return 0f;
+        if (type == double.class) return 0d;
+        if (type == byte.class) return (byte) 0;
+        if (type == short.class) return (short) 0;
+        return 0;
+    }
+}
@@ -0,0 +1,50 @@
+package com.flow258.playerLevels;
+
+import org.bukkit.plugin.InvalidDescriptionException;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.mockbukkit.mockbukkit.ServerMock;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Runs the plugin on a MockBukkit server, so benchmarks go through the same
+ * objects as a real server: its storage, write-behind queue and placeholder expansion.
+ */
+final class BenchServer {
+
+    private BenchServer() {
+    }
+
+    /**
+     * Starts a server with the default config and waits until the plugin's database is connected.
+     */
+    static PlayerLevels start() throws IOException, InvalidDescriptionException, InterruptedException {
+        ServerMock server = MockBukkit.mock();
+        PlayerLevels plugin = MockBukkit.loadWith(PlayerLevels.class, loadDescription());
+        while (!plugin.isReady()) {
+            server.getScheduler().performOneTick();
+            Thread.sleep(50);
+        }
+        return plugin;
+    }
+
+    /**
+     * Disables the plugin, which flushes and closes its storage, and stops the server.
+     */
+    static void stop() {
+        MockBukkit.unmock();
+    }
+
+    // The plugin depends on PlaceholderAPI, which can't run on MockBukkit
+    private static PluginDescriptionFile loadDescription() throws IOException, InvalidDescriptionException {
+        try (InputStream in = BenchServer.class.getClassLoader().getResourceAsStream("plugin.yml")) {
+            if (in == null) throw new IOException("plugin.yml is not on the classpath");
+            String yaml = new String(in.readAllBytes(), StandardCharsets.UTF_8).replaceAll("(?m)^depend:.*$", "");
+            return new PluginDescriptionFile(new StringReader(yaml));
+        }
+    }
+}
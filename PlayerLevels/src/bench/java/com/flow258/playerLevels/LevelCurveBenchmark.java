@@ -0,0 +1,67 @@
+package com.flow258.playerLevels;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code calculateLevel} and {@code getXpForNextLevel}, which delegate to the
+ * active {@link LevelCurve}, at low, middle and high levels.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LevelCurveBenchmark {
+
+    @Param({"exponential", "linear", "polynomial"})
+    public String curve;
+
+    @Param({"5", "500", "5000"})
+    public int level;
+
+    private LevelCurve levelCurve;
+    private long xp;
+
+    @Setup
+    public void setUp() {
+        switch (curve) {
+            case "linear":
+                levelCurve = LevelCurve.linear(100, 50, LevelCurve.DEFAULT_MAX_LEVEL);
+                break;
+            case "polynomial":
+                levelCurve = LevelCurve.polynomial(100, 2.0, LevelCurve.DEFAULT_MAX_LEVEL);
+                break;
+            default:
+                levelCurve = LevelCurve.exponential(100, 1.5, LevelCurve.DEFAULT_MAX_LEVEL);
+                break;
+        }
+
+        // Halfway into the level, capped at what the curve can reach
+        int target = Math.min(level, levelCurve.getMaxLevel() - 1);
+        long start = levelCurve.getXpForLevel(target);
+        xp = start + (levelCurve.getXpForLevel(target + 1) - start) / 2;
+    }
+
+    @Benchmark
+    public int calculateLevel() {
+        return levelCurve.getLevel(xp);
+    }
+
+    @Benchmark
+    public long getXpForNextLevel() {
+        return levelCurve.getXpForNextLevel(xp);
+    }
+}
@@ -0,0 +1,83 @@
+package com.flow258.playerLevels;
+
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.InvalidDescriptionException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code onPlaceholderRequest} on the plugin's expansion: a cached player whose
+ * rendered values are current, a cached player whose XP just changed, and a
+ * player whose data is still loading and gets the loading text.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlaceholderBenchmark {
+
+    private PlayerLevels plugin;
+    private PlayerLevelExpansion expansion;
+    private Player cachedPlayer;
+    private Player changingPlayer;
+    private Player loadingPlayer;
+    private PlayerLevels.PlayerData changingData;
+    private long xp;
+
+    @Setup
+    public void setUp() throws IOException, InvalidDescriptionException, InterruptedException {
+        plugin = BenchServer.start();
+        expansion = new PlayerLevelExpansion(plugin);
+        PlayerCache cache = plugin.getPlayerCache();
+
+        cachedPlayer = BenchPlayers.create(UUID.randomUUID(), "Cached");
+        changingPlayer = BenchPlayers.create(UUID.randomUUID(), "Changing");
+        loadingPlayer = BenchPlayers.create(UUID.randomUUID(), "Loading");
+        xp = 123_456 * Xp.SCALE;
+        cache.put(new PlayerLevels.PlayerData(cachedPlayer.getUniqueId(), "Cached", xp, plugin.calculateLevelMillis(xp)));
+
+        changingData = new PlayerLevels.PlayerData(changingPlayer.getUniqueId(), "Changing", xp, plugin.calculateLevelMillis(xp));
+        cache.put(changingData);
+
+        // A load that never finishes keeps the player in the loading state
+        cache.get(loadingPlayer.getUniqueId(), uuid -> new CompletableFuture<>());
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchServer.stop();
+    }
+
+    @Benchmark
+    public String cachedHit() {
+        return expansion.onPlaceholderRequest(cachedPlayer, "progress_bar");
+    }
+
+    @Benchmark
+    public String cachedAfterXpChange() {
+        xp += 1;
+        changingData.setXp(xp, plugin.calculateLevelMillis(xp));
+        return expansion.onPlaceholderRequest(changingPlayer, "progress_bar");
+    }
+
+    @Benchmark
+    public String cacheMiss() {
+        return expansion.onPlaceholderRequest(loadingPlayer, "level");
+    }
+}
@@ -0,0 +1,95 @@
+package com.flow258.playerLevels;
+
+import org.bukkit.Statistic;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * The statistic work of {@code calculateAndUpdatePlayerXp}: reading a snapshot
+ * from a stubbed player, then evaluating it with and without a per-rule breakdown.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatisticRulesBenchmark {
+
+    @Param({"10", "100"})
+    public int rules;
+
+    private StatisticRules statisticRules;
+    private Player player;
+    private int[] values;
+    private long[] breakdown;
+
+    @Setup
+    public void setUp() {
+        YamlConfiguration config = new YamlConfiguration();
+
+        // Alternate untyped statistics and entity kills so both read paths are covered
+        List<Statistic> untyped = new ArrayList<>();
+        for (Statistic statistic : Statistic.values()) {
+            if (statistic.getType() == Statistic.Type.UNTYPED) {
+                untyped.add(statistic);
+            }
+        }
+        List<EntityType> living = new ArrayList<>();
+        for (EntityType entityType : EntityType.values()) {
+            if (entityType.isAlive()) {
+                living.add(entityType);
+            }
+        }
+
+        for (int i = 0; i < rules; i++) {
+            String key = "rule" + i;
+            if (i % 2 == 0 && i / 2 < untyped.size()) {
+                config.set(key + ".statistic", untyped.get(i / 2).name());
+            } else {
+                config.set(key + ".statistic", Statistic.KILL_ENTITY.name());
+                config.set(key + ".entity", living.get(i % living.size()).name());
+            }
+            config.set(key + ".xp-value", 0.5 + i);
+        }
+
+        statisticRules = StatisticRules.compile(config, Logger.getLogger("StatisticRulesBenchmark"));
+        player = BenchPlayers.create(UUID.randomUUID(), "Bench");
+        values = new int[statisticRules.getReadCount()];
+        breakdown = new long[statisticRules.getRuleCount()];
+        statisticRules.read(player, values);
+    }
+
+    @Benchmark
+    public long snapshotAndCompute() {
+        return StatisticSnapshot.take(player, statisticRules).computeXp();
+    }
+
+    @Benchmark
+    public long evaluate() {
+        return statisticRules.evaluate(values, null);
+    }
+
+    @Benchmark
+    public long evaluateWithBreakdown() {
+        return statisticRules.evaluate(values, breakdown);
+    }
+}
@@ -0,0 +1,142 @@
+package com.flow258.playerLevels;
+
+import org.bukkit.plugin.InvalidDescriptionException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Database paths against the plugin's SQLite file on a MockBukkit server: a
+ * {@link WriteBehindQueue} flush of updated players, and the top players query
+ * from SQL and from the in-memory leaderboard.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBenchmark {
+
+    private static final int FLUSH_SIZE = 500;
+
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    private PlayerLevels plugin;
+    private Path databaseFile;
+    private StorageExecutor storage;
+    private WriteBehindQueue queue;
+    private LevelCurve curve;
+    private UUID[] uuids;
+    private final LeaderboardIndex leaderboard = new LeaderboardIndex();
+
+    @Setup
+    public void setUp() throws IOException, InvalidDescriptionException, InterruptedException {
+        plugin = BenchServer.start();
+        databaseFile = plugin.getDataFolder().toPath().resolve("playerlevels.db");
+        storage = plugin.getStorage();
+        queue = plugin.getWriteBehindQueue();
+        curve = LevelCurve.exponential(100, 1.5, LevelCurve.DEFAULT_MAX_LEVEL);
+
+        uuids = new UUID[rows];
+        for (int i = 0; i < rows; i++) {
+            uuids[i] = UUID.randomUUID();
+        }
+
+        storage.write("bench_setup", pooled -> {
+            Connection connection = pooled.getConnection();
+            connection.setAutoCommit(false);
+            PreparedStatement insert = pooled.prepare(plugin.getUpsertSql());
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < rows; i++) {
+                long xp = random.nextLong(1_000_000 * Xp.SCALE);
+                int level = curve.getLevel(xp);
+                insert.setBytes(1, StorageExecutor.toBytes(uuids[i]));
+                insert.setString(2, "Player" + i);
+                insert.setLong(3, xp);
+                insert.setInt(4, level);
+                insert.addBatch();
+                leaderboard.update(uuids[i], "Player" + i, level, xp);
+
+                if ((i + 1) % 10_000 == 0) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+            connection.commit();
+            connection.setAutoCommit(true);
+            return null;
+        }).join();
+        leaderboard.setLoaded(true);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchServer.stop();
+        Files.deleteIfExists(databaseFile);
+        Files.deleteIfExists(Path.of(databaseFile + "-wal"));
+        Files.deleteIfExists(Path.of(databaseFile + "-shm"));
+    }
+
+    /**
+     * {@code FLUSH_SIZE} distinct players marked dirty and the flush that reaching
+     * {@code max-dirty} (500 by default) starts, reported per player.
+     */
+    @Benchmark
+    @OperationsPerInvocation(FLUSH_SIZE)
+    public long updatePlayerDataFlush() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(rows);
+        for (int i = 0; i < FLUSH_SIZE; i++) {
+            long xp = random.nextLong(1_000_000 * Xp.SCALE);
+            queue.markDirty(new PlayerLevels.PlayerData(uuids[(first + i) % rows], "Updated", xp, curve.getLevel(xp)));
+        }
+
+        // The writer runs tasks in order, so this returns once the flush has committed
+        return storage.write("bench_flushed", pooled -> queue.getTotalFlushed()).join();
+    }
+
+    @Benchmark
+    public List<PlayerLevels.PlayerData> getTopPlayersSql() {
+        return storage.read("top_players", pooled -> {
+            List<PlayerLevels.PlayerData> topPlayers = new ArrayList<>();
+            PreparedStatement statement = pooled.prepare(PlayerLevels.TOP_PLAYERS_SQL);
+            statement.setInt(1, 10);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    topPlayers.add(new PlayerLevels.PlayerData(StorageExecutor.toUuid(resultSet.getBytes("uuid")),
+                            resultSet.getString("name"), resultSet.getLong("xp"), resultSet.getInt("level")));
+                }
+            }
+            return topPlayers;
+        }).join();
+    }
+
+    @Benchmark
+    public List<LeaderboardIndex.Entry> getTopPlayersIndex() {
+        return leaderboard.getRange(0, 10);
+    }
+}
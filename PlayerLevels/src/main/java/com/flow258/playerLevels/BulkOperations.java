@@ -0,0 +1,487 @@
+package com.flow258.playerLevels;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+/**
+ * {@code /level export}, {@code /level import} and {@code /level reset all}.
+ * <p>
+ * None of them hold more than one batch of players in memory. Export streams
+ * {@code player_levels} through a forward-only cursor straight into a CSV file.
+ * Import reads the file line by line, and import and reset both write in
+ * transactions of {@code batch-size} players; reset walks the table in primary
+ * key order, one batch per transaction. Each batch goes into the leaderboard on
+ * the database writer, and into the cached players on the main thread, where
+ * their increments happen. A cached player whose values a save put back in
+ * between is saved again. Only one operation runs at a time.
+ * <p>
+ * Every write also stores the players' XP offsets. Reset derives each new offset
+ * from the old one, so the statistics XP players have now stops counting and the
+ * next recompute keeps them at level 1.
+ */
+class BulkOperations implements Runnable {
+
+    static final String EXPORT_FOLDER = "exports";
+
+    private static final AtomicBoolean RUNNING = new AtomicBoolean();
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final String HEADER = "uuid,name,xp,level,xp_offset";
+    private static final DateTimeFormatter FILE_DATE = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss", Locale.ROOT);
+    private static final int MAX_LOGGED_ERRORS = 10;
+
+    private static final String EXPORT_SQL = "SELECT uuid, name, xp, level, xp_offset FROM player_levels";
+    private static final String FIRST_CHUNK_SQL = "SELECT uuid, name, xp, xp_offset FROM player_levels ORDER BY uuid LIMIT ?";
+    private static final String NEXT_CHUNK_SQL = "SELECT uuid, name, xp, xp_offset FROM player_levels WHERE uuid > ? "
+            + "ORDER BY uuid LIMIT ?";
+
+    // An imported row without an offset column keeps the stored offset
+    private static final long KEEP_OFFSET = Long.MIN_VALUE;
+
+    private enum Kind {
+        EXPORT("Export"), IMPORT("Import"), RESET("Reset");
+
+        private final String label;
+
+        Kind(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * A player to store, with the statistics XP that no longer counts for them.
+     */
+    record Row(UUID uuid, String name, long xp, long xpOffset) {
+    }
+
+    private final PlayerLevels plugin;
+    private final CommandSender sender;
+    private final Kind kind;
+    private final Path file;
+    private final List<StatisticSnapshot> online;
+    private final int batchSize;
+
+    private List<Row> batch;
+    private long processed;
+    private long skipped;
+    private long startNanos;
+    private long lastProgressNanos;
+
+    private BulkOperations(PlayerLevels plugin, CommandSender sender, Kind kind, Path file,
+                           List<StatisticSnapshot> online) {
+        this.plugin = plugin;
+        this.sender = sender;
+        this.kind = kind;
+        this.file = file;
+        this.online = online;
+
+        ConfigurationSection config = plugin.getConfig().getConfigurationSection("settings.bulk");
+        this.batchSize = config != null ? Math.max(100, config.getInt("batch-size", 5000)) : 5000;
+        this.batch = new ArrayList<>(batchSize);
+    }
+
+    /**
+     * Writes every player to {@code fileName} in the exports folder, or to a file
+     * named after the current time. Returns false if an operation is already running.
+     */
+    static boolean startExport(PlayerLevels plugin, CommandSender sender, String fileName) {
+        String name = fileName != null ? fileName : "levels-" + LocalDateTime.now().format(FILE_DATE) + ".csv";
+        return start(plugin, sender, Kind.EXPORT, name, List.of());
+    }
+
+    /**
+     * Reads players from {@code fileName} in the exports folder and saves them,
+     * replacing their stored XP, and their XP offset if the file has one.
+     * Returns false if an operation is already running.
+     */
+    static boolean startImport(PlayerLevels plugin, CommandSender sender, String fileName) {
+        return start(plugin, sender, Kind.IMPORT, fileName, List.of());
+    }
+
+    /**
+     * Puts every stored player back to level 1. Must be called on the main thread,
+     * which reads the online players' statistics. Returns false if an operation is
+     * already running.
+     */
+    static boolean startReset(PlayerLevels plugin, CommandSender sender) {
+        if (RUNNING.get()) return false;
+
+        List<StatisticSnapshot> online = new ArrayList<>();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            online.add(plugin.snapshotStatistics(player));
+        }
+        return start(plugin, sender, Kind.RESET, null, online);
+    }
+
+    private static boolean start(PlayerLevels plugin, CommandSender sender, Kind kind, String fileName,
+                                 List<StatisticSnapshot> online) {
+        Path file = null;
+        if (fileName != null) {
+            file = resolve(plugin, fileName);
+            if (file == null) {
+                sender.sendMessage(ChatColor.RED + "File names may not contain a path: " + fileName);
+                return true;
+            }
+            if (kind == Kind.IMPORT && !Files.isRegularFile(file)) {
+                sender.sendMessage(ChatColor.RED + "File not found: " + EXPORT_FOLDER + "/" + fileName);
+                return true;
+            }
+        }
+
+        if (!RUNNING.compareAndSet(false, true)) {
+            return false;
+        }
+
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, new BulkOperations(plugin, sender, kind, file, online));
+        return true;
+    }
+
+    // Keeps every file inside the exports folder
+    private static Path resolve(PlayerLevels plugin, String fileName) {
+        Path folder = plugin.getDataFolder().toPath().resolve(EXPORT_FOLDER);
+        Path file = folder.resolve(fileName).normalize();
+        return folder.equals(file.getParent()) ? file : null;
+    }
+
+    @Override
+    public void run() {
+        startNanos = System.nanoTime();
+        lastProgressNanos = startNanos;
+        try {
+            switch (kind) {
+                case EXPORT -> export();
+                case IMPORT -> importFile();
+                case RESET -> reset();
+            }
+
+            double seconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+            sender.sendMessage(ChatColor.GREEN + kind.label + " finished: " + processed + " players"
+                    + (skipped > 0 ? ", " + skipped + " lines skipped" : "")
+                    + (file != null ? " (" + EXPORT_FOLDER + "/" + file.getFileName() + ")" : "")
+                    + " in " + String.format("%.1f", seconds) + "s");
+        } catch (Exception e) {
+            Throwable cause = e instanceof CompletionException || e instanceof UncheckedIOException ? e.getCause() : e;
+            plugin.getLogger().log(Level.SEVERE, kind.label + " failed after " + processed + " players", cause);
+            sender.sendMessage(ChatColor.RED + kind.label + " failed after " + processed + " players: "
+                    + cause.getMessage());
+        } finally {
+            RUNNING.set(false);
+        }
+    }
+
+    private void export() throws IOException {
+        // Pending saves first, so the file matches what players see
+        WriteBehindQueue writeBehind = plugin.getWriteBehindQueue();
+        if (writeBehind != null) {
+            writeBehind.flush().join();
+        }
+
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writer.write(HEADER);
+                writer.newLine();
+
+                PlayerJournal journal = plugin.getJournal();
+                if (journal != null) {
+                    journal.forEach(record -> writeLine(writer, record.uuid(), record.name(), record.xp(), record.level(),
+                            record.xpOffset()));
+                } else {
+                    StorageExecutor storage = plugin.getStorage();
+                    storage.read("bulk_export", pooled -> exportRows(pooled, storage.isSqlite(), writer)).join();
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            // Only left behind if the export failed
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Void exportRows(StorageExecutor.PooledConnection pooled, boolean sqlite, BufferedWriter writer)
+            throws SQLException {
+        try (Statement statement = pooled.getConnection().createStatement(ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY)) {
+            // Connector/J only streams instead of buffering the whole result for this fetch size
+            statement.setFetchSize(sqlite ? batchSize : Integer.MIN_VALUE);
+            try (ResultSet resultSet = statement.executeQuery(EXPORT_SQL)) {
+                while (resultSet.next()) {
+                    writeLine(writer, StorageExecutor.toUuid(resultSet.getBytes("uuid")), resultSet.getString("name"),
+                            resultSet.getLong("xp"), resultSet.getInt("level"), resultSet.getLong("xp_offset"));
+                }
+            }
+        }
+        return null;
+    }
+
+    // XP is written in points, so the file does not depend on the storage unit
+    private void writeLine(BufferedWriter writer, UUID uuid, String name, long xp, int level, long xpOffset) {
+        try {
+            writer.write(uuid + "," + name + "," + Xp.toDecimal(xp) + "," + level + "," + Xp.toDecimal(xpOffset));
+            writer.newLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        processed++;
+        reportProgress();
+    }
+
+    private void importFile() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || (lineNumber == 1 && line.startsWith("uuid"))) continue;
+
+                Row row = parse(line);
+                if (row == null) {
+                    if (skipped++ < MAX_LOGGED_ERRORS) {
+                        plugin.getLogger().warning("Skipping line " + lineNumber + " of " + file.getFileName()
+                                + ": " + line);
+                    }
+                    continue;
+                }
+                add("bulk_import", row);
+            }
+        }
+        writeBatch("bulk_import", takeBatch());
+    }
+
+    // uuid,name,xp[,level[,xp_offset]]; the level is recomputed from the XP
+    private static Row parse(String line) {
+        String[] fields = line.split(",", -1);
+        if (fields.length < 3 || fields[1].isBlank()) return null;
+
+        try {
+            long xp = Xp.parse(fields[2].trim());
+            if (xp < 0) return null;
+            long xpOffset = fields.length > 4 && !fields[4].isBlank() ? Xp.parse(fields[4].trim()) : KEEP_OFFSET;
+            return new Row(UUID.fromString(fields[0].trim()), fields[1].trim(), xp, xpOffset);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private void add(String query, Row row) {
+        batch.add(row);
+        if (batch.size() == batchSize) {
+            writeBatch(query, takeBatch());
+        }
+    }
+
+    private List<Row> takeBatch() {
+        List<Row> full = batch;
+        batch = new ArrayList<>(batchSize);
+        return full;
+    }
+
+    private void writeBatch(String query, List<Row> rows) {
+        if (rows.isEmpty()) return;
+
+        plugin.getStorage().write(query, pooled -> {
+            store(plugin, pooled, rows);
+            return null;
+        }).join();
+        processed += rows.size();
+        reportProgress();
+    }
+
+    private void reset() {
+        long xp = plugin.getXpForLevelMillis(1);
+
+        // Pending saves first, so the stored XP the new offsets are derived from is current
+        WriteBehindQueue writeBehind = plugin.getWriteBehindQueue();
+        if (writeBehind != null) {
+            writeBehind.flush().join();
+        }
+
+        // Online players' statistics are newer than their stored XP
+        Set<UUID> skip = new HashSet<>();
+        for (StatisticSnapshot snapshot : online) {
+            skip.add(snapshot.getUuid());
+            add("bulk_reset", new Row(snapshot.getUuid(), snapshot.getName(), xp, Xp.add(snapshot.computeXp(), -xp)));
+        }
+        writeBatch("bulk_reset", takeBatch());
+
+        PlayerJournal journal = plugin.getJournal();
+        if (journal != null) {
+            // The journal is already in memory; only the batch being written is extra
+            journal.forEach(record -> {
+                if (!skip.contains(record.uuid())) {
+                    add("bulk_reset", resetRow(record.uuid(), record.name(), record.xp(), record.xpOffset(), xp));
+                }
+            });
+            writeBatch("bulk_reset", takeBatch());
+            return;
+        }
+
+        // Keyset pagination: each batch starts after the last key of the previous one
+        StorageExecutor storage = plugin.getStorage();
+        byte[] after = null;
+        while (true) {
+            byte[] from = after;
+            List<UUID> chunk = storage.write("bulk_reset", pooled -> {
+                PreparedStatement select = pooled.prepare(from == null ? FIRST_CHUNK_SQL : NEXT_CHUNK_SQL);
+                if (from == null) {
+                    select.setInt(1, batchSize);
+                } else {
+                    select.setBytes(1, from);
+                    select.setInt(2, batchSize);
+                }
+
+                List<UUID> keys = new ArrayList<>(batchSize);
+                List<Row> rows = new ArrayList<>(batchSize);
+                try (ResultSet resultSet = select.executeQuery()) {
+                    while (resultSet.next()) {
+                        UUID uuid = StorageExecutor.toUuid(resultSet.getBytes("uuid"));
+                        keys.add(uuid);
+                        if (!skip.contains(uuid)) {
+                            rows.add(resetRow(uuid, resultSet.getString("name"), resultSet.getLong("xp"),
+                                    resultSet.getLong("xp_offset"), xp));
+                        }
+                    }
+                }
+                store(plugin, pooled, rows);
+                processed += rows.size();
+                return keys;
+            }).join();
+
+            reportProgress();
+            if (chunk.size() < batchSize) return;
+            after = StorageExecutor.toBytes(chunk.get(chunk.size() - 1));
+        }
+    }
+
+    // The stored XP is what the statistics gave after the old offset, so the difference to the target moves into it
+    private static Row resetRow(UUID uuid, String name, long storedXp, long storedOffset, long xp) {
+        return new Row(uuid, name, xp, Xp.add(storedOffset, Xp.add(storedXp, -xp)));
+    }
+
+    /**
+     * Saves the players in one transaction, then updates the leaderboard, and the
+     * cached players on the main thread. Runs on the database writer. Also used by
+     * {@code /level set}.
+     */
+    static void store(PlayerLevels plugin, StorageExecutor.PooledConnection pooled, List<Row> rows)
+            throws SQLException {
+        if (rows.isEmpty()) return;
+        rows = withStoredOffsets(plugin, pooled, rows);
+
+        long[] versions;
+        PlayerJournal journal = plugin.getJournal();
+        if (journal != null) {
+            versions = null;
+            List<PlayerJournal.Record> records = new ArrayList<>(rows.size());
+            for (Row row : rows) {
+                records.add(new PlayerJournal.Record(row.uuid(), row.name(), row.xp(), plugin.calculateLevelMillis(row.xp()),
+                        row.xpOffset()));
+            }
+            try {
+                journal.appendRecords(records);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else {
+            versions = writeRows(plugin, pooled, rows);
+        }
+
+        List<PlayerLevels.StoredXp> stored = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            Row row = rows.get(i);
+            stored.add(new PlayerLevels.StoredXp(row.uuid(), row.name(), row.xp(), row.xpOffset(),
+                    versions != null ? versions[i] : -1));
+        }
+        plugin.applyStoredXp(stored);
+    }
+
+    // Fills in the stored offset of imported rows that came without one
+    private static List<Row> withStoredOffsets(PlayerLevels plugin, StorageExecutor.PooledConnection pooled,
+                                               List<Row> rows) throws SQLException {
+        if (rows.stream().noneMatch(row -> row.xpOffset() == KEEP_OFFSET)) return rows;
+
+        long[] stored = plugin.readXpOffsets(pooled, rows.stream().map(Row::uuid).toList());
+        List<Row> resolved = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            Row row = rows.get(i);
+            resolved.add(row.xpOffset() == KEEP_OFFSET ? new Row(row.uuid(), row.name(), row.xp(), stored[i]) : row);
+        }
+        return resolved;
+    }
+
+    /**
+     * Upserts the players in one transaction and returns the new versions of the cached ones.
+     */
+    private static long[] writeRows(PlayerLevels plugin, StorageExecutor.PooledConnection pooled, List<Row> rows)
+            throws SQLException {
+        Connection connection = pooled.getConnection();
+        String sql = PlayerLevels.getOffsetUpsertSql(plugin.getStorage().getStorageType());
+        PreparedStatement statement = pooled.prepare(sql);
+        NetworkSync network = plugin.getNetworkSync();
+        connection.setAutoCommit(false);
+        try {
+            for (Row row : rows) {
+                statement.setBytes(1, StorageExecutor.toBytes(row.uuid()));
+                statement.setString(2, row.name());
+                statement.setLong(3, row.xp());
+                statement.setInt(4, plugin.calculateLevelMillis(row.xp()));
+                statement.setLong(5, row.xpOffset());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+
+            List<UUID> uuids = rows.stream().map(Row::uuid).toList();
+            if (network != null) {
+                network.recordChanges(pooled, uuids);
+            }
+            long[] versions = plugin.readCachedVersions(pooled, uuids);
+            connection.commit();
+            return versions;
+        } catch (SQLException e) {
+            statement.clearBatch();
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private void reportProgress() {
+        long now = System.nanoTime();
+        if (now - lastProgressNanos < PROGRESS_INTERVAL_NANOS) return;
+        lastProgressNanos = now;
+
+        double seconds = (now - startNanos) / 1_000_000_000.0;
+        sender.sendMessage(ChatColor.YELLOW + kind.label + ": " + processed + " players ("
+                + String.format("%.0f", processed / Math.max(seconds, 0.001)) + " players/sec)");
+    }
+}
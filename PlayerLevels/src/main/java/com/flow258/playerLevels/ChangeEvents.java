@@ -0,0 +1,102 @@
+package com.flow258.playerLevels;
+
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.PluginManager;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fires {@link PlayerXpChangeEvent} and {@link PlayerLevelChangeEvent}, and
+ * sends the {@code messages.level-up} message.
+ * <p>
+ * Values change on any thread and, with incremental XP, many times per tick, so
+ * changes are merged per player into one pending change that keeps the values
+ * from before the first change and after the last. Every tick the main thread
+ * fires the events of at most {@code per-tick} players, so a bulk operation
+ * cannot stall the server; a change that nets out to nothing fires nothing.
+ * Bulk writes such as a rebuild, import, reset or curve change only queue
+ * changes for cached players, so the pending map stays as small as the cache.
+ */
+final class ChangeEvents implements Runnable {
+
+    private record Change(String name, long oldXp, int oldLevel, long xp, int level) {
+
+        private Change then(Change next) {
+            return new Change(next.name, oldXp, oldLevel, next.xp, next.level);
+        }
+    }
+
+    private final PlayerLevels plugin;
+    private final Map<UUID, Change> pending = new ConcurrentHashMap<>();
+    private volatile int perTick = 1000;
+
+    ChangeEvents(PlayerLevels plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Applies {@code settings.events}.
+     */
+    void configure(ConfigurationSection config) {
+        perTick = config != null ? Math.max(1, config.getInt("per-tick", 1000)) : 1000;
+    }
+
+    /**
+     * Queues the events for a change of the player's values. Safe to call from any thread.
+     */
+    void changed(UUID uuid, String name, long oldXp, int oldLevel, long xp, int level) {
+        if (oldXp == xp && oldLevel == level) return;
+        pending.merge(uuid, new Change(name, oldXp, oldLevel, xp, level), Change::then);
+    }
+
+    /**
+     * Fires the pending events of up to {@code per-tick} players. Runs every tick.
+     */
+    @Override
+    public void run() {
+        if (pending.isEmpty()) return;
+
+        int budget = perTick;
+        Iterator<UUID> players = pending.keySet().iterator();
+        while (budget > 0 && players.hasNext()) {
+            UUID uuid = players.next();
+            Change change = pending.remove(uuid);
+            if (change == null) continue;
+
+            fire(uuid, change);
+            budget--;
+        }
+    }
+
+    private void fire(UUID uuid, Change change) {
+        PluginManager pluginManager = Bukkit.getPluginManager();
+        if (change.xp() != change.oldXp()) {
+            pluginManager.callEvent(new PlayerXpChangeEvent(uuid, change.name(), change.oldXp(), change.xp()));
+        }
+        if (change.level() == change.oldLevel()) return;
+
+        pluginManager.callEvent(new PlayerLevelChangeEvent(uuid, change.name(), change.oldLevel(), change.level()));
+        if (change.level() > change.oldLevel()) {
+            sendLevelUp(uuid, change.level());
+        }
+    }
+
+    private void sendLevelUp(UUID uuid, int level) {
+        String message = plugin.getMessage("level-up");
+        Player player = Bukkit.getPlayer(uuid);
+        if (message == null || message.isEmpty() || player == null) return;
+
+        String prefix = plugin.getMessage("prefix");
+        player.sendMessage((prefix != null ? prefix : "")
+                + message.replace("%level%", Integer.toString(level)).replace("%player%", player.getName()));
+    }
+
+    int getPendingCount() {
+        return pending.size();
+    }
+}
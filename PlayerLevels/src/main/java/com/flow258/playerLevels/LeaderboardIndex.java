@@ -0,0 +1,351 @@
+package com.flow258.playerLevels;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory ranking of every known player, ordered by level, then XP, then UUID.
+ * <p>
+ * Backed by an indexable skip list: each forward link also stores how many
+ * players it skips, so rank lookups, rank-to-player lookups and updates are all
+ * O(log n). Updating a player reuses their node, so steady-state updates do not
+ * allocate.
+ */
+final class LeaderboardIndex {
+
+    private static final int MAX_HEIGHT = 32;
+
+    /**
+     * One ranked player. Values are only changed while the node is unlinked.
+     */
+    static final class Entry {
+        private final UUID uuid;
+        private String name;
+        private int level;
+        private long xp;
+        private final Entry[] next;
+        private final int[] span;
+
+        private Entry(UUID uuid, int height) {
+            this.uuid = uuid;
+            this.next = new Entry[height];
+            this.span = new int[height];
+        }
+
+        UUID getUuid() {
+            return uuid;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        int getLevel() {
+            return level;
+        }
+
+        long getXp() {
+            return xp;
+        }
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Entry head = new Entry(null, MAX_HEIGHT);
+    private final Map<UUID, Entry> entries = new HashMap<>();
+    private final Entry[] update = new Entry[MAX_HEIGHT];
+    private final int[] rankAt = new int[MAX_HEIGHT];
+    private int height = 1;
+    private volatile boolean loaded;
+
+    /**
+     * Adds the player or moves them to their new position.
+     */
+    void update(UUID uuid, String name, int level, long xp) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = entries.get(uuid);
+            if (entry == null) {
+                entry = new Entry(uuid, randomHeight());
+                entries.put(uuid, entry);
+            } else if (entry.level == level && entry.xp == xp) {
+                entry.name = name;
+                return;
+            } else {
+                unlink(entry);
+            }
+
+            entry.name = name;
+            entry.level = level;
+            entry.xp = xp;
+            link(entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds the player only if they are not ranked yet. Used for the initial load so
+     * it cannot overwrite newer values from live updates.
+     */
+    void addIfAbsent(UUID uuid, String name, int level, long xp) {
+        lock.writeLock().lock();
+        try {
+            if (!entries.containsKey(uuid)) {
+                update(uuid, name, level, xp);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(UUID uuid) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = entries.remove(uuid);
+            if (entry != null) {
+                unlink(entry);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < MAX_HEIGHT; i++) {
+                head.next[i] = null;
+                head.span[i] = 0;
+            }
+            entries.clear();
+            height = 1;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the player's 1-based rank, or 0 if they are not ranked.
+     */
+    int getRank(UUID uuid) {
+        lock.readLock().lock();
+        try {
+            Entry entry = entries.get(uuid);
+            if (entry == null) return 0;
+
+            int rank = 0;
+            Entry x = head;
+            for (int i = height - 1; i >= 0; i--) {
+                while (x.next[i] != null && compare(x.next[i], entry) <= 0) {
+                    rank += x.span[i];
+                    x = x.next[i];
+                }
+                if (x == entry) {
+                    return rank;
+                }
+            }
+            return 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the player's last known name, or null if they are not ranked.
+     */
+    String getName(UUID uuid) {
+        lock.readLock().lock();
+        try {
+            Entry entry = entries.get(uuid);
+            return entry != null ? entry.name : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a copy of the player's entry, or null if they are not ranked.
+     */
+    Entry get(UUID uuid) {
+        lock.readLock().lock();
+        try {
+            Entry entry = entries.get(uuid);
+            return entry != null ? snapshot(entry) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the share of ranked players below this player, from 0 to 100,
+     * or -1 if they are not ranked.
+     */
+    double getPercentile(UUID uuid) {
+        int rank = getRank(uuid);
+        int size = size();
+        if (rank == 0 || size == 0) return -1;
+        return (size - rank) * 100.0 / size;
+    }
+
+    /**
+     * Returns the player at the given 1-based rank, or null if there is none.
+     */
+    Entry getByRank(int rank) {
+        lock.readLock().lock();
+        try {
+            Entry entry = findByRank(rank);
+            return entry != null ? snapshot(entry) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns up to {@code count} players starting after {@code offset} ranked players.
+     */
+    List<Entry> getRange(int offset, int count) {
+        lock.readLock().lock();
+        try {
+            List<Entry> result = new ArrayList<>(Math.min(count, entries.size()));
+            Entry x = findByRank(offset + 1);
+            while (x != null && result.size() < count) {
+                result.add(snapshot(x));
+                x = x.next[0];
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    void setLoaded(boolean loaded) {
+        this.loaded = loaded;
+    }
+
+    private Entry findByRank(int rank) {
+        if (rank < 1 || rank > entries.size()) return null;
+
+        int traversed = 0;
+        Entry x = head;
+        for (int i = height - 1; i >= 0; i--) {
+            while (x.next[i] != null && traversed + x.span[i] <= rank) {
+                traversed += x.span[i];
+                x = x.next[i];
+            }
+            if (traversed == rank) {
+                return x;
+            }
+        }
+        return null;
+    }
+
+    private void link(Entry entry) {
+        Entry x = head;
+        for (int i = height - 1; i >= 0; i--) {
+            rankAt[i] = i == height - 1 ? 0 : rankAt[i + 1];
+            while (x.next[i] != null && compare(x.next[i], entry) < 0) {
+                rankAt[i] += x.span[i];
+                x = x.next[i];
+            }
+            update[i] = x;
+        }
+
+        int entryHeight = entry.next.length;
+        if (entryHeight > height) {
+            for (int i = height; i < entryHeight; i++) {
+                rankAt[i] = 0;
+                update[i] = head;
+                head.span[i] = entries.size() - 1;
+            }
+            height = entryHeight;
+        }
+
+        for (int i = 0; i < entryHeight; i++) {
+            entry.next[i] = update[i].next[i];
+            update[i].next[i] = entry;
+            entry.span[i] = update[i].span[i] - (rankAt[0] - rankAt[i]);
+            update[i].span[i] = rankAt[0] - rankAt[i] + 1;
+        }
+
+        for (int i = entryHeight; i < height; i++) {
+            update[i].span[i]++;
+        }
+    }
+
+    private void unlink(Entry entry) {
+        Entry x = head;
+        for (int i = height - 1; i >= 0; i--) {
+            while (x.next[i] != null && compare(x.next[i], entry) < 0) {
+                x = x.next[i];
+            }
+            update[i] = x;
+        }
+
+        for (int i = 0; i < height; i++) {
+            if (update[i].next[i] == entry) {
+                update[i].span[i] += entry.span[i] - 1;
+                update[i].next[i] = entry.next[i];
+            } else {
+                update[i].span[i]--;
+            }
+        }
+
+        for (int i = 0; i < entry.next.length; i++) {
+            entry.next[i] = null;
+            entry.span[i] = 0;
+        }
+
+        while (height > 1 && head.next[height - 1] == null) {
+            height--;
+        }
+    }
+
+    /**
+     * Highest level first, then highest XP, then UUID so the order is total.
+     */
+    private static int compare(Entry a, Entry b) {
+        if (a.level != b.level) {
+            return a.level > b.level ? -1 : 1;
+        }
+        if (a.xp != b.xp) {
+            return a.xp > b.xp ? -1 : 1;
+        }
+        return a.uuid.compareTo(b.uuid);
+    }
+
+    private static Entry snapshot(Entry entry) {
+        Entry copy = new Entry(entry.uuid, 0);
+        copy.name = entry.name;
+        copy.level = entry.level;
+        copy.xp = entry.xp;
+        return copy;
+    }
+
+    private static int randomHeight() {
+        int height = 1;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (height < MAX_HEIGHT && (random.nextInt() & 3) == 0) {
+            height++;
+        }
+        return height;
+    }
+}
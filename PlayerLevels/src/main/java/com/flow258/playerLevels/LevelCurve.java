@@ -0,0 +1,220 @@
+package com.flow258.playerLevels;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Immutable level curve backed by a cumulative XP threshold table.
+ * <p>
+ * {@code thresholds[i]} is the total XP, in milli-XP (see {@link Xp}), needed to
+ * reach level {@code i + 1}, so {@code thresholds[0]} is always 0. The curves
+ * are computed in XP points and rounded once per threshold. Lookups are a
+ * binary search over the table and never allocate. A new instance is built on
+ * every config load and swapped in as a whole, so readers never see a
+ * half-built table.
+ */
+final class LevelCurve {
+
+    static final int DEFAULT_MAX_LEVEL = 10000;
+
+    private final String type;
+    private final long[] thresholds;
+
+    private LevelCurve(String type, long[] thresholds) {
+        this.type = type;
+        this.thresholds = thresholds;
+    }
+
+    /**
+     * Builds a curve from the {@code settings.levels} section.
+     * Supported {@code curve} values are exponential (default), linear,
+     * polynomial and table.
+     */
+    static LevelCurve fromConfig(ConfigurationSection section, Logger logger) {
+        if (section == null) {
+            return exponential(100, 1.5, DEFAULT_MAX_LEVEL);
+        }
+
+        String type = section.getString("curve", "exponential").toLowerCase();
+        double baseXp = section.getDouble("base-xp", 100);
+        int maxLevel = Math.max(1, section.getInt("max-level", DEFAULT_MAX_LEVEL));
+
+        if (baseXp <= 0 && !"table".equals(type)) {
+            logger.warning("settings.levels.base-xp must be positive, using 100");
+            baseXp = 100;
+        }
+
+        switch (type) {
+            case "linear":
+                return linear(baseXp, section.getDouble("xp-increment", 50), maxLevel);
+            case "polynomial":
+                return polynomial(baseXp, section.getDouble("exponent", 2.0), maxLevel);
+            case "table":
+                List<Double> table = section.getDoubleList("table");
+                if (table.isEmpty()) {
+                    logger.warning("settings.levels.table is empty, falling back to the exponential curve");
+                    break;
+                }
+                double[] costs = new double[table.size()];
+                for (int i = 0; i < costs.length; i++) {
+                    costs[i] = table.get(i);
+                }
+                return table(costs, logger);
+            case "exponential":
+                break;
+            default:
+                logger.warning("Unknown level curve '" + type + "', using exponential");
+                break;
+        }
+
+        return exponential(baseXp, section.getDouble("xp-multiplier", 1.5), maxLevel);
+    }
+
+    /**
+     * Level {@code n} costs {@code baseXp * multiplier^(n - 1)}. Thresholds use the
+     * closed-form geometric sum so they do not accumulate rounding error.
+     */
+    static LevelCurve exponential(double baseXp, double multiplier, int maxLevel) {
+        long[] thresholds = new long[maxLevel];
+        int size = 1;
+        for (int i = 1; i < maxLevel; i++) {
+            double total;
+            if (multiplier == 1.0) {
+                total = baseXp * i;
+            } else {
+                total = baseXp * (Math.pow(multiplier, i) - 1) / (multiplier - 1);
+            }
+            if (!isNextThreshold(total, thresholds[i - 1])) {
+                break;
+            }
+            thresholds[i] = Xp.of(total);
+            size++;
+        }
+        return new LevelCurve("exponential", trim(thresholds, size));
+    }
+
+    /**
+     * Level {@code n} costs {@code baseXp + increment * (n - 1)}.
+     */
+    static LevelCurve linear(double baseXp, double increment, int maxLevel) {
+        long[] thresholds = new long[maxLevel];
+        int size = 1;
+        for (int i = 1; i < maxLevel; i++) {
+            double total = baseXp * i + increment * ((double) i * (i - 1) / 2);
+            if (!isNextThreshold(total, thresholds[i - 1])) {
+                break;
+            }
+            thresholds[i] = Xp.of(total);
+            size++;
+        }
+        return new LevelCurve("linear", trim(thresholds, size));
+    }
+
+    /**
+     * Level {@code n} costs {@code baseXp * n^exponent}. There is no closed form for
+     * the sum, so it is accumulated once here instead of on every lookup.
+     */
+    static LevelCurve polynomial(double baseXp, double exponent, int maxLevel) {
+        long[] thresholds = new long[maxLevel];
+        int size = 1;
+        double total = 0;
+        for (int i = 1; i < maxLevel; i++) {
+            total += baseXp * Math.pow(i, exponent);
+            if (!isNextThreshold(total, thresholds[i - 1])) {
+                break;
+            }
+            thresholds[i] = Xp.of(total);
+            size++;
+        }
+        return new LevelCurve("polynomial", trim(thresholds, size));
+    }
+
+    /**
+     * {@code costs[n - 1]} is the XP needed to go from level {@code n} to {@code n + 1}.
+     * The highest level is one past the last entry.
+     */
+    static LevelCurve table(double[] costs, Logger logger) {
+        long[] thresholds = new long[costs.length + 1];
+        int size = 1;
+        double total = 0;
+        for (int i = 0; i < costs.length; i++) {
+            total += costs[i];
+            if (!isNextThreshold(total, thresholds[i])) {
+                logger.warning("Level table entry " + (i + 1) + " must be positive, capping levels at " + size);
+                break;
+            }
+            thresholds[i + 1] = Xp.of(total);
+            size++;
+        }
+        return new LevelCurve("table", trim(thresholds, size));
+    }
+
+    // Stops the curve once a level would cost nothing after rounding, or overflow
+    private static boolean isNextThreshold(double total, long previous) {
+        return total < Xp.toPoints(Xp.MAX) && Xp.of(total) > previous;
+    }
+
+    private static long[] trim(long[] thresholds, int size) {
+        return size == thresholds.length ? thresholds : Arrays.copyOf(thresholds, size);
+    }
+
+    /**
+     * Returns the level for the given total XP, between 1 and {@link #getMaxLevel()}.
+     */
+    int getLevel(long xp) {
+        if (xp <= 0) return 1;
+
+        int low = 0;
+        int high = thresholds.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (thresholds[mid] <= xp) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low + 1;
+    }
+
+    /**
+     * Returns the total XP needed to reach the given level.
+     */
+    long getXpForLevel(int level) {
+        if (level <= 1) return 0;
+        return thresholds[Math.min(level, thresholds.length) - 1];
+    }
+
+    /**
+     * Returns the XP still missing to reach the level after the one {@code xp} is in,
+     * or 0 once the maximum level has been reached.
+     */
+    long getXpForNextLevel(long xp) {
+        int level = getLevel(xp);
+        if (level >= thresholds.length) return 0;
+        return thresholds[level] - xp;
+    }
+
+    /**
+     * Returns how far {@code xp} is through its current level, from 0 to 1.
+     */
+    double getProgress(long xp) {
+        int level = getLevel(xp);
+        if (level >= thresholds.length) return 1;
+
+        long start = thresholds[level - 1];
+        double progress = (double) (xp - start) / (thresholds[level] - start);
+        return Math.max(0, Math.min(1, progress));
+    }
+
+    int getMaxLevel() {
+        return thresholds.length;
+    }
+
+    String getType() {
+        return type;
+    }
+}
@@ -0,0 +1,258 @@
+package com.flow258.playerLevels;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+/**
+ * Always-on runtime metrics for the plugin.
+ * <p>
+ * Counters are {@link LongAdder}s and latencies are {@link LatencyHistogram}s, so
+ * recording from the main thread, the database threads and async tasks does not
+ * contend. Database latencies are kept per query by {@link StorageExecutor}; cache
+ * and queue sizes are read from their owners when a report is built. Shown by
+ * {@code /level debug} and, if enabled, written every {@code interval} seconds to
+ * a Prometheus text-format file for the node-exporter textfile collector.
+ */
+final class Metrics {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    final LatencyHistogram recomputeSlice = new LatencyHistogram();
+    final LatencyHistogram recomputeCycle = new LatencyHistogram();
+    final LongAdder recomputedPlayers = new LongAdder();
+
+    final LongAdder placeholderRequests = new LongAdder();
+    final LatencyHistogram placeholderRender = new LatencyHistogram();
+
+    final LongAdder rewardsClaimed = new LongAdder();
+    final LatencyHistogram rewardCommand = new LatencyHistogram();
+
+    final LongAdder remoteChanges = new LongAdder();
+    final LongAdder writeConflicts = new LongAdder();
+
+    private final PlayerLevels plugin;
+
+    Metrics(PlayerLevels plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Schedules the Prometheus file export from {@code settings.metrics.prometheus}.
+     */
+    void startExport(ConfigurationSection config) {
+        if (config == null || !config.getBoolean("enabled", true)) return;
+
+        String fileName = config.getString("file", "playerlevels.prom");
+        Path file = Path.of(fileName).isAbsolute()
+                ? Path.of(fileName)
+                : plugin.getDataFolder().toPath().resolve(fileName);
+        long intervalTicks = 20L * Math.max(5, config.getLong("interval", 60));
+
+        Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, () -> export(file), intervalTicks, intervalTicks);
+    }
+
+    private void export(Path file) {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writer.write(toPrometheus());
+            }
+
+            // The collector must never see a half-written file
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not write metrics to " + file, e);
+        }
+    }
+
+    String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        PlayerCache cache = plugin.getPlayerCache();
+        RecomputeScheduler scheduler = plugin.getRecomputeScheduler();
+
+        summary(out, "playerlevels_recompute_slice_seconds", "Main thread time per tick spent reading statistics",
+                null, recomputeSlice);
+        summary(out, "playerlevels_recompute_cycle_seconds", "Main thread time per full recompute cycle",
+                null, recomputeCycle);
+        counter(out, "playerlevels_recomputed_players_total", "Players recomputed by full cycles",
+                recomputedPlayers.sum());
+        gauge(out, "playerlevels_recompute_queued_players", "Players waiting in the current cycle",
+                scheduler.getQueuedPlayers());
+        gauge(out, "playerlevels_recompute_last_cycle_ticks", "Ticks the last full cycle took",
+                scheduler.getLastCycleTicks());
+
+        StorageExecutor storage = plugin.getStorage();
+        if (storage != null) {
+            Map<String, LatencyHistogram> queries = new TreeMap<>(storage.getQueryLatencies());
+            header(out, "playerlevels_db_query_seconds", "Database work latency by query", "summary");
+            for (Map.Entry<String, LatencyHistogram> query : queries.entrySet()) {
+                summaryLines(out, "playerlevels_db_query_seconds", "query=\"" + query.getKey() + "\"", query.getValue());
+            }
+        }
+
+        WriteBehindQueue writeBehind = plugin.getWriteBehindQueue();
+        if (writeBehind != null) {
+            gauge(out, "playerlevels_write_behind_pending", "Players with unsaved changes", writeBehind.getPendingCount());
+        }
+
+        gauge(out, "playerlevels_cache_size", "Players in the cache", cache.size());
+        counter(out, "playerlevels_cache_hits_total", "Cache lookups that found the player", cache.getHits());
+        counter(out, "playerlevels_cache_misses_total", "Cache lookups that missed", cache.getMisses());
+        counter(out, "playerlevels_cache_evictions_total", "Players evicted from the cache", cache.getEvictions());
+        gauge(out, "playerlevels_leaderboard_size", "Players in the leaderboard", plugin.getLeaderboard().size());
+
+        counter(out, "playerlevels_placeholder_requests_total", "Placeholder requests for a loaded player",
+                placeholderRequests.sum());
+        summary(out, "playerlevels_placeholder_render_seconds", "Time to re-render a player's placeholders",
+                null, placeholderRender);
+
+        counter(out, "playerlevels_rewards_claimed_total", "Level rewards claimed", rewardsClaimed.sum());
+        gauge(out, "playerlevels_rewards_pending", "Claimed rewards waiting to run",
+                plugin.getRewardDispatcher().getPendingPayouts());
+        summary(out, "playerlevels_reward_command_seconds", "Time to run one reward command", null, rewardCommand);
+        gauge(out, "playerlevels_change_events_pending", "Players with change events waiting to fire",
+                plugin.getChangeEvents().getPendingCount());
+
+        PlayerJournal journal = plugin.getJournal();
+        if (journal != null) {
+            gauge(out, "playerlevels_journal_players", "Players in the journal", journal.size());
+            gauge(out, "playerlevels_journal_log_records", "Records appended since the last snapshot",
+                    journal.getLogRecords());
+        }
+
+        if (plugin.getNetworkSync() != null) {
+            counter(out, "playerlevels_network_remote_changes_total", "Players reloaded after another server saved them",
+                    remoteChanges.sum());
+            counter(out, "playerlevels_network_write_conflicts_total", "Saves skipped because another server saved first",
+                    writeConflicts.sum());
+        }
+
+        return out.toString();
+    }
+
+    /**
+     * Lines for {@code /level debug}.
+     */
+    List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        PlayerCache cache = plugin.getPlayerCache();
+        RecomputeScheduler scheduler = plugin.getRecomputeScheduler();
+
+        lines.add(ChatColor.GOLD + "===== PlayerLevels Debug =====");
+        lines.add(line("Recompute slice", recomputeSlice));
+        lines.add(ChatColor.YELLOW + "Recompute cycle: " + ChatColor.WHITE + scheduler.getLastCyclePlayers()
+                + " players over " + scheduler.getLastCycleTicks() + " ticks, "
+                + scheduler.getLastCycleMainThreadMillis() + "ms main thread, " + scheduler.getQueuedPlayers() + " queued");
+
+        StorageExecutor storage = plugin.getStorage();
+        if (storage != null) {
+            for (Map.Entry<String, LatencyHistogram> query : new TreeMap<>(storage.getQueryLatencies()).entrySet()) {
+                lines.add(line("DB " + query.getKey(), query.getValue()));
+            }
+        }
+
+        long hits = cache.getHits();
+        long lookups = hits + cache.getMisses();
+        lines.add(ChatColor.YELLOW + "Cache: " + ChatColor.WHITE + cache.size() + "/" + cache.getMaxSize()
+                + " players, " + format(lookups == 0 ? 0 : hits * 100.0 / lookups, 1) + "% hits, "
+                + cache.getEvictions() + " evictions");
+
+        WriteBehindQueue writeBehind = plugin.getWriteBehindQueue();
+        if (writeBehind != null) {
+            lines.add(ChatColor.YELLOW + "Write-behind: " + ChatColor.WHITE + writeBehind.getPendingCount()
+                    + " pending, last batch " + writeBehind.getLastBatchSize() + " in " + writeBehind.getLastFlushMillis() + "ms");
+        }
+
+        lines.add(ChatColor.YELLOW + "Placeholders: " + ChatColor.WHITE + placeholderRequests.sum() + " requests, "
+                + placeholderRender.getCount() + " renders, p99 " + millis(placeholderRender.getPercentileNanos(99)));
+        lines.add(ChatColor.YELLOW + "Rewards: " + ChatColor.WHITE + rewardsClaimed.sum() + " claimed, "
+                + plugin.getRewardDispatcher().getPendingPayouts() + " pending, command p99 "
+                + millis(rewardCommand.getPercentileNanos(99)));
+        lines.add(ChatColor.YELLOW + "Change events: " + ChatColor.WHITE + plugin.getChangeEvents().getPendingCount()
+                + " players pending");
+
+        PlayerJournal journal = plugin.getJournal();
+        if (journal != null) {
+            lines.add(ChatColor.YELLOW + "Journal: " + ChatColor.WHITE + journal.size() + " players, "
+                    + journal.getLogRecords() + " records since the last snapshot, last compaction "
+                    + (journal.getLastCompactionMillis() < 0 ? "none" : journal.getLastCompactionMillis() + "ms"));
+        }
+
+        NetworkSync network = plugin.getNetworkSync();
+        if (network != null) {
+            lines.add(ChatColor.YELLOW + "Network: " + ChatColor.WHITE + "server " + network.getServerId() + ", "
+                    + remoteChanges.sum() + " remote changes, " + writeConflicts.sum() + " conflicts");
+        }
+        return lines;
+    }
+
+    private static String line(String name, LatencyHistogram histogram) {
+        return ChatColor.YELLOW + name + ": " + ChatColor.WHITE + histogram.getCount() + " calls, p50 "
+                + millis(histogram.getPercentileNanos(50)) + ", p99 " + millis(histogram.getPercentileNanos(99))
+                + ", max " + millis(histogram.getMaxNanos());
+    }
+
+    private static String millis(long nanos) {
+        return format(nanos / 1_000_000.0, 2) + "ms";
+    }
+
+    private static String format(double value, int decimals) {
+        return String.format(Locale.ROOT, "%." + decimals + "f", value);
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "counter");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "gauge");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void summary(StringBuilder out, String name, String help, String labels, LatencyHistogram histogram) {
+        header(out, name, help, "summary");
+        summaryLines(out, name, labels, histogram);
+    }
+
+    private static void summaryLines(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+        String prefix = labels != null ? labels + "," : "";
+        for (double quantile : QUANTILES) {
+            out.append(name).append('{').append(prefix).append("quantile=\"").append(quantile).append("\"} ")
+                    .append(seconds(histogram.getPercentileNanos(quantile * 100))).append('\n');
+        }
+        String suffix = labels != null ? "{" + labels + "}" : "";
+        out.append(name).append("_sum").append(suffix).append(' ').append(seconds(histogram.getSumNanos())).append('\n');
+        out.append(name).append("_count").append(suffix).append(' ').append(histogram.getCount()).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1_000_000_000.0);
+    }
+}
@@ -0,0 +1,78 @@
+package com.flow258.playerLevels;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Every known player name, sorted case-insensitively, for offline lookups and tab completion.
+ * <p>
+ * Names are kept in a concurrent skip list ordered by
+ * {@link String#CASE_INSENSITIVE_ORDER}, so an exact lookup is a single search
+ * and the names starting with a prefix are one contiguous range. A second map
+ * remembers each player's current name, so a renamed player's old name is
+ * dropped. Lookups never lock; only a changed name takes the write lock, and
+ * an unchanged one costs a single hash lookup.
+ */
+final class NameIndex {
+
+    private final NavigableMap<String, UUID> byName = new ConcurrentSkipListMap<>(String.CASE_INSENSITIVE_ORDER);
+    private final Map<UUID, String> names = new ConcurrentHashMap<>();
+
+    /**
+     * Records the player's current name.
+     */
+    void put(UUID uuid, String name) {
+        if (name == null || name.equals(names.get(uuid))) return;
+
+        synchronized (this) {
+            String previous = names.put(uuid, name);
+            if (previous != null) {
+                byName.remove(previous, uuid);
+            }
+            // An old player may still hold the name; the newest owner wins
+            byName.put(name, uuid);
+        }
+    }
+
+    /**
+     * Records the name unless the player already has one, for bulk loads that
+     * must not overwrite names seen since the load started.
+     */
+    void putIfAbsent(UUID uuid, String name) {
+        if (name == null || names.containsKey(uuid)) return;
+
+        synchronized (this) {
+            if (names.putIfAbsent(uuid, name) == null) {
+                byName.putIfAbsent(name, uuid);
+            }
+        }
+    }
+
+    /**
+     * Returns the player with the name, ignoring case, or null.
+     */
+    UUID get(String name) {
+        return byName.get(name);
+    }
+
+    /**
+     * Returns up to {@code limit} names starting with {@code prefix}, ignoring case, in order.
+     */
+    List<String> complete(String prefix, int limit) {
+        List<String> matches = new ArrayList<>(Math.min(limit, 16));
+        for (String name : byName.subMap(prefix, true, prefix + Character.MAX_VALUE, false).keySet()) {
+            if (matches.size() == limit) break;
+            matches.add(name);
+        }
+        return matches;
+    }
+
+    int size() {
+        return names.size();
+    }
+}
@@ -0,0 +1,347 @@
+package com.flow258.playerLevels;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps several servers that share one database coherent.
+ * <p>
+ * Every save is a compare-and-set on {@code player_levels.version}, so a server
+ * holding an outdated copy of a player cannot silently overwrite a newer one.
+ * Each successful save also appends the player to {@code level_changes}. Every
+ * server polls that table by id, skips its own entries and reloads only the
+ * players another server changed. Ids from concurrent transactions can become
+ * visible out of order, so the cursor only moves past a missing id once it has
+ * shown up or has stayed missing for {@code GAP_TIMEOUT}.
+ */
+final class NetworkSync {
+
+    /**
+     * A player's stored row.
+     */
+    record Row(UUID uuid, String name, long xp, long version, long xpOffset) {
+    }
+
+    /**
+     * Applies what the sync finds. Called from database threads, so an implementation
+     * that changes cached players hands the work to the main thread.
+     */
+    interface ChangeHandler {
+        /**
+         * Another server saved the player.
+         */
+        void remoteChange(Row stored);
+
+        /**
+         * Another server saved the player since {@code local} was read, so the save
+         * of {@code local} was skipped. {@code stored} is null if the row is gone.
+         */
+        void conflict(PlayerLevels.PlayerData local, Row stored);
+    }
+
+    private static final String UPDATE_SQL = "UPDATE player_levels SET name = ?, xp = ?, level = ?, version = version + 1 "
+            + "WHERE uuid = ? AND (? < 0 OR version = ?)";
+    private static final String SELECT_SQL = "SELECT name, xp, version, xp_offset FROM player_levels WHERE uuid = ?";
+    private static final String LOG_SQL = "INSERT INTO level_changes (uuid, server_id, changed_at) VALUES (?, ?, ?)";
+    private static final String POLL_SQL = "SELECT id, uuid, server_id FROM level_changes WHERE id > ? ORDER BY id LIMIT ?";
+
+    private static final int POLL_LIMIT = 1000;
+    private static final long GAP_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final long PRUNE_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    private final StorageExecutor storage;
+    private final String serverId;
+    private final long retentionMillis;
+    private final ChangeHandler handler;
+    private final Logger logger;
+    private final Metrics metrics;
+    private final AtomicBoolean polling = new AtomicBoolean();
+    private long gapTimeoutNanos = GAP_TIMEOUT_NANOS;
+
+    // Only touched by the poll in progress
+    private long cursor;
+    private final NavigableSet<Long> seenAhead = new TreeSet<>();
+    private long gapSince;
+    private long lastPrune = System.nanoTime();
+
+    private NetworkSync(StorageExecutor storage, String serverId, long retentionMillis, ChangeHandler handler,
+                        Logger logger, Metrics metrics, long cursor) {
+        this.storage = storage;
+        this.serverId = serverId;
+        this.retentionMillis = retentionMillis;
+        this.handler = handler;
+        this.logger = logger;
+        this.metrics = metrics;
+        this.cursor = cursor;
+    }
+
+    /**
+     * Starts following the change log from its current end; everything before it
+     * is already in the rows the server loads at startup.
+     */
+    static NetworkSync open(StorageExecutor storage, String serverId, long retentionMillis, ChangeHandler handler,
+                            Logger logger, Metrics metrics) {
+        long cursor = storage.read("change_cursor", pooled -> {
+            try (PreparedStatement statement = pooled.getConnection().prepareStatement("SELECT MAX(id) FROM level_changes");
+                 ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getLong(1) : 0L;
+            }
+        }).join();
+        return new NetworkSync(storage, serverId, retentionMillis, handler, logger, metrics, cursor);
+    }
+
+    /**
+     * Polls for changes every {@code intervalTicks} on an async task.
+     */
+    void start(Plugin plugin, long intervalTicks) {
+        Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::pollInBackground, intervalTicks, intervalTicks);
+    }
+
+    String getServerId() {
+        return serverId;
+    }
+
+    /**
+     * Saves the batch with compare-and-set inside the caller's transaction. Returns
+     * the new version of each player, or -1 where another server's save got there
+     * first. Pass the result to {@link #committed} once the transaction commits.
+     * <p>
+     * A negative {@link PlayerLevels.PlayerData#getVersion() version} means the
+     * stored version was never read, and that player is written unconditionally.
+     */
+    long[] write(StorageExecutor.PooledConnection pooled, boolean sqlite, List<PlayerLevels.PlayerData> batch)
+            throws SQLException {
+        long[] versions = new long[batch.size()];
+        long[] expected = new long[batch.size()];
+
+        // MySQL Connector/J reports per-row counts as long as rewriteBatchedStatements is off, which it is here
+        PreparedStatement update = pooled.prepare(UPDATE_SQL);
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                PlayerLevels.PlayerData data = batch.get(i);
+                expected[i] = data.getVersion();
+                update.setString(1, data.getName());
+                update.setLong(2, data.getXpMillis());
+                update.setInt(3, data.getLevel());
+                update.setBytes(4, StorageExecutor.toBytes(data.getUuid()));
+                update.setLong(5, expected[i]);
+                update.setLong(6, expected[i]);
+                update.addBatch();
+            }
+            int[] updated = update.executeBatch();
+            for (int i = 0; i < batch.size(); i++) {
+                versions[i] = updated[i] > 0 ? expected[i] + 1 : -1;
+            }
+        } catch (SQLException e) {
+            update.clearBatch();
+            throw e;
+        }
+
+        // Players without a row yet; if someone else inserted first this is a conflict
+        PreparedStatement insert = pooled.prepare((sqlite ? "INSERT OR IGNORE" : "INSERT IGNORE")
+                + " INTO player_levels (uuid, name, xp, level, version) VALUES (?, ?, ?, ?, 1)");
+        List<Integer> inserted = new ArrayList<>();
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                if (versions[i] >= 0 || expected[i] > 0) continue;
+
+                PlayerLevels.PlayerData data = batch.get(i);
+                insert.setBytes(1, StorageExecutor.toBytes(data.getUuid()));
+                insert.setString(2, data.getName());
+                insert.setLong(3, data.getXpMillis());
+                insert.setInt(4, data.getLevel());
+                insert.addBatch();
+                inserted.add(i);
+            }
+            if (!inserted.isEmpty()) {
+                int[] counts = insert.executeBatch();
+                for (int j = 0; j < counts.length; j++) {
+                    if (counts[j] > 0) {
+                        versions[inserted.get(j)] = 1;
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            insert.clearBatch();
+            throw e;
+        }
+
+        // Unconditional updates (left at version 0 above) don't know the version they produced
+        PreparedStatement select = pooled.prepare(SELECT_SQL);
+        for (int i = 0; i < batch.size(); i++) {
+            if (expected[i] >= 0 || versions[i] != 0) continue;
+
+            select.setBytes(1, StorageExecutor.toBytes(batch.get(i).getUuid()));
+            try (ResultSet resultSet = select.executeQuery()) {
+                versions[i] = resultSet.next() ? resultSet.getLong("version") : -1;
+            }
+        }
+
+        List<UUID> changed = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            if (versions[i] >= 0) {
+                changed.add(batch.get(i).getUuid());
+            }
+        }
+        recordChanges(pooled, changed);
+        return versions;
+    }
+
+    /**
+     * Appends the players to the change log inside the caller's transaction, for
+     * writes that bypass {@link #write}, such as {@code /level rebuild}.
+     */
+    void recordChanges(StorageExecutor.PooledConnection pooled, List<UUID> uuids) throws SQLException {
+        if (uuids.isEmpty()) return;
+
+        PreparedStatement log = pooled.prepare(LOG_SQL);
+        long now = System.currentTimeMillis();
+        try {
+            for (UUID uuid : uuids) {
+                log.setBytes(1, StorageExecutor.toBytes(uuid));
+                log.setString(2, serverId);
+                log.setLong(3, now);
+                log.addBatch();
+            }
+            log.executeBatch();
+        } catch (SQLException e) {
+            log.clearBatch();
+            throw e;
+        }
+    }
+
+    /**
+     * Applies the result of a committed {@link #write}: stores the new versions and
+     * hands every conflict, with the row that won, to the handler.
+     */
+    void committed(StorageExecutor.PooledConnection pooled, List<PlayerLevels.PlayerData> batch, long[] versions)
+            throws SQLException {
+        List<PlayerLevels.PlayerData> conflicts = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            if (versions[i] >= 0) {
+                batch.get(i).setVersion(versions[i]);
+            } else {
+                conflicts.add(batch.get(i));
+            }
+        }
+
+        for (PlayerLevels.PlayerData local : conflicts) {
+            metrics.writeConflicts.increment();
+            handler.conflict(local, readRow(pooled, local.getUuid()));
+        }
+    }
+
+    private void pollInBackground() {
+        if (!polling.compareAndSet(false, true)) return;
+
+        storage.read("poll_changes", this::poll).whenComplete((count, error) -> {
+            polling.set(false);
+            if (error != null) {
+                logger.log(Level.WARNING, "Could not poll level_changes", error.getCause());
+            }
+        });
+
+        if (System.nanoTime() - lastPrune > PRUNE_INTERVAL_NANOS) {
+            lastPrune = System.nanoTime();
+            storage.write("prune_changes", pooled -> {
+                PreparedStatement statement = pooled.prepare("DELETE FROM level_changes WHERE changed_at < ?");
+                statement.setLong(1, System.currentTimeMillis() - retentionMillis);
+                return statement.executeUpdate();
+            });
+        }
+    }
+
+    /**
+     * Reads the change log past the cursor and reloads every player another server
+     * changed. Returns the number of players reloaded. Exposed for
+     * {@code NetworkSyncTest}; the running plugin polls from {@link #start}.
+     */
+    int poll(StorageExecutor.PooledConnection pooled) throws SQLException {
+        Set<UUID> changed = new LinkedHashSet<>();
+
+        PreparedStatement statement = pooled.prepare(POLL_SQL);
+        statement.setLong(1, cursor);
+        statement.setInt(2, POLL_LIMIT);
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                if (!seenAhead.add(resultSet.getLong("id"))) continue;
+                if (!serverId.equals(resultSet.getString("server_id"))) {
+                    changed.add(StorageExecutor.toUuid(resultSet.getBytes("uuid")));
+                }
+            }
+        }
+        advanceCursor();
+
+        for (UUID uuid : changed) {
+            Row row = readRow(pooled, uuid);
+            if (row != null) {
+                metrics.remoteChanges.increment();
+                handler.remoteChange(row);
+            }
+        }
+        return changed.size();
+    }
+
+    private void advanceCursor() {
+        while (!seenAhead.isEmpty() && seenAhead.first() <= cursor + 1) {
+            cursor = Math.max(cursor, seenAhead.pollFirst());
+        }
+
+        long now = System.nanoTime();
+        if (seenAhead.isEmpty()) {
+            gapSince = 0;
+        } else if (gapSince == 0) {
+            gapSince = now;
+        } else if (now - gapSince > gapTimeoutNanos) {
+            // The missing ids were rolled back or skipped by the database
+            cursor = seenAhead.first() - 1;
+            gapSince = 0;
+            advanceCursor();
+        }
+    }
+
+    /**
+     * Returns the player's stored version, or -1 if there is no row. Used inside
+     * the transaction of writes that bypass {@link #write} and bump the version.
+     */
+    long readVersion(StorageExecutor.PooledConnection pooled, UUID uuid) throws SQLException {
+        Row row = readRow(pooled, uuid);
+        return row != null ? row.version() : -1;
+    }
+
+    long getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Replaces {@code GAP_TIMEOUT}, so tests need not wait for it. Call before the first poll.
+     */
+    void setGapTimeout(long timeout, TimeUnit unit) {
+        gapTimeoutNanos = unit.toNanos(timeout);
+    }
+
+    private static Row readRow(StorageExecutor.PooledConnection pooled, UUID uuid) throws SQLException {
+        PreparedStatement select = pooled.prepare(SELECT_SQL);
+        select.setBytes(1, StorageExecutor.toBytes(uuid));
+        try (ResultSet resultSet = select.executeQuery()) {
+            if (!resultSet.next()) return null;
+            return new Row(uuid, resultSet.getString("name"), resultSet.getLong("xp"), resultSet.getLong("version"),
+                    resultSet.getLong("xp_offset"));
+        }
+    }
+}
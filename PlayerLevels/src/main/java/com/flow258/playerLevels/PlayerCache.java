@@ -0,0 +1,258 @@
+package com.flow258.playerLevels;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Bounded, thread-safe cache of {@link PlayerLevels.PlayerData}.
+ * <p>
+ * Online players are pinned and never evicted. Everyone else is dropped once
+ * they have been idle for {@code expire-after} seconds, or least recently used
+ * first when the cache grows past {@code max-size}. Entries with unsaved changes
+ * are never evicted. Concurrent misses for the same player share a single load.
+ */
+class PlayerCache {
+
+    private static final class Entry {
+        private volatile PlayerLevels.PlayerData data;
+        private volatile long lastAccess;
+
+        private Entry(PlayerLevels.PlayerData data) {
+            this.data = data;
+            this.lastAccess = System.nanoTime();
+        }
+    }
+
+    private record Candidate(UUID uuid, long lastAccess) {
+    }
+
+    private final Map<UUID, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<UUID, CompletableFuture<PlayerLevels.PlayerData>> loading = new ConcurrentHashMap<>();
+    private final Set<UUID> pinned = ConcurrentHashMap.newKeySet();
+    private final int maxSize;
+    private final long expireAfterNanos;
+
+    private final AtomicBoolean cleanUpRunning = new AtomicBoolean();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    PlayerCache(ConfigurationSection config) {
+        int maxSize = 1000;
+        long expireAfterSeconds = 600;
+
+        if (config != null) {
+            maxSize = Math.max(1, config.getInt("max-size", maxSize));
+            expireAfterSeconds = Math.max(1, config.getLong("expire-after", expireAfterSeconds));
+        }
+
+        this.maxSize = maxSize;
+        this.expireAfterNanos = TimeUnit.SECONDS.toNanos(expireAfterSeconds);
+    }
+
+    /**
+     * Returns the cached data, or null on a miss. Counts towards the hit ratio.
+     */
+    PlayerLevels.PlayerData getIfPresent(UUID uuid) {
+        Entry entry = entries.get(uuid);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        entry.lastAccess = System.nanoTime();
+        return entry.data;
+    }
+
+    /**
+     * Returns the cached data without touching statistics or access time.
+     */
+    PlayerLevels.PlayerData peek(UUID uuid) {
+        Entry entry = entries.get(uuid);
+        return entry != null ? entry.data : null;
+    }
+
+    /**
+     * Returns the cached data, loading it with {@code loader} on a miss. Concurrent
+     * misses for the same player wait on the same load.
+     */
+    CompletableFuture<PlayerLevels.PlayerData> get(UUID uuid,
+                                                   Function<UUID, CompletableFuture<PlayerLevels.PlayerData>> loader) {
+        PlayerLevels.PlayerData cached = getIfPresent(uuid);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<PlayerLevels.PlayerData> promise = new CompletableFuture<>();
+        CompletableFuture<PlayerLevels.PlayerData> inFlight = loading.putIfAbsent(uuid, promise);
+        if (inFlight != null) {
+            return inFlight;
+        }
+
+        CompletableFuture<PlayerLevels.PlayerData> load;
+        try {
+            load = loader.apply(uuid);
+        } catch (RuntimeException e) {
+            // A loader that throws instead of failing its future must not leave the promise stuck
+            loading.remove(uuid, promise);
+            promise.completeExceptionally(e);
+            return promise;
+        }
+
+        load.whenComplete((data, error) -> {
+            PlayerLevels.PlayerData result = data != null ? putIfAbsent(data) : null;
+            loading.remove(uuid, promise);
+
+            if (error != null) {
+                promise.completeExceptionally(error);
+            } else {
+                promise.complete(result);
+            }
+        });
+
+        return promise;
+    }
+
+    /**
+     * Returns true while a load for the player is in flight.
+     */
+    boolean isLoading(UUID uuid) {
+        return loading.containsKey(uuid);
+    }
+
+    void put(PlayerLevels.PlayerData data) {
+        Entry entry = entries.get(data.getUuid());
+        if (entry != null) {
+            entry.data = data;
+            entry.lastAccess = System.nanoTime();
+        } else {
+            entries.put(data.getUuid(), new Entry(data));
+            checkSize();
+        }
+    }
+
+    /**
+     * Caches the data unless the player is already cached, and returns the cached value.
+     */
+    PlayerLevels.PlayerData putIfAbsent(PlayerLevels.PlayerData data) {
+        Entry entry = entries.computeIfAbsent(data.getUuid(), uuid -> new Entry(data));
+        checkSize();
+        return entry.data;
+    }
+
+    private void checkSize() {
+        if (entries.size() > maxSize && cleanUpRunning.compareAndSet(false, true)) {
+            ForkJoinPool.commonPool().execute(this::cleanUp);
+        }
+    }
+
+    void pin(UUID uuid) {
+        pinned.add(uuid);
+    }
+
+    void unpin(UUID uuid) {
+        pinned.remove(uuid);
+    }
+
+    boolean isPinned(UUID uuid) {
+        return pinned.contains(uuid);
+    }
+
+    /**
+     * Drops the player unless they are pinned again or have unsaved changes.
+     */
+    boolean evict(UUID uuid) {
+        if (pinned.contains(uuid)) return false;
+
+        Entry entry = entries.get(uuid);
+        if (entry == null || entry.data.isDirty()) return false;
+
+        if (entries.remove(uuid, entry)) {
+            evictions.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Drops idle entries, then the least recently used ones while the cache is over its size limit.
+     */
+    void cleanUp() {
+        cleanUpRunning.set(true);
+        try {
+            evictIdleAndExcess();
+        } finally {
+            cleanUpRunning.set(false);
+        }
+    }
+
+    private void evictIdleAndExcess() {
+        long now = System.nanoTime();
+        List<Candidate> candidates = new ArrayList<>();
+
+        for (Map.Entry<UUID, Entry> mapEntry : entries.entrySet()) {
+            if (pinned.contains(mapEntry.getKey())) continue;
+
+            long lastAccess = mapEntry.getValue().lastAccess;
+            if (now - lastAccess > expireAfterNanos) {
+                evict(mapEntry.getKey());
+            } else {
+                candidates.add(new Candidate(mapEntry.getKey(), lastAccess));
+            }
+        }
+
+        int excess = entries.size() - maxSize;
+        if (excess <= 0) return;
+
+        // Sort on the access times captured above; live values may change mid-sort
+        candidates.sort(Comparator.comparingLong(Candidate::lastAccess));
+        for (Candidate candidate : candidates) {
+            if (excess <= 0) break;
+            if (evict(candidate.uuid())) {
+                excess--;
+            }
+        }
+    }
+
+    /**
+     * Returns the players cached right now.
+     */
+    List<UUID> getCachedPlayers() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    long getEvictions() {
+        return evictions.sum();
+    }
+}
@@ -0,0 +1,542 @@
+package com.flow258.playerLevels;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * The {@code journal} storage type: player records in an append-only log.
+ * <p>
+ * Every save appends one fixed-size binary record per player to a memory-mapped
+ * log file, and the latest record of every player is kept in memory. At startup
+ * that state is rebuilt from the newest snapshot plus the logs written after it.
+ * Once a log holds {@code compact-after} records, appends move to a new log and
+ * the state is written to a new snapshot in the background; the older files are
+ * deleted only once the snapshot is complete.
+ * <p>
+ * Every record ends in a CRC32. A record torn by a crash fails its check, and the
+ * log is cut off before it at the next startup.
+ * <p>
+ * Records hold XP and the XP offset in milli-XP.
+ */
+final class PlayerJournal {
+
+    record Record(UUID uuid, String name, long xp, int level, long xpOffset) {
+    }
+
+    static final String STORAGE_TYPE = "journal";
+
+    // type(1) name length(1) offset high(2) level(4) uuid(16) xp(8) name(16) offset low(4) crc(4)
+    static final int RECORD_SIZE = 56;
+    private static final int CRC_OFFSET = 52;
+    private static final int NAME_BYTES = 16;
+    private static final byte TYPE_PUT = 1;
+
+    // The XP offset is kept in the 48 reserved bits, which is over 10^11 XP either way
+    static final long MAX_XP_OFFSET = (1L << 47) - 1;
+
+    // magic(4) format(4) generation(8) count(8)
+    private static final int SNAPSHOT_MAGIC = 0x504C4A53;
+    private static final int SNAPSHOT_FORMAT = 1;
+    private static final int SNAPSHOT_HEADER = 24;
+    private static final int IO_BATCH = 1024;
+
+    private final Path directory;
+    private final long growBytes;
+    private final long compactAfter;
+    private final Logger logger;
+    private final Map<UUID, Record> records = new ConcurrentHashMap<>();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "PlayerLevels-journal-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Guarded by this
+    private long generation;
+    private FileChannel channel;
+    private MappedByteBuffer log;
+    private int logRecords;
+    private boolean compacting;
+    private boolean created;
+
+    private volatile long lastCompactionMillis = -1;
+
+    private PlayerJournal(Path directory, long growBytes, long compactAfter, Logger logger) {
+        this.directory = directory;
+        this.growBytes = Math.max(RECORD_SIZE, growBytes / RECORD_SIZE * RECORD_SIZE);
+        this.compactAfter = compactAfter;
+        this.logger = logger;
+    }
+
+    /**
+     * Opens the journal in {@code directory}, recovering the state from its snapshot and logs.
+     * The log file grows by {@code growBytes} at a time.
+     */
+    static PlayerJournal open(Path directory, long growBytes, long compactAfter, Logger logger) throws IOException {
+        Files.createDirectories(directory);
+        PlayerJournal journal = new PlayerJournal(directory, growBytes, compactAfter, logger);
+        journal.recover();
+        return journal;
+    }
+
+    /**
+     * Returns whether the journal directory held no files when it was opened.
+     */
+    boolean isNew() {
+        return created;
+    }
+
+    Record get(UUID uuid) {
+        return records.get(uuid);
+    }
+
+    void forEach(Consumer<Record> action) {
+        records.values().forEach(action);
+    }
+
+    int size() {
+        return records.size();
+    }
+
+    synchronized int getLogRecords() {
+        return logRecords;
+    }
+
+    long getLastCompactionMillis() {
+        return lastCompactionMillis;
+    }
+
+    /**
+     * Appends the players' current values and forces them to disk before they
+     * become visible to {@link #get}. Each player keeps the XP offset of their
+     * stored record, like a save to {@code player_levels} does.
+     */
+    void append(List<PlayerLevels.PlayerData> batch) throws IOException {
+        List<Record> appended = new ArrayList<>(batch.size());
+        for (PlayerLevels.PlayerData data : batch) {
+            Record stored = records.get(data.getUuid());
+            appended.add(new Record(data.getUuid(), data.getName(), data.getXpMillis(), data.getLevel(),
+                    stored != null ? stored.xpOffset() : 0));
+        }
+        appendRecords(appended);
+    }
+
+    synchronized void appendRecords(List<Record> batch) throws IOException {
+        if (batch.isEmpty()) return;
+
+        ensureCapacity(batch.size());
+        int start = logRecords * RECORD_SIZE;
+        int position = start;
+        for (Record record : batch) {
+            encode(log, position, record);
+            position += RECORD_SIZE;
+        }
+        log.force(start, position - start);
+        logRecords += batch.size();
+
+        for (Record record : batch) {
+            records.put(record.uuid(), record);
+        }
+
+        if (logRecords >= compactAfter && !compacting) {
+            startCompaction();
+        }
+    }
+
+    private void ensureCapacity(int count) throws IOException {
+        long needed = (long) (logRecords + count) * RECORD_SIZE;
+        if (needed <= log.capacity()) return;
+
+        long size = log.capacity();
+        while (size < needed) {
+            size += growBytes;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Journal log " + logFile(generation) + " is full; lower compact-after");
+        }
+        log = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    /**
+     * Moves appends to a new log and snapshots the state as of that point in the
+     * background. Must hold the lock, so the copied state matches the log boundary.
+     */
+    private void startCompaction() throws IOException {
+        compacting = true;
+        long snapshotGeneration = generation + 1;
+        Collection<Record> state = new ArrayList<>(records.values());
+        openLog(snapshotGeneration);
+
+        compactor.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                writeSnapshot(snapshotGeneration, state);
+                deleteOlderThan(snapshotGeneration);
+                lastCompactionMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                logger.info("Compacted the journal into snapshot " + snapshotGeneration + " with " + state.size()
+                        + " players in " + lastCompactionMillis + "ms");
+            } catch (IOException e) {
+                // The logs are kept, so nothing is lost; the next compaction tries again
+                logger.log(Level.WARNING, "Journal compaction failed", e);
+            } finally {
+                synchronized (this) {
+                    compacting = false;
+                }
+            }
+        });
+    }
+
+    /**
+     * Forces the log and waits for a running compaction to finish.
+     */
+    void close() {
+        compactor.shutdown();
+        try {
+            if (!compactor.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warning("Journal compaction did not finish; it resumes at the next start");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            try {
+                log.force();
+                channel.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not close the journal", e);
+            }
+        }
+    }
+
+    private void recover() throws IOException {
+        TreeSet<Long> snapshots = new TreeSet<>();
+        TreeSet<Long> logs = new TreeSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    // A snapshot that was never completed
+                    Files.delete(file);
+                } else if (name.startsWith("snapshot-") && name.endsWith(".dat")) {
+                    snapshots.add(Long.parseLong(name.substring(9, name.length() - 4)));
+                } else if (name.startsWith("journal-") && name.endsWith(".log")) {
+                    logs.add(Long.parseLong(name.substring(8, name.length() - 4)));
+                }
+            }
+        }
+
+        created = snapshots.isEmpty() && logs.isEmpty();
+        long snapshot = snapshots.isEmpty() ? 0 : snapshots.last();
+        if (snapshot > 0) {
+            readSnapshot(snapshot);
+        }
+        deleteOlderThan(Math.max(snapshot, 1));
+
+        // Each log holds the appends made after the snapshot of the same generation
+        long replayed = 0;
+        for (long logGeneration : logs.tailSet(snapshot, true)) {
+            replayed += replay(logGeneration, logGeneration == logs.last());
+        }
+
+        if (logs.isEmpty() || logs.last() < snapshot) {
+            openLog(Math.max(snapshot, 1));
+        }
+        logger.info("Recovered " + records.size() + " players from the journal (snapshot " + snapshot + ", "
+                + replayed + " log records)");
+    }
+
+    private void readSnapshot(long snapshotGeneration) throws IOException {
+        Path file = snapshotFile(snapshotGeneration);
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_HEADER);
+            readFully(in, header);
+            if (header.getInt(0) != SNAPSHOT_MAGIC || header.getInt(4) != SNAPSHOT_FORMAT
+                    || header.getLong(8) != snapshotGeneration) {
+                throw new IOException("Journal snapshot " + file + " has an invalid header");
+            }
+
+            long count = header.getLong(16);
+            if (in.size() != SNAPSHOT_HEADER + count * RECORD_SIZE) {
+                throw new IOException("Journal snapshot " + file + " is truncated");
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(IO_BATCH * RECORD_SIZE);
+            for (long read = 0; read < count; ) {
+                int batch = (int) Math.min(IO_BATCH, count - read);
+                buffer.clear().limit(batch * RECORD_SIZE);
+                readFully(in, buffer);
+                for (int i = 0; i < batch; i++) {
+                    Record record = decode(buffer, i * RECORD_SIZE);
+                    if (record == null) {
+                        throw new IOException("Journal snapshot " + file + " is corrupt at record " + (read + i));
+                    }
+                    records.put(record.uuid(), record);
+                }
+                read += batch;
+            }
+        }
+    }
+
+    /**
+     * Applies every intact record of the log. The last log stays open for appends,
+     * positioned after its last intact record.
+     */
+    private int replay(long logGeneration, boolean last) throws IOException {
+        Path file = logFile(logGeneration);
+        FileChannel in = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_WRITE, 0, in.size() / RECORD_SIZE * RECORD_SIZE);
+
+        int count = 0;
+        for (int position = 0; position + RECORD_SIZE <= mapped.capacity(); position += RECORD_SIZE) {
+            Record record = decode(mapped, position);
+            if (record == null) break;
+            records.put(record.uuid(), record);
+            count++;
+        }
+
+        // Anything after the last intact record was being written when the server stopped
+        int end = count * RECORD_SIZE;
+        if (!isZero(mapped, end)) {
+            logger.warning("Discarded a torn record at the end of " + file.getFileName()
+                    + "; the last save before the crash is lost");
+            mapped.put(end, new byte[mapped.capacity() - end]);
+            mapped.force();
+        }
+
+        if (!last) {
+            in.close();
+            return count;
+        }
+
+        generation = logGeneration;
+        channel = in;
+        log = mapped.capacity() >= growBytes ? mapped : channel.map(FileChannel.MapMode.READ_WRITE, 0, growBytes);
+        logRecords = count;
+        return count;
+    }
+
+    private synchronized void openLog(long logGeneration) throws IOException {
+        if (channel != null) {
+            log.force();
+            channel.close();
+        }
+
+        generation = logGeneration;
+        channel = FileChannel.open(logFile(logGeneration),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        log = channel.map(FileChannel.MapMode.READ_WRITE, 0, growBytes);
+        logRecords = 0;
+    }
+
+    private void writeSnapshot(long snapshotGeneration, Collection<Record> state) throws IOException {
+        Path file = snapshotFile(snapshotGeneration);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_HEADER)
+                    .putInt(SNAPSHOT_MAGIC)
+                    .putInt(SNAPSHOT_FORMAT)
+                    .putLong(snapshotGeneration)
+                    .putLong(state.size())
+                    .flip();
+            writeFully(out, header);
+
+            ByteBuffer buffer = ByteBuffer.allocate(IO_BATCH * RECORD_SIZE);
+            int batched = 0;
+            for (Record record : state) {
+                encode(buffer, batched * RECORD_SIZE, record);
+                if (++batched == IO_BATCH) {
+                    writeFully(out, buffer.clear().limit(batched * RECORD_SIZE));
+                    batched = 0;
+                }
+            }
+            writeFully(out, buffer.clear().limit(batched * RECORD_SIZE));
+            out.force(true);
+        }
+
+        // Only a complete snapshot ever has the final name
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void deleteOlderThan(long keepGeneration) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long fileGeneration;
+                if (name.startsWith("snapshot-") && name.endsWith(".dat")) {
+                    fileGeneration = Long.parseLong(name.substring(9, name.length() - 4));
+                } else if (name.startsWith("journal-") && name.endsWith(".log")) {
+                    fileGeneration = Long.parseLong(name.substring(8, name.length() - 4));
+                } else {
+                    continue;
+                }
+                if (fileGeneration < keepGeneration) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes every player into {@code player_levels} of the target database, in
+     * batches of one transaction each. Returns the number of players written.
+     */
+    int exportTo(StorageExecutor.PooledConnection pooled, String storageType) throws SQLException {
+        List<Record> state = new ArrayList<>(records.values());
+        Connection connection = pooled.getConnection();
+        PreparedStatement statement = pooled.prepare(PlayerLevels.getOffsetUpsertSql(storageType));
+
+        connection.setAutoCommit(false);
+        try {
+            for (int start = 0; start < state.size(); start += IO_BATCH) {
+                for (Record record : state.subList(start, Math.min(start + IO_BATCH, state.size()))) {
+                    statement.setBytes(1, StorageExecutor.toBytes(record.uuid()));
+                    statement.setString(2, record.name());
+                    statement.setLong(3, record.xp());
+                    statement.setInt(4, record.level());
+                    statement.setLong(5, record.xpOffset());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                connection.commit();
+            }
+        } catch (SQLException e) {
+            statement.clearBatch();
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        return state.size();
+    }
+
+    /**
+     * Appends every player from {@code player_levels} of the source database.
+     * Returns the number of players read.
+     */
+    int importFrom(StorageExecutor.PooledConnection pooled) throws SQLException {
+        int count = 0;
+        try (Statement statement = pooled.getConnection().createStatement()) {
+            statement.setFetchSize(IO_BATCH);
+            try (ResultSet resultSet = statement.executeQuery("SELECT uuid, name, xp, level, xp_offset FROM player_levels")) {
+                List<Record> batch = new ArrayList<>(IO_BATCH);
+                while (resultSet.next()) {
+                    batch.add(new Record(StorageExecutor.toUuid(resultSet.getBytes("uuid")), resultSet.getString("name"),
+                            resultSet.getLong("xp"), resultSet.getInt("level"), resultSet.getLong("xp_offset")));
+                    if (batch.size() == IO_BATCH) {
+                        appendRecords(batch);
+                        count += batch.size();
+                        batch.clear();
+                    }
+                }
+                appendRecords(batch);
+                count += batch.size();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return count;
+    }
+
+    private static void encode(ByteBuffer buffer, int offset, Record record) {
+        byte[] name = record.name().getBytes(StandardCharsets.UTF_8);
+        int nameLength = Math.min(name.length, NAME_BYTES);
+
+        long xpOffset = Math.max(-MAX_XP_OFFSET, Math.min(MAX_XP_OFFSET, record.xpOffset()));
+
+        buffer.put(offset, TYPE_PUT);
+        buffer.put(offset + 1, (byte) nameLength);
+        buffer.putShort(offset + 2, (short) (xpOffset >> 32));
+        buffer.putInt(offset + 4, record.level());
+        buffer.putLong(offset + 8, record.uuid().getMostSignificantBits());
+        buffer.putLong(offset + 16, record.uuid().getLeastSignificantBits());
+        buffer.putLong(offset + 24, record.xp());
+        buffer.put(offset + 32, new byte[NAME_BYTES]);
+        buffer.put(offset + 32, name, 0, nameLength);
+        buffer.putInt(offset + 48, (int) xpOffset);
+        buffer.putInt(offset + CRC_OFFSET, crc(buffer, offset));
+    }
+
+    // Null for an unwritten slot and for a torn or damaged record
+    private static Record decode(ByteBuffer buffer, int offset) {
+        if (buffer.get(offset) != TYPE_PUT || buffer.getInt(offset + CRC_OFFSET) != crc(buffer, offset)) {
+            return null;
+        }
+
+        int nameLength = Math.min(buffer.get(offset + 1), NAME_BYTES);
+        byte[] name = new byte[Math.max(0, nameLength)];
+        buffer.get(offset + 32, name);
+        long xpOffset = (long) buffer.getShort(offset + 2) << 32 | buffer.getInt(offset + 48) & 0xFFFFFFFFL;
+        return new Record(new UUID(buffer.getLong(offset + 8), buffer.getLong(offset + 16)),
+                new String(name, StandardCharsets.UTF_8), buffer.getLong(offset + 24), buffer.getInt(offset + 4), xpOffset);
+    }
+
+    private static int crc(ByteBuffer buffer, int offset) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(offset, CRC_OFFSET));
+        return (int) crc.getValue();
+    }
+
+    private static boolean isZero(ByteBuffer buffer, int from) {
+        for (int position = from; position < buffer.capacity(); position++) {
+            if (buffer.get(position) != 0) return false;
+        }
+        return true;
+    }
+
+    private static void readFully(FileChannel in, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer) < 0) throw new IOException("Unexpected end of file");
+        }
+        buffer.flip();
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private Path snapshotFile(long snapshotGeneration) {
+        return directory.resolve("snapshot-" + snapshotGeneration + ".dat");
+    }
+
+    private Path logFile(long logGeneration) {
+        return directory.resolve("journal-" + logGeneration + ".log");
+    }
+}
@@ -0,0 +1,67 @@
+package com.flow258.playerLevels;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.UUID;
+
+/**
+ * Called on the main thread when a player's level has changed, at most once per
+ * player per tick and after the matching {@link PlayerXpChangeEvent}. A jump
+ * over several levels is one event. The player may be offline.
+ */
+public class PlayerLevelChangeEvent extends Event {
+
+    private static final HandlerList HANDLERS = new HandlerList();
+
+    private final UUID uuid;
+    private final String name;
+    private final int oldLevel;
+    private final int newLevel;
+
+    public PlayerLevelChangeEvent(UUID uuid, String name, int oldLevel, int newLevel) {
+        this.uuid = uuid;
+        this.name = name;
+        this.oldLevel = oldLevel;
+        this.newLevel = newLevel;
+    }
+
+    public UUID getUuid() {
+        return uuid;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the player if they are online on this server, or null.
+     */
+    public Player getPlayer() {
+        return Bukkit.getPlayer(uuid);
+    }
+
+    public int getOldLevel() {
+        return oldLevel;
+    }
+
+    public int getNewLevel() {
+        return newLevel;
+    }
+
+    public boolean isLevelUp() {
+        return newLevel > oldLevel;
+    }
+
+    @Override
+    public @NotNull HandlerList getHandlers() {
+        return HANDLERS;
+    }
+
+    public static HandlerList getHandlerList() {
+        return HANDLERS;
+    }
+}
@@ -3,51 +3,102 @@ package com.flow258.playerLevels;
 import me.clip.placeholderapi.expansion.PlaceholderExpansion;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
-import org.bukkit.Material;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabCompleter;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
-import org.bukkit.entity.EntityType;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerStatisticIncrementEvent;
+import org.bukkit.plugin.ServicePriority;
 import org.bukkit.plugin.java.JavaPlugin;
-import org.bukkit.Statistic;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 
 public class PlayerLevels extends JavaPlugin implements Listener {
 
-    private Map<UUID, PlayerData> playerDataMap = new HashMap<>();
-    private Connection connection;
-    private String storageType;
-    private double baseXp;
-    private double xpMultiplier;
-    private List<StatisticConfig> statisticConfigs;
-    private boolean pluginEnabled;
+    // Walks idx_player_levels_rank backwards and stops after LIMIT rows, no sort
+    static final String TOP_PLAYERS_SQL =
+            "SELECT uuid, name, xp, level FROM player_levels ORDER BY level DESC, xp DESC LIMIT ?";
+
+    // Ranks fetched before the full leaderboard, enough for /leveltop and top_<n> placeholders
+    private static final int PREFETCH_TOP = 100;
+
+    // Players per batch lookup query; shorter chunks are padded so every query reuses one statement
+    private static final int LOOKUP_BATCH_SIZE = 500;
+    private static final String LOOKUP_BATCH_SQL = "SELECT uuid, name, xp FROM player_levels WHERE uuid IN ("
+            + String.join(", ", Collections.nCopies(LOOKUP_BATCH_SIZE, "?")) + ")";
+    private static final String LEVEL_UPDATE_SQL = "UPDATE player_levels SET level = ? WHERE uuid = ? AND xp = ?";
+    private static final String OFFSET_BATCH_SQL = "SELECT uuid, xp_offset FROM player_levels WHERE uuid IN ("
+            + String.join(", ", Collections.nCopies(LOOKUP_BATCH_SIZE, "?")) + ")";
+
+    private PlayerCache playerCache;
+    private final LeaderboardIndex leaderboard = new LeaderboardIndex();
+    private final NameIndex nameIndex = new NameIndex();
+    private volatile StorageExecutor storage;
+    private final CompletableFuture<StorageExecutor> storageReady = new CompletableFuture<>();
+    private volatile int prefetchedTop;
+    // Replaced as a whole on every load, never modified
+    private volatile PluginConfig settings;
+    private volatile RenderedPlaceholders defaultPlaceholders;
+    // Players found to have no stored record while logging in
+    private final Set<UUID> newPlayers = ConcurrentHashMap.newKeySet();
+    private final RecomputeScheduler recomputeScheduler = new RecomputeScheduler(this);
+    private final RewardDispatcher rewardDispatcher = new RewardDispatcher(this);
+    private final ChangeEvents changeEvents = new ChangeEvents(this);
+    private final Metrics metrics = new Metrics(this);
+    private final XpWindows xpWindows = new XpWindows(this);
+    private WriteBehindQueue writeBehindQueue;
+    // Set when storage.network is enabled, once the database is ready
+    private volatile NetworkSync networkSync;
+    // Set when storage.type is journal, once it is recovered
+    private volatile PlayerJournal journal;
 
     @Override
     public void onEnable() {
+        long enableStart = System.nanoTime();
+
         // Save default config if it doesn't exist
         saveDefaultConfig();
 
+        // Set up the player cache before anything can look players up
+        playerCache = new PlayerCache(getConfig().getConfigurationSection("storage.cache"));
+
         // Register events
         getServer().getPluginManager().registerEvents(this, this);
 
@@ -61,375 +112,1457 @@ public class PlayerLevels extends JavaPlugin implements Listener {
 
         // Register commands
         getCommand("level").setExecutor(new LevelCommand(this));
-        getCommand("level").setTabCompleter(new LevelTabCompleter());
+        getCommand("level").setTabCompleter(new LevelTabCompleter(this));
         getCommand("leveltop").setExecutor(new LevelTopCommand(this));
 
         // Load configuration
         loadConfig();
 
-        // Initialize database
-        initializeDatabase();
+        // Other plugins can look players up from here on; lookups wait for the database
+        getServer().getServicesManager().register(PlayerLevelsAPI.class, new PlayerLevelsService(this), this,
+                ServicePriority.Normal);
+
+        // Connect and migrate off the main thread so a slow database cannot stall the boot;
+        // commands and placeholders report "loading" until it is ready
+        String storageType = settings.getStorageType();
+        ConfigurationSection storageConfig = getConfig().getConfigurationSection(PluginConfig.STORAGE);
+        Thread startup = new Thread(() -> storageReady.complete(initializeDatabase(storageType, storageConfig, enableStart)),
+                "PlayerLevels-startup");
+        startup.setDaemon(true);
+        startup.start();
+
+        // Start batched background saving; writes wait in the queue until the database is up
+        writeBehindQueue = new WriteBehindQueue(this, getConfig().getConfigurationSection("storage.write-behind"));
+        writeBehindQueue.start();
 
         // Start periodic XP calculation task
         startXpCalculationTask();
 
-        getLogger().info("PlayerLevels plugin enabled!");
+        // Run claimed reward commands a few per tick
+        Bukkit.getScheduler().runTaskTimer(this, rewardDispatcher, 1L, 1L);
+
+        // Fire the level and XP change events of the last tick
+        Bukkit.getScheduler().runTaskTimer(this, changeEvents, 1L, 1L);
+
+        // Save XP gained for the day, week and month leaderboards
+        xpWindows.start(20L * Math.max(1, getConfig().getLong(PluginConfig.WINDOWS + ".flush-interval", 30)), 20L * 60);
+
+        // Periodically write metrics for the Prometheus textfile collector
+        metrics.startExport(getConfig().getConfigurationSection("settings.metrics.prometheus"));
+
+        // Keep players that are already online (e.g. after /reload) in the cache,
+        // and warm them in the background once the database is up
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            playerCache.pin(player.getUniqueId());
+            getPlayerDataAsync(player.getUniqueId()).thenAccept(data -> {
+                if (data != null) {
+                    data.getPlaceholders(settings.getLevelCurve(), settings.getPlaceholderStyle());
+                }
+            });
+        }
+        Bukkit.getScheduler().runTaskTimerAsynchronously(this, playerCache::cleanUp, 20L * 30, 20L * 30);
+
+        getLogger().info("PlayerLevels plugin enabled in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - enableStart) + "ms");
     }
 
     @Override
     public void onDisable() {
-        // Save all player data
-        saveAllPlayerData();
+        getServer().getServicesManager().unregisterAll(this);
 
-        // Close database connection
-        if (connection != null) {
+        // Let a startup that is still connecting finish, so its connections get closed below
+        if (!storageReady.isDone()) {
             try {
-                connection.close();
-            } catch (SQLException e) {
-                getLogger().log(Level.SEVERE, "Error closing database connection", e);
+                storageReady.get(10, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                getLogger().warning("Database startup did not finish before shutdown");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // Already logged by the startup
             }
         }
 
+        // Save all pending player data
+        if (writeBehindQueue != null) {
+            writeBehindQueue.shutdown();
+        }
+        if (storage != null) {
+            xpWindows.flush(storage);
+        }
+
+        // Close database connections
+        if (storage != null) {
+            storage.shutdown(10, TimeUnit.SECONDS);
+        }
+        if (journal != null) {
+            journal.close();
+        }
+
+        // Rewards claimed by the final writes are still owed
+        rewardDispatcher.drain();
+
         getLogger().info("PlayerLevels plugin disabled!");
     }
 
     public void loadConfig() {
+        reloadSettings();
+    }
+
+    /**
+     * Loads the config into a new snapshot and swaps it in with a single write. On a
+     * reload only the work affected by the changed sections is redone. Returns a
+     * description of what changed.
+     */
+    List<String> reloadSettings() {
         reloadConfig();
         FileConfiguration config = getConfig();
 
-        // Load basic settings
-        pluginEnabled = config.getBoolean("settings.enable-plugin", true);
-        baseXp = config.getDouble("settings.levels.base-xp", 100);
-        xpMultiplier = config.getDouble("settings.levels.xp-multiplier", 1.5);
-        storageType = config.getString("storage.type", "sqlite").toLowerCase();
-
-        // Load statistics configurations
-        statisticConfigs = new ArrayList<>();
-        ConfigurationSection statsSection = config.getConfigurationSection("settings.statistics");
-
-        if (statsSection != null) {
-            for (String key : statsSection.getKeys(false)) {
-                ConfigurationSection statSection = statsSection.getConfigurationSection(key);
-                if (statSection != null) {
-                    String statisticName = statSection.getString("statistic");
-                    String materialName = statSection.getString("material", "");
-                    String entityName = statSection.getString("entity", "");
-                    double xpValue = statSection.getDouble("xp-value");
-
-                    try {
-                        Statistic statistic = Statistic.valueOf(statisticName);
-                        Material material = null;
-                        EntityType entityType = null;
-
-                        if (!materialName.isEmpty()) {
-                            material = Material.valueOf(materialName);
-                        }
+        PluginConfig previous = settings;
+        PluginConfig loaded = PluginConfig.load(config, getLogger());
+        settings = loaded;
 
-                        if (!entityName.isEmpty()) {
-                            entityType = EntityType.valueOf(entityName);
-                        }
+        LevelCurve curve = loaded.getLevelCurve();
+        StatisticRules rules = loaded.getStatisticRules();
+        getLogger().info("Loaded " + curve.getType() + " level curve with " + curve.getMaxLevel() + " levels");
+        getLogger().info("Loaded " + rules.getRuleCount() + " statistic rules reading " + rules.getReadCount() + " statistics");
 
-                        statisticConfigs.add(new StatisticConfig(statistic, material, entityType, xpValue));
-                    } catch (IllegalArgumentException e) {
-                        getLogger().warning("Invalid statistic, material, or entity in config: " + statisticName);
-                    }
+        recomputeScheduler.configure(loaded.getRecomputeIntervalTicks(), config.getConfigurationSection(PluginConfig.XP_TRACKING));
+        rewardDispatcher.configure(config.getConfigurationSection(PluginConfig.REWARD_DISPATCH));
+        changeEvents.configure(config.getConfigurationSection(PluginConfig.EVENTS));
+        xpWindows.configure(config.getConfigurationSection(PluginConfig.WINDOWS));
+
+        List<String> changes = new ArrayList<>();
+        if (previous == null) return changes;
+
+        Set<String> changed = loaded.getChangedSections(previous);
+        if (changed.isEmpty()) {
+            changes.add("Nothing changed");
+            return changes;
+        }
+        changes.add("Changed: " + String.join(", ", changed));
+
+        // XP depends on the rules, and incremental XP needs a fresh base after a mode switch
+        if (changed.contains(PluginConfig.STATISTICS) || loaded.isIncrementalXp() != previous.isIncrementalXp()) {
+            recomputeScheduler.requestCycle();
+            changes.add("Statistic rules changed, online players are recomputed in the background");
+        }
+
+        // Levels follow from stored XP, so a new curve needs no statistics
+        if (changed.contains(PluginConfig.LEVELS)) {
+            rederiveLevels(curve);
+            changes.add("Level curve changed, levels are re-derived from stored XP");
+        }
+
+        if (changed.contains(PluginConfig.STORAGE)) {
+            changes.add("Storage settings take effect after a restart");
+        }
+
+        getLogger().info("Reloaded configuration. " + String.join(". ", changes));
+        return changes;
+    }
+
+    /**
+     * Re-derives every ranked player's level from their stored XP with the new curve.
+     * Cached players are handed to the recompute scheduler, which changes their level
+     * on the main thread a few at a time; everyone else is compared off the main
+     * thread and only their stored level is written. Rewards are not paid for levels
+     * that only moved because the curve did. Main thread only.
+     */
+    private void rederiveLevels(LevelCurve curve) {
+        Set<UUID> cached = new HashSet<>(playerCache.getCachedPlayers());
+        recomputeScheduler.requestLevels(curve, cached);
+
+        Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
+            long start = System.nanoTime();
+            List<LeaderboardIndex.Entry> stored = new ArrayList<>();
+            for (LeaderboardIndex.Entry entry : leaderboard.getRange(0, leaderboard.size())) {
+                // A newer reload has taken over
+                if (settings.getLevelCurve() != curve) return;
+                if (!cached.contains(entry.getUuid())) {
+                    stored.add(entry);
                 }
             }
-        }
 
-        getLogger().info("Loaded " + statisticConfigs.size() + " statistics configurations");
+            int updated = storeLevels(stored, curve);
+            getLogger().info("Re-derived levels for " + updated + " stored players in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+        });
     }
 
-    private void initializeDatabase() {
-        try {
-            if ("mysql".equals(storageType)) {
-                // MySQL setup
-                String host = getConfig().getString("storage.mysql.host", "localhost");
-                int port = getConfig().getInt("storage.mysql.port", 3306);
-                String database = getConfig().getString("storage.mysql.database", "minecraft");
-                String username = getConfig().getString("storage.mysql.username", "root");
-                String password = getConfig().getString("storage.mysql.password", "");
+    /**
+     * Re-derives a cached player's level from their XP with {@code curve}, leaving
+     * the XP alone, and saves it. Main thread only. Returns false if the player is
+     * no longer cached.
+     */
+    boolean rederiveLevel(UUID uuid, LevelCurve curve) {
+        PlayerData data = playerCache.peek(uuid);
+        if (data == null) return false;
+
+        long xp = data.getXpMillis();
+        int level = curve.getLevel(xp);
+        int previousLevel = data.getLevel();
+        if (level == previousLevel) return true;
+
+        // Only cached players get events; a new curve can move every stored player
+        changeEvents.changed(uuid, data.getName(), xp, previousLevel, xp, level);
+        data.setLevel(level);
+        leaderboard.update(uuid, data.getName(), level, xp);
+        writeBehindQueue.markDirty(data);
+        return true;
+    }
+
+    /**
+     * Writes the level {@code curve} gives the leaderboard XP of each player that is
+     * not cached, for the players whose level moved. Only the level is written, and
+     * only while the stored XP is still the one it was derived from, so a newer save
+     * from another server is left alone. Returns the number of players written.
+     */
+    int storeLevels(List<LeaderboardIndex.Entry> entries, LevelCurve curve) {
+        List<StoredLevel> changed = new ArrayList<>();
+        for (LeaderboardIndex.Entry entry : entries) {
+            if (playerCache.peek(entry.getUuid()) != null) continue;
+
+            int level = curve.getLevel(entry.getXp());
+            if (level == entry.getLevel()) continue;
+            leaderboard.update(entry.getUuid(), entry.getName(), level, entry.getXp());
+            changed.add(new StoredLevel(entry.getUuid(), entry.getXp(), level));
+        }
 
-                connection = DriverManager.getConnection(
-                        "jdbc:mysql://" + host + ":" + port + "/" + database, username, password);
+        StorageExecutor storage = this.storage;
+        if (changed.isEmpty() || storage == null) return 0;
 
-            } else {
-                // SQLite setup (default)
-                connection = DriverManager.getConnection(
-                        "jdbc:sqlite:" + getDataFolder().getAbsolutePath() + "/playerlevels.db");
+        storage.write("store_levels", pooled -> {
+            PlayerJournal journal = this.journal;
+            if (journal != null) {
+                appendLevels(journal, changed);
+                return null;
+            }
+
+            Connection connection = pooled.getConnection();
+            PreparedStatement statement = pooled.prepare(LEVEL_UPDATE_SQL);
+            connection.setAutoCommit(false);
+            try {
+                int queued = 0;
+                for (StoredLevel stored : changed) {
+                    statement.setInt(1, stored.level());
+                    statement.setBytes(2, StorageExecutor.toBytes(stored.uuid()));
+                    statement.setLong(3, stored.xp());
+                    statement.addBatch();
+
+                    if (++queued % LOOKUP_BATCH_SIZE == 0) {
+                        statement.executeBatch();
+                    }
+                }
+                statement.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                statement.clearBatch();
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
             }
+            return null;
+        }).whenComplete((ignored, error) -> {
+            if (error != null) {
+                getLogger().log(Level.SEVERE, "Error saving the levels of " + changed.size() + " players", error.getCause());
+            }
+        });
+        return changed.size();
+    }
 
-            // Create tables if they don't exist
-            try (Statement statement = connection.createStatement()) {
-                statement.execute(
-                        "CREATE TABLE IF NOT EXISTS player_levels (" +
-                                "uuid VARCHAR(36) PRIMARY KEY, " +
-                                "name VARCHAR(16) NOT NULL, " +
-                                "xp DOUBLE NOT NULL DEFAULT 0, " +
-                                "level INT NOT NULL DEFAULT 1" +
-                                ")"
-                );
+    // Like the SQL update, a record whose XP has moved on keeps its level
+    private static void appendLevels(PlayerJournal journal, List<StoredLevel> changed) {
+        List<PlayerJournal.Record> records = new ArrayList<>(changed.size());
+        for (StoredLevel level : changed) {
+            PlayerJournal.Record stored = journal.get(level.uuid());
+            if (stored != null && stored.xp() == level.xp()) {
+                records.add(new PlayerJournal.Record(stored.uuid(), stored.name(), stored.xp(), level.level(),
+                        stored.xpOffset()));
             }
+        }
 
-            getLogger().info("Database connection established using " + storageType);
+        try {
+            journal.appendRecords(records);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
+    /**
+     * Opens and migrates the database, then prefetches the top of the leaderboard.
+     * Runs on the startup thread; returns null if the database is unavailable.
+     */
+    private StorageExecutor initializeDatabase(String storageType, ConfigurationSection storageConfig, long enableStart) {
+        StorageExecutor opened;
+        long start = System.nanoTime();
+        try {
+            opened = StorageExecutor.open(getLogger(), storageType, getSqliteFile(storageConfig), storageConfig);
         } catch (SQLException e) {
             getLogger().log(Level.SEVERE, "Failed to initialize database connection", e);
+            return null;
+        }
+        long connectNanos = System.nanoTime() - start;
+
+        // Create or upgrade the schema
+        start = System.nanoTime();
+        try {
+            opened.write("migrate", pooled -> SchemaMigrations.migrate(pooled, opened.isSqlite(), getLogger())).join();
+        } catch (CompletionException e) {
+            getLogger().log(Level.SEVERE, "Failed to migrate the database schema", e.getCause());
+            opened.shutdown(10, TimeUnit.SECONDS);
+            return null;
+        }
+        long migrateNanos = System.nanoTime() - start;
+
+        // The plugin was disabled while the database was connecting
+        if (!isEnabled()) {
+            opened.shutdown(10, TimeUnit.SECONDS);
+            return null;
+        }
+
+        // Player records live in the journal; the SQLite file keeps reward claims
+        if (PlayerJournal.STORAGE_TYPE.equals(storageType)) {
+            start = System.nanoTime();
+            PlayerJournal opening;
+            try {
+                opening = openJournal(opened, storageConfig);
+            } catch (IOException | CompletionException e) {
+                getLogger().log(Level.SEVERE, "Failed to open the journal",
+                        e instanceof CompletionException ? e.getCause() : e);
+                opened.shutdown(10, TimeUnit.SECONDS);
+                return null;
+            }
+
+            // The whole journal is in memory, so the leaderboard is complete right away
+            opening.forEach(record -> {
+                leaderboard.addIfAbsent(record.uuid(), record.name(), calculateLevelMillis(record.xp()), record.xp());
+                nameIndex.putIfAbsent(record.uuid(), record.name());
+            });
+            leaderboard.setLoaded(true);
+            xpWindows.load(opened);
+
+            journal = opening;
+            storage = opened;
+            getLogger().info("Database ready using journal in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - enableStart) + "ms (connect "
+                    + TimeUnit.NANOSECONDS.toMillis(connectNanos) + "ms, migrate "
+                    + TimeUnit.NANOSECONDS.toMillis(migrateNanos) + "ms, journal "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms)");
+            return opened;
+        }
+
+        long prefetchStart = System.nanoTime();
+        prefetchTopPlayers(opened);
+        long prefetchNanos = System.nanoTime() - prefetchStart;
+
+        ConfigurationSection networkConfig = storageConfig != null ? storageConfig.getConfigurationSection("network") : null;
+        if (networkConfig != null && networkConfig.getBoolean("enabled", false)) {
+            try {
+                startNetworkSync(opened, networkConfig);
+            } catch (CompletionException e) {
+                getLogger().log(Level.SEVERE, "Failed to start network mode; running standalone", e.getCause());
+            }
         }
+
+        storage = opened;
+        getLogger().info("Database ready using " + storageType + " in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - enableStart) + "ms (connect "
+                + TimeUnit.NANOSECONDS.toMillis(connectNanos) + "ms, migrate "
+                + TimeUnit.NANOSECONDS.toMillis(migrateNanos) + "ms, top " + PREFETCH_TOP + " "
+                + TimeUnit.NANOSECONDS.toMillis(prefetchNanos) + "ms)");
+
+        // Build the rest of the in-memory leaderboard in the background
+        loadLeaderboard();
+        return opened;
     }
 
-    private void startXpCalculationTask() {
-        // Schedule task to update player XP every 5 minutes
-        Bukkit.getScheduler().runTaskTimerAsynchronously(this, this::updateAllPlayersXp, 20L * 60, 20L * 300);
+    private String getSqliteFile(ConfigurationSection storageConfig) {
+        String fileName = storageConfig != null ? storageConfig.getString("sqlite.file", "playerlevels.db") : "playerlevels.db";
+        return Path.of(fileName).isAbsolute()
+                ? fileName
+                : getDataFolder().toPath().resolve(fileName).toAbsolutePath().toString();
     }
 
-    private void updateAllPlayersXp() {
-        if (!pluginEnabled) return;
+    private PlayerJournal openJournal(StorageExecutor opened, ConfigurationSection storageConfig) throws IOException {
+        ConfigurationSection config = storageConfig != null ? storageConfig.getConfigurationSection("journal") : null;
+        String directoryName = config != null ? config.getString("directory", "journal") : "journal";
+        Path directory = Path.of(directoryName).isAbsolute()
+                ? Path.of(directoryName)
+                : getDataFolder().toPath().resolve(directoryName);
+        long growBytes = 1024L * 1024 * (config != null ? Math.max(1, config.getLong("segment-size", 16)) : 16);
+        long compactAfter = config != null ? Math.max(1000, config.getLong("compact-after", 500000)) : 500000;
+
+        PlayerJournal opening = PlayerJournal.open(directory, growBytes, compactAfter, getLogger());
+        if (storageConfig.getBoolean("network.enabled", false)) {
+            getLogger().warning("Network mode needs the sqlite or mysql storage type and is off with the journal");
+        }
 
-        for (Player player : Bukkit.getOnlinePlayers()) {
-            calculateAndUpdatePlayerXp(player);
+        // Switching from sqlite keeps the same file, so its players are carried over once
+        if (opening.isNew()) {
+            int imported = opened.read("journal_import", opening::importFrom).join();
+            if (imported > 0) {
+                getLogger().info("Imported " + imported + " players from player_levels into the new journal");
+            }
         }
+        return opening;
     }
 
-    public void calculateAndUpdatePlayerXp(Player player) {
-        if (!pluginEnabled) return;
-
+    /**
+     * Copies every player from the journal into {@code player_levels} of a SQL
+     * backend, or back. Runs in the background and reports to {@code sender}.
+     * The sqlite target is the file the journal keeps reward claims in.
+     */
+    void transferJournal(CommandSender sender, boolean export, String targetType) {
+        PlayerJournal journal = this.journal;
         Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
-            double totalXp = 0;
+            long start = System.nanoTime();
+            StorageExecutor target = storage;
+            boolean mysql = "mysql".equals(targetType);
+            try {
+                if (mysql) {
+                    target = StorageExecutor.open(getLogger(), "mysql", null,
+                            getConfig().getConfigurationSection(PluginConfig.STORAGE));
+                    target.write("migrate", pooled -> SchemaMigrations.migrate(pooled, false, getLogger())).join();
+                }
 
-            // Calculate XP from all configured statistics
-            for (StatisticConfig config : statisticConfigs) {
-                int statValue;
+                int count = export
+                        ? target.write("journal_export", pooled -> journal.exportTo(pooled, targetType)).join()
+                        : target.read("journal_import", journal::importFrom).join();
+
+                // Imported values replace the journal's; players with unsaved changes keep theirs
+                if (!export) {
+                    journal.forEach(record -> {
+                        int level = calculateLevelMillis(record.xp());
+                        PlayerData cached = playerCache.peek(record.uuid());
+                        if (cached != null && cached.isDirty()) return;
+                        if (cached != null) {
+                            cached.setXp(record.xp(), level);
+                        }
+                        leaderboard.update(record.uuid(), record.name(), level, record.xp());
+                        nameIndex.put(record.uuid(), record.name());
+                    });
+                }
 
-                try {
-                    if (config.getMaterial() != null) {
-                        statValue = player.getStatistic(config.getStatistic(), config.getMaterial());
-                    } else if (config.getEntityType() != null) {
-                        statValue = player.getStatistic(config.getStatistic(), config.getEntityType());
-                    } else {
-                        statValue = player.getStatistic(config.getStatistic());
+                sender.sendMessage(ChatColor.GREEN + (export ? "Exported " : "Imported ") + count + " players "
+                        + (export ? "to " : "from ") + targetType + " in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+            } catch (SQLException | CompletionException e) {
+                Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                getLogger().log(Level.SEVERE, "Journal " + (export ? "export to " : "import from ") + targetType
+                        + " failed", cause);
+                sender.sendMessage(ChatColor.RED + "Journal " + (export ? "export" : "import") + " failed: "
+                        + cause.getMessage());
+            } finally {
+                if (mysql && target != null) {
+                    target.shutdown(10, TimeUnit.SECONDS);
+                }
+            }
+        });
+    }
+
+    /**
+     * Joins the servers sharing this database: saves become compare-and-set, and
+     * players saved by another server are reloaded from the change log. The sync
+     * finds changes and conflicts on database threads and hands them to the main
+     * thread, where cached players are changed. Package-private for
+     * {@code NetworkHandlerTest}.
+     */
+    void startNetworkSync(StorageExecutor opened, ConfigurationSection networkConfig) {
+        String serverId = networkConfig.getString("server-id", "");
+        if (serverId == null || serverId.isBlank()) {
+            serverId = UUID.randomUUID().toString().substring(0, 8);
+        }
+        long retentionMillis = TimeUnit.SECONDS.toMillis(Math.max(60, networkConfig.getLong("change-retention", 3600)));
+        long pollTicks = 20L * Math.max(1, networkConfig.getLong("poll-interval", 2));
+
+        NetworkSync sync = NetworkSync.open(opened, serverId, retentionMillis, new NetworkSync.ChangeHandler() {
+            @Override
+            public void remoteChange(NetworkSync.Row stored) {
+                runOnMainThread(() -> applyRemoteChange(stored));
+            }
+
+            @Override
+            public void conflict(PlayerData local, NetworkSync.Row stored) {
+                runOnMainThread(() -> resolveConflict(local, stored));
+            }
+        }, getLogger(), metrics);
+        sync.start(this, pollTicks);
+        networkSync = sync;
+        getLogger().info("Network mode enabled as server '" + serverId + "'");
+    }
+
+    /**
+     * Runs the task on the next tick. Dropped once the plugin is disabled, when the
+     * final saves can still report conflicts; the next start reads the stored rows.
+     */
+    private void runOnMainThread(Runnable task) {
+        if (isEnabled()) {
+            Bukkit.getScheduler().runTask(this, task);
+        }
+    }
+
+    /**
+     * Takes over a player another server saved, unless this server holds unsaved
+     * changes of its own; those are reconciled when they are saved. Main thread
+     * only, so the check cannot interleave with an increment.
+     */
+    private void applyRemoteChange(NetworkSync.Row stored) {
+        int level = calculateLevelMillis(stored.xp());
+        PlayerData cached = playerCache.peek(stored.uuid());
+        if (cached != null && (cached.isDirty() || cached.getVersion() >= stored.version())) return;
+
+        // Another server's bulk write can touch every row, so only cached players get events here
+        if (cached != null) {
+            changeEvents.changed(stored.uuid(), stored.name(), cached.getXpMillis(), cached.getLevel(), stored.xp(), level);
+            cached.setXpOffset(stored.xpOffset());
+            cached.setXp(stored.xp(), level);
+            cached.setVersion(stored.version());
+        }
+        leaderboard.update(stored.uuid(), stored.name(), level, stored.xp());
+        nameIndex.put(stored.uuid(), stored.name());
+    }
+
+    /**
+     * A save lost to another server's. While the player is online here, this
+     * server reads their statistics, so it retries on top of the stored version;
+     * otherwise the stored row wins, even if it was deleted. Either way the stored
+     * XP offset wins, since only a reset or {@code /level set} changes it. Main
+     * thread only.
+     */
+    private void resolveConflict(PlayerData local, NetworkSync.Row stored) {
+        if (playerCache.isPinned(local.getUuid())) {
+            if (stored != null && stored.xpOffset() != local.getXpOffset()) {
+                // The local XP was computed with the old offset
+                long xp = Math.max(0, Xp.add(local.getXpMillis(), Xp.add(local.getXpOffset(), -stored.xpOffset())));
+                int level = calculateLevelMillis(xp);
+                changeEvents.changed(local.getUuid(), local.getName(), local.getXpMillis(), local.getLevel(), xp, level);
+                local.setXpOffset(stored.xpOffset());
+                local.setXp(xp, level);
+                leaderboard.update(local.getUuid(), local.getName(), level, xp);
+            }
+            local.setVersion(stored != null ? stored.version() : -1);
+            writeBehindQueue.markDirty(local);
+            return;
+        }
+        if (stored == null) return;
+
+        int level = calculateLevelMillis(stored.xp());
+        changeEvents.changed(local.getUuid(), stored.name(), local.getXpMillis(), local.getLevel(), stored.xp(), level);
+        local.setXpOffset(stored.xpOffset());
+        local.setXp(stored.xp(), level);
+        local.setVersion(stored.version());
+        leaderboard.update(stored.uuid(), stored.name(), level, stored.xp());
+        nameIndex.put(stored.uuid(), stored.name());
+    }
+
+    /**
+     * Loads the highest ranks into the leaderboard through the rank index, so the
+     * top of the leaderboard is available before the full load completes.
+     */
+    private void prefetchTopPlayers(StorageExecutor storage) {
+        try {
+            storage.read("prefetch_top", pooled -> {
+                PreparedStatement statement = pooled.prepare(TOP_PLAYERS_SQL);
+                statement.setInt(1, PREFETCH_TOP);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        long xp = resultSet.getLong("xp");
+                        leaderboard.addIfAbsent(StorageExecutor.toUuid(resultSet.getBytes("uuid")), resultSet.getString("name"),
+                                calculateLevelMillis(xp), xp);
                     }
+                }
+                return null;
+            }).join();
+            prefetchedTop = PREFETCH_TOP;
+        } catch (CompletionException e) {
+            getLogger().log(Level.WARNING, "Could not prefetch the top players", e.getCause());
+        }
+    }
 
-                    totalXp += statValue * config.getXpValue();
-                } catch (Exception e) {
-                    getLogger().warning("Error getting statistic " + config.getStatistic() + " for player " + player.getName());
+    private void loadLeaderboard() {
+        long start = System.nanoTime();
+        storage.read("load_leaderboard", pooled -> {
+            try (Statement statement = pooled.getConnection().createStatement()) {
+                statement.setFetchSize(1000);
+                try (ResultSet resultSet = statement.executeQuery("SELECT uuid, name, xp FROM player_levels")) {
+                    while (resultSet.next()) {
+                        // Levels follow from XP; a stored level may predate a level curve change
+                        UUID uuid = StorageExecutor.toUuid(resultSet.getBytes("uuid"));
+                        String name = resultSet.getString("name");
+                        long xp = resultSet.getLong("xp");
+                        leaderboard.addIfAbsent(uuid, name, calculateLevelMillis(xp), xp);
+                        nameIndex.putIfAbsent(uuid, name);
+                    }
                 }
             }
+            return leaderboard.size();
+        }).whenComplete((count, error) -> {
+            if (error != null) {
+                getLogger().log(Level.SEVERE, "Error loading leaderboard", error.getCause());
+                return;
+            }
+            leaderboard.setLoaded(true);
+            getLogger().info("Loaded " + count + " players into the leaderboard in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
 
-            // Update player data
-            updatePlayerData(player.getUniqueId(), player.getName(), totalXp);
+            // The windowed leaderboards take their player names from this one
+            xpWindows.load(storage);
         });
     }
 
-    private void updatePlayerData(UUID uuid, String name, double xp) {
-        int level = calculateLevel(xp);
+    private void startXpCalculationTask() {
+        // The full recompute is spread over the interval in small per-tick slices;
+        // in incremental mode it is only a reconciliation pass
+        Bukkit.getScheduler().runTaskTimer(this, recomputeScheduler, 1L, 1L);
+    }
 
-        // Update memory cache
-        PlayerData data = new PlayerData(uuid, name, xp, level);
-        playerDataMap.put(uuid, data);
+    public void calculateAndUpdatePlayerXp(Player player) {
+        if (!settings.isEnabled()) return;
 
-        // Update database
-        try (PreparedStatement statement = connection.prepareStatement(
-                "INSERT INTO player_levels (uuid, name, xp, level) VALUES (?, ?, ?, ?) " +
-                        "ON CONFLICT(uuid) DO UPDATE SET name = ?, xp = ?, level = ?")) {
+        // Statistics may only be read on the main thread
+        if (!Bukkit.isPrimaryThread()) {
+            Bukkit.getScheduler().runTask(this, () -> calculateAndUpdatePlayerXp(player));
+            return;
+        }
 
-            statement.setString(1, uuid.toString());
-            statement.setString(2, name);
-            statement.setDouble(3, xp);
-            statement.setInt(4, level);
-            statement.setString(5, name);
-            statement.setDouble(6, xp);
-            statement.setInt(7, level);
+        applySnapshots(List.of(snapshotStatistics(player)));
+    }
 
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            getLogger().log(Level.SEVERE, "Error updating player data for " + name, e);
+    /**
+     * Publishes XP that a rebuild, a reset, an import or {@code /level set} has
+     * already written to the database.
+     * The leaderboard and name index are updated right away; cached players are
+     * updated on the main thread, where everything else changes them. Bulk writes
+     * cover the whole table, so only cached players get change events.
+     */
+    void applyStoredXp(List<StoredXp> players) {
+        for (StoredXp player : players) {
+            leaderboard.update(player.uuid(), player.name(), calculateLevelMillis(player.xp()), player.xp());
+            nameIndex.put(player.uuid(), player.name());
         }
+
+        runOnMainThread(() -> {
+            for (StoredXp player : players) {
+                applyStoredXp(player);
+            }
+        });
     }
 
-    private void saveAllPlayerData() {
-        for (PlayerData data : playerDataMap.values()) {
-            try (PreparedStatement statement = connection.prepareStatement(
-                    "UPDATE player_levels SET name = ?, xp = ?, level = ? WHERE uuid = ?")) {
+    /**
+     * Updates a cached player to what a bulk write stored. A player whose values
+     * move is saved again: a save that ran between the write and this tick may
+     * have put their older values back.
+     */
+    private void applyStoredXp(StoredXp stored) {
+        PlayerData cached = playerCache.peek(stored.uuid());
+        if (cached == null) return;
+
+        // A save that committed since the write has already moved the version further
+        if (stored.version() > cached.getVersion()) {
+            cached.setVersion(stored.version());
+        }
+        if (cached.getXpMillis() == stored.xp() && cached.getXpOffset() == stored.xpOffset()) return;
+
+        int level = calculateLevelMillis(stored.xp());
+        changeEvents.changed(stored.uuid(), stored.name(), cached.getXpMillis(), cached.getLevel(), stored.xp(), level);
+        cached.setXpOffset(stored.xpOffset());
+        cached.setXp(stored.xp(), level);
+        leaderboard.update(stored.uuid(), cached.getName(), level, stored.xp());
+        writeBehindQueue.markDirty(cached);
+    }
 
-                statement.setString(1, data.getName());
-                statement.setDouble(2, data.getXp());
-                statement.setInt(3, data.getLevel());
-                statement.setString(4, data.getUuid().toString());
 
-                statement.executeUpdate();
-            } catch (SQLException e) {
-                getLogger().log(Level.SEVERE, "Error saving player data for " + data.getName(), e);
+    /**
+     * Reads the stored XP offset of every player among {@code uuids}, or 0 for
+     * players without a row. Comes from the journal in journal mode.
+     */
+    long[] readXpOffsets(StorageExecutor.PooledConnection pooled, List<UUID> uuids) throws SQLException {
+        long[] offsets = new long[uuids.size()];
+        PlayerJournal journal = this.journal;
+        if (journal != null) {
+            for (int i = 0; i < offsets.length; i++) {
+                PlayerJournal.Record record = journal.get(uuids.get(i));
+                offsets[i] = record != null ? record.xpOffset() : 0;
             }
+            return offsets;
         }
+
+        Map<UUID, Long> stored = new HashMap<>();
+        PreparedStatement statement = pooled.prepare(OFFSET_BATCH_SQL);
+        for (int start = 0; start < uuids.size(); start += LOOKUP_BATCH_SIZE) {
+            List<UUID> chunk = uuids.subList(start, Math.min(start + LOOKUP_BATCH_SIZE, uuids.size()));
+            for (int i = 0; i < LOOKUP_BATCH_SIZE; i++) {
+                statement.setBytes(i + 1, StorageExecutor.toBytes(chunk.get(Math.min(i, chunk.size() - 1))));
+            }
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    stored.put(StorageExecutor.toUuid(resultSet.getBytes("uuid")), resultSet.getLong("xp_offset"));
+                }
+            }
+        }
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = stored.getOrDefault(uuids.get(i), 0L);
+        }
+        return offsets;
     }
 
-    public int calculateLevel(double xp) {
-        if (xp <= 0) return 1;
+    /**
+     * Reads the version of every cached player among {@code uuids} inside the
+     * caller's transaction. Bulk writes bump the version, so without this the next
+     * save of a cached player would fail its compare-and-set. The result is -1
+     * outside network mode and for players that are not cached.
+     */
+    long[] readCachedVersions(StorageExecutor.PooledConnection pooled, List<UUID> uuids) throws SQLException {
+        long[] versions = new long[uuids.size()];
+        Arrays.fill(versions, -1);
+
+        NetworkSync network = networkSync;
+        if (network == null) return versions;
+
+        for (int i = 0; i < uuids.size(); i++) {
+            if (playerCache.peek(uuids.get(i)) != null) {
+                versions[i] = network.readVersion(pooled, uuids.get(i));
+            }
+        }
+        return versions;
+    }
+
+    /**
+     * Reads the player's configured statistics. Must run on the main thread.
+     */
+    StatisticSnapshot snapshotStatistics(Player player) {
+        return StatisticSnapshot.take(player, settings.getStatisticRules(), playerCache.peek(player.getUniqueId()));
+    }
 
-        int level = 1;
-        double requiredXp = baseXp;
-        double accumulatedXp = 0;
+    /**
+     * Computes XP from the snapshots off the main thread, then applies it back on
+     * the main thread, where the statistic events add theirs. Saving happens in
+     * the background through the write-behind queue.
+     */
+    void applySnapshots(List<StatisticSnapshot> snapshots) {
+        Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
+            long[] computed = new long[snapshots.size()];
+            for (int i = 0; i < computed.length; i++) {
+                computed[i] = snapshots.get(i).computeXp();
+            }
 
-        while (accumulatedXp + requiredXp <= xp) {
-            accumulatedXp += requiredXp;
-            level++;
-            requiredXp = baseXp * Math.pow(xpMultiplier, level - 1);
+            Bukkit.getScheduler().runTask(this, () -> {
+                for (int i = 0; i < computed.length; i++) {
+                    applySnapshot(snapshots.get(i), computed[i]);
+                }
+            });
+        });
+    }
+
+    /**
+     * Stores the XP computed from a snapshot. Main thread only. Event XP added
+     * since the snapshot was taken is not in its statistics and is carried over,
+     * and a snapshot older than one already applied is dropped.
+     * <p>
+     * The player's XP offset is subtracted from the statistics XP, so a reset or
+     * {@code /level set} survives the recompute. A player still being loaded is
+     * skipped, since their offset is not known yet.
+     * <p>
+     * Only XP gained by playing counts towards the windows, not {@code /level set}
+     * or a rebuild. It is the growth of the statistics since the last applied
+     * snapshot, less what the events in between already recorded.
+     */
+    void applySnapshot(StatisticSnapshot snapshot, long statsXp) {
+        UUID uuid = snapshot.getUuid();
+        PlayerData data = playerCache.peek(uuid);
+        if (data == null && playerCache.isLoading(uuid)) return;
+        AppliedSnapshot last = data != null ? data.getLastSnapshot() : null;
+        if (last != null && snapshot.getTakenAt() - last.takenAt() <= 0) return;
+
+        long countedXp = Math.max(0, Xp.add(statsXp, data != null ? -data.getXpOffset() : 0));
+        long eventXpSince = data != null ? data.getEventXp() - snapshot.getEventXp() : 0;
+        long gained;
+        if (last == null) {
+            // Against the XP held when the statistics were read, if the player was cached
+            gained = snapshot.getPreviousXp() >= 0 ? countedXp - snapshot.getPreviousXp() : 0;
+        } else if (last.rules() == snapshot.getRules()) {
+            gained = (statsXp - last.statsXp()) - (snapshot.getEventXp() - last.eventXp());
+        } else {
+            // Reweighted by a reload, not earned
+            gained = 0;
         }
+        xpWindows.record(uuid, snapshot.getName(), gained);
 
-        return level;
+        PlayerData updated = updatePlayerData(uuid, snapshot.getName(), Xp.add(countedXp, eventXpSince));
+        updated.setLastSnapshot(new AppliedSnapshot(snapshot.getRules(), statsXp, snapshot.getEventXp(),
+                snapshot.getTakenAt()));
     }
 
-    public double getXpForNextLevel(double currentXp) {
-        int currentLevel = calculateLevel(currentXp);
-        double xpNeeded = baseXp * Math.pow(xpMultiplier, currentLevel - 1);
-        double accumulatedXp = 0;
+    /**
+     * Sets the player's XP and returns their cached data. The cached instance is
+     * updated in place, so a pending save or a concurrent increment keeps working
+     * on the data everyone else sees.
+     */
+    private PlayerData updatePlayerData(UUID uuid, String name, long xp) {
+        int level = calculateLevelMillis(xp);
+        queueChange(uuid, name, xp, level);
+
+        PlayerData data = playerCache.peek(uuid);
+        int previousLevel;
+        if (data == null) {
+            PlayerData created = new PlayerData(uuid, name, xp, level);
+            data = playerCache.putIfAbsent(created);
+            // Players seen for the first time start from level 1
+            previousLevel = data == created ? 1 : data.getLevel();
+        } else {
+            previousLevel = data.getLevel();
+        }
+        data.setName(name);
+        data.setXp(xp, level);
+        leaderboard.update(uuid, name, level, xp);
+        nameIndex.put(uuid, name);
 
-        for (int i = 1; i < currentLevel; i++) {
-            accumulatedXp += baseXp * Math.pow(xpMultiplier, i - 1);
+        // Queue the database write
+        writeBehindQueue.markDirty(data);
+
+        rewardDispatcher.levelChanged(uuid, name, previousLevel, level);
+        return data;
+    }
+
+    /**
+     * Queues the change events for a player about to take the given values, so
+     * call it before they are applied. The previous values come from the cache,
+     * else the leaderboard; a player in neither counts as new at level 1.
+     */
+    private void queueChange(UUID uuid, String name, long xp, int level) {
+        PlayerData cached = playerCache.peek(uuid);
+        if (cached != null) {
+            changeEvents.changed(uuid, name, cached.getXpMillis(), cached.getLevel(), xp, level);
+            return;
+        }
+        LeaderboardIndex.Entry ranked = leaderboard.get(uuid);
+        if (ranked != null) {
+            changeEvents.changed(uuid, name, ranked.getXp(), ranked.getLevel(), xp, level);
+        } else {
+            changeEvents.changed(uuid, name, 0, 1, xp, level);
+        }
+    }
+
+    String getUpsertSql() {
+        return getUpsertSql(storage.getStorageType());
+    }
+
+    static String getUpsertSql(String storageType) {
+        if ("mysql".equals(storageType)) {
+            return "INSERT INTO player_levels (uuid, name, xp, level) VALUES (?, ?, ?, ?) " +
+                    "ON DUPLICATE KEY UPDATE name = VALUES(name), xp = VALUES(xp), level = VALUES(level), version = version + 1";
+        }
+        return "INSERT INTO player_levels (uuid, name, xp, level) VALUES (?, ?, ?, ?) " +
+                "ON CONFLICT(uuid) DO UPDATE SET name = excluded.name, xp = excluded.xp, level = excluded.level, " +
+                "version = version + 1";
+    }
+
+    /**
+     * Like {@link #getUpsertSql(String)}, but also writes the XP offset as a
+     * fifth parameter. Regular saves leave the offset alone; only a reset,
+     * {@code /level set}, an import or a transfer writes it.
+     */
+    static String getOffsetUpsertSql(String storageType) {
+        if ("mysql".equals(storageType)) {
+            return "INSERT INTO player_levels (uuid, name, xp, level, xp_offset) VALUES (?, ?, ?, ?, ?) " +
+                    "ON DUPLICATE KEY UPDATE name = VALUES(name), xp = VALUES(xp), level = VALUES(level), " +
+                    "xp_offset = VALUES(xp_offset), version = version + 1";
+        }
+        return "INSERT INTO player_levels (uuid, name, xp, level, xp_offset) VALUES (?, ?, ?, ?, ?) " +
+                "ON CONFLICT(uuid) DO UPDATE SET name = excluded.name, xp = excluded.xp, level = excluded.level, " +
+                "xp_offset = excluded.xp_offset, version = version + 1";
+    }
+
+    StorageExecutor getStorage() {
+        return storage;
+    }
+
+    /**
+     * Completes with the storage once the database is connected, or with null if it could not be.
+     */
+    CompletableFuture<StorageExecutor> getStorageReady() {
+        return storageReady;
+    }
+
+    private void addPlayerXp(Player player, long xpDelta) {
+        PlayerData data = playerCache.peek(player.getUniqueId());
+
+        // Players without loaded data are picked up by the next recompute
+        if (data != null) {
+            int previousLevel = data.getLevel();
+            long previousXp = data.getXpMillis();
+            long xp = Xp.add(previousXp, xpDelta);
+            int level = calculateLevelMillis(xp);
+            changeEvents.changed(data.getUuid(), data.getName(), previousXp, previousLevel, xp, level);
+            data.setXp(xp, level);
+            data.addEventXp(xpDelta);
+            leaderboard.update(data.getUuid(), data.getName(), level, xp);
+            xpWindows.record(data.getUuid(), data.getName(), xpDelta);
+            writeBehindQueue.markDirty(data);
+            rewardDispatcher.levelChanged(data.getUuid(), data.getName(), previousLevel, level);
         }
+    }
+
+    // The *Millis methods take and return milli-XP, see Xp
+    public int calculateLevelMillis(long xp) {
+        return settings.getLevelCurve().getLevel(xp);
+    }
+
+    /**
+     * @deprecated takes XP points as a {@code double}; use {@link #calculateLevelMillis(long)}
+     */
+    @Deprecated
+    public int calculateLevel(double xp) {
+        return calculateLevelMillis(Xp.of(xp));
+    }
+
+    public long getXpForNextLevelMillis(long currentXp) {
+        return settings.getLevelCurve().getXpForNextLevel(currentXp);
+    }
+
+    /**
+     * @deprecated takes and returns XP points as a {@code double}; use
+     * {@link #getXpForNextLevelMillis(long)}
+     */
+    @Deprecated
+    public double getXpForNextLevel(double currentXp) {
+        return Xp.toPoints(getXpForNextLevelMillis(Xp.of(currentXp)));
+    }
 
-        return accumulatedXp + xpNeeded - currentXp;
+    public long getXpForLevelMillis(int level) {
+        return settings.getLevelCurve().getXpForLevel(level);
     }
 
+    /**
+     * Returns the player's data, waiting for the database on a cache miss.
+     *
+     * @deprecated blocks the calling thread on a miss; other plugins should use
+     * {@link PlayerLevelsAPI} from the services manager
+     */
+    @Deprecated
     public PlayerData getPlayerData(UUID uuid) {
         // Try to get from cache first
-        PlayerData data = playerDataMap.get(uuid);
+        PlayerData data = playerCache.getIfPresent(uuid);
 
-        // If not in cache, load from database
+        // If not in cache, wait for the database
         if (data == null) {
-            try (PreparedStatement statement = connection.prepareStatement(
-                    "SELECT name, xp, level FROM player_levels WHERE uuid = ?")) {
+            try {
+                data = getPlayerDataAsync(uuid).join();
+            } catch (CompletionException e) {
+                // Already logged by the load
+            }
+        }
 
-                statement.setString(1, uuid.toString());
+        return data;
+    }
 
-                try (ResultSet resultSet = statement.executeQuery()) {
-                    if (resultSet.next()) {
-                        String name = resultSet.getString("name");
-                        double xp = resultSet.getDouble("xp");
-                        int level = resultSet.getInt("level");
+    /**
+     * Returns the cached data without ever blocking. On a miss a background load is
+     * started (at most one per player) and null is returned.
+     */
+    PlayerData getPlayerDataIfCached(UUID uuid) {
+        PlayerData data = playerCache.getIfPresent(uuid);
+        if (data == null && !playerCache.isLoading(uuid)) {
+            getPlayerDataAsync(uuid);
+        }
+        return data;
+    }
+
+    /**
+     * Returns the player's placeholder strings, rendering them only if the XP,
+     * level curve or placeholder style changed since the last call.
+     */
+    RenderedPlaceholders getPlaceholders(PlayerData data) {
+        metrics.placeholderRequests.increment();
+
+        long start = System.nanoTime();
+        RenderedPlaceholders previous = data.placeholders;
+        PluginConfig config = settings;
+        RenderedPlaceholders rendered = data.getPlaceholders(config.getLevelCurve(), config.getPlaceholderStyle());
+        if (rendered != previous) {
+            metrics.placeholderRender.record(System.nanoTime() - start);
+        }
+        return rendered;
+    }
+
+    RenderedPlaceholders getDefaultPlaceholders() {
+        PluginConfig config = settings;
+        LevelCurve curve = config.getLevelCurve();
+        RenderedPlaceholders.Style style = config.getPlaceholderStyle();
+        RenderedPlaceholders defaults = defaultPlaceholders;
+        if (defaults == null || !defaults.isCurrent(0, curve, style)) {
+            defaults = RenderedPlaceholders.render(0, curve, style);
+            defaultPlaceholders = defaults;
+        }
+        return defaults;
+    }
+
+    String getPlaceholderLoadingText() {
+        return settings.getPlaceholderStyle().getLoading();
+    }
+
+    public CompletableFuture<PlayerData> getPlayerDataAsync(UUID uuid) {
+        return playerCache.get(uuid, this::loadPlayerData);
+    }
+
+    private CompletableFuture<PlayerData> loadPlayerData(UUID uuid) {
+        // Loads requested during startup wait for the database instead of treating the player as new
+        return storageReady.thenCompose(storage -> {
+            if (storage == null) return CompletableFuture.completedFuture(null);
+
+            PlayerJournal journal = this.journal;
+            return journal != null
+                    ? CompletableFuture.completedFuture(readPlayerData(journal, uuid))
+                    : readPlayerData(storage, uuid);
+        });
+    }
+
+    /**
+     * Returns every given player that has been seen. Cached players come from
+     * memory; the rest are read in one storage task and are not cached, so a
+     * large lookup cannot push online players' neighbours out of the cache.
+     */
+    CompletableFuture<Map<UUID, PlayerData>> getPlayerDataBatch(Collection<UUID> uuids) {
+        Map<UUID, PlayerData> found = new HashMap<>();
+        List<UUID> missing = new ArrayList<>();
+        for (UUID uuid : new LinkedHashSet<>(uuids)) {
+            PlayerData cached = playerCache.peek(uuid);
+            if (cached != null) {
+                found.put(uuid, cached);
+            } else {
+                missing.add(uuid);
+            }
+        }
+        if (missing.isEmpty()) return CompletableFuture.completedFuture(found);
 
-                        data = new PlayerData(uuid, name, xp, level);
-                        playerDataMap.put(uuid, data);
+        return storageReady.thenCompose(storage -> {
+            if (storage == null) return CompletableFuture.completedFuture(found);
+
+            PlayerJournal journal = this.journal;
+            if (journal != null) {
+                for (UUID uuid : missing) {
+                    PlayerData data = readPlayerData(journal, uuid);
+                    if (data != null) {
+                        found.put(uuid, data);
                     }
                 }
-            } catch (SQLException e) {
-                getLogger().log(Level.SEVERE, "Error loading player data for " + uuid, e);
+                return CompletableFuture.completedFuture(found);
             }
-        }
 
+            return storage.read("load_players", pooled -> {
+                PreparedStatement statement = pooled.prepare(LOOKUP_BATCH_SQL);
+                for (int start = 0; start < missing.size(); start += LOOKUP_BATCH_SIZE) {
+                    List<UUID> chunk = missing.subList(start, Math.min(start + LOOKUP_BATCH_SIZE, missing.size()));
+                    for (int i = 0; i < LOOKUP_BATCH_SIZE; i++) {
+                        statement.setBytes(i + 1, StorageExecutor.toBytes(chunk.get(Math.min(i, chunk.size() - 1))));
+                    }
+
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            UUID uuid = StorageExecutor.toUuid(resultSet.getBytes("uuid"));
+                            long xp = resultSet.getLong("xp");
+                            found.put(uuid, new PlayerData(uuid, resultSet.getString("name"), xp, calculateLevelMillis(xp)));
+                        }
+                    }
+                }
+                return found;
+            });
+        }).whenComplete((players, error) -> {
+            if (error != null) {
+                getLogger().log(Level.SEVERE, "Error loading " + missing.size() + " players", error.getCause());
+            }
+        });
+    }
+
+    private PlayerData readPlayerData(PlayerJournal journal, UUID uuid) {
+        PlayerJournal.Record record = journal.get(uuid);
+        if (record == null) return null;
+
+        PlayerData data = new PlayerData(uuid, record.name(), record.xp(), calculateLevelMillis(record.xp()));
+        data.setXpOffset(record.xpOffset());
         return data;
     }
 
+    private CompletableFuture<PlayerData> readPlayerData(StorageExecutor storage, UUID uuid) {
+        return storage.read("load_player", pooled -> {
+            PreparedStatement statement = pooled.prepare("SELECT name, xp, version, xp_offset FROM player_levels WHERE uuid = ?");
+            statement.setBytes(1, StorageExecutor.toBytes(uuid));
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next()) {
+                    String name = resultSet.getString("name");
+                    long xp = resultSet.getLong("xp");
+                    int level = calculateLevelMillis(xp);
+
+                    PlayerData data = new PlayerData(uuid, name, xp, level);
+                    data.setVersion(resultSet.getLong("version"));
+                    data.setXpOffset(resultSet.getLong("xp_offset"));
+                    return data;
+                }
+            }
+            return null;
+        }).whenComplete((data, error) -> {
+            if (error != null) {
+                getLogger().log(Level.SEVERE, "Error loading player data for " + uuid, error.getCause());
+            }
+        });
+    }
+
     public List<PlayerData> getTopPlayers(int limit) {
-        List<PlayerData> topPlayers = new ArrayList<>();
+        try {
+            return getTopPlayersAsync(limit).join();
+        } catch (CompletionException e) {
+            return new ArrayList<>();
+        }
+    }
 
-        try (PreparedStatement statement = connection.prepareStatement(
-                "SELECT uuid, name, xp, level FROM player_levels ORDER BY level DESC, xp DESC LIMIT ?")) {
+    public CompletableFuture<List<PlayerData>> getTopPlayersAsync(int limit) {
+        if (isTopAvailable(limit)) {
+            return CompletableFuture.completedFuture(getLeaderboardPage(0, limit));
+        }
+
+        StorageExecutor storage = this.storage;
+        if (storage == null) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
 
+        return storage.read("top_players", pooled -> {
+            List<PlayerData> topPlayers = new ArrayList<>();
+            PreparedStatement statement = pooled.prepare(TOP_PLAYERS_SQL);
             statement.setInt(1, limit);
 
             try (ResultSet resultSet = statement.executeQuery()) {
                 while (resultSet.next()) {
-                    UUID uuid = UUID.fromString(resultSet.getString("uuid"));
+                    UUID uuid = StorageExecutor.toUuid(resultSet.getBytes("uuid"));
                     String name = resultSet.getString("name");
-                    double xp = resultSet.getDouble("xp");
+                    long xp = resultSet.getLong("xp");
                     int level = resultSet.getInt("level");
 
                     topPlayers.add(new PlayerData(uuid, name, xp, level));
                 }
             }
-        } catch (SQLException e) {
-            getLogger().log(Level.SEVERE, "Error loading top players", e);
-        }
-
-        return topPlayers;
+            return topPlayers;
+        }).whenComplete((topPlayers, error) -> {
+            if (error != null) {
+                getLogger().log(Level.SEVERE, "Error loading top players", error.getCause());
+            }
+        });
     }
 
+    /**
+     * Sets the player to the minimum XP of {@code level}. The statistics XP the
+     * player has now moves into their XP offset, so the next recompute keeps the
+     * new level. Applied on the main thread once the player is loaded.
+     */
     public void setPlayerLevel(UUID uuid, String name, int level) {
-        double xp = 0;
+        getPlayerDataAsync(uuid).whenComplete((data, error) -> {
+            // Already logged by the load; without the stored offset the new one is unknown
+            if (error != null) return;
+            Bukkit.getScheduler().runTask(this, () -> storeLevel(uuid, name, level));
+        });
+    }
 
-        // Calculate XP for the given level
-        for (int i = 1; i <= level; i++) {
-            xp += baseXp * Math.pow(xpMultiplier, i - 1);
+    private void storeLevel(UUID uuid, String name, int level) {
+        StorageExecutor storage = this.storage;
+        if (storage == null) return;
+
+        // Minimum XP for the given level
+        long xp = getXpForLevelMillis(level);
+        PlayerData data = playerCache.peek(uuid);
+        Player online = Bukkit.getPlayer(uuid);
+        long xpOffset;
+        if (online != null) {
+            xpOffset = Xp.add(snapshotStatistics(online).computeXp(), -xp);
+        } else if (data != null) {
+            // The XP is what the statistics gave after the old offset, so the difference moves into it
+            xpOffset = Xp.add(data.getXpOffset(), Xp.add(data.getXpMillis(), -xp));
+        } else {
+            xpOffset = 0;
         }
+        int previousLevel = data != null ? data.getLevel() : 1;
+
+        List<BulkOperations.Row> rows = List.of(new BulkOperations.Row(uuid, name, xp, xpOffset));
+        storage.write("set_level", pooled -> {
+            BulkOperations.store(this, pooled, rows);
+            return null;
+        }).whenComplete((ignored, error) -> {
+            if (error != null) {
+                getLogger().log(Level.SEVERE, "Error setting the level of " + name, error.getCause());
+                return;
+            }
+            rewardDispatcher.levelChanged(uuid, name, previousLevel, calculateLevelMillis(xp));
+        });
+    }
 
-        // Update player data
-        updatePlayerData(uuid, name, xp);
+    /**
+     * Sets the level of a player found by name, who may be offline. The player is
+     * loaded first so rewards and saves start from their stored values. Completes
+     * with the player's name, or null if nobody with that name has played here.
+     */
+    CompletableFuture<String> setPlayerLevel(String name, int level) {
+        Player online = Bukkit.getPlayer(name);
+        CompletableFuture<UUID> found = online != null
+                ? CompletableFuture.completedFuture(online.getUniqueId())
+                : findPlayerUuid(name);
+
+        return found.thenCompose(uuid -> uuid == null
+                ? CompletableFuture.completedFuture(null)
+                : getPlayerDataAsync(uuid).thenApply(data -> {
+                    if (data == null && online == null) return null;
+
+                    String storedName = data != null ? data.getName() : online.getName();
+                    setPlayerLevel(uuid, storedName, level);
+                    return storedName;
+                }));
+    }
 
-        // Check for rewards
-        Player player = Bukkit.getPlayer(uuid);
-        if (player != null) {
-            checkAndGiveRewards(player, level);
+    /**
+     * Finds a player by name, ignoring case, online or not. Completes with null if there is none.
+     * Once the leaderboard has loaded, the name index knows every stored player and
+     * this never queries the database.
+     */
+    CompletableFuture<UUID> findPlayerUuid(String name) {
+        if (leaderboard.isLoaded()) {
+            return CompletableFuture.completedFuture(nameIndex.get(name));
         }
+
+        StorageExecutor storage = this.storage;
+        if (storage == null) return CompletableFuture.completedFuture(null);
+
+        // Served by idx_player_levels_name; on MySQL the column's collation already ignores case
+        String sql = storage.isSqlite()
+                ? "SELECT uuid FROM player_levels WHERE LOWER(name) = ? LIMIT 1"
+                : "SELECT uuid FROM player_levels WHERE name = ? LIMIT 1";
+        return storage.read("find_player", pooled -> {
+            PreparedStatement statement = pooled.prepare(sql);
+            statement.setString(1, storage.isSqlite() ? name.toLowerCase(Locale.ROOT) : name);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? StorageExecutor.toUuid(resultSet.getBytes("uuid")) : null;
+            }
+        });
     }
 
-    public void checkAndGiveRewards(Player player, int level) {
-        ConfigurationSection rewardsSection = getConfig().getConfigurationSection("settings.rewards");
+    /**
+     * Loads the player's data while they log in, which Paper runs off the main
+     * thread, so the join itself never waits for the database. Never rejects a
+     * login: after {@code prefetch-timeout} the load simply finishes after the join.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onAsyncPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) return;
 
-        if (rewardsSection != null) {
-            for (String key : rewardsSection.getKeys(false)) {
-                try {
-                    int rewardLevel = Integer.parseInt(key);
-
-                    if (rewardLevel == level) {
-                        ConfigurationSection rewardConfig = rewardsSection.getConfigurationSection(key);
-
-                        if (rewardConfig != null) {
-                            // Execute commands
-                            List<String> commands = rewardConfig.getStringList("commands");
-                            for (String command : commands) {
-                                String processedCommand = command.replace("%player%", player.getName());
-                                Bukkit.dispatchCommand(Bukkit.getConsoleSender(), processedCommand);
-                            }
-
-                            // Send message
-                            String message = rewardConfig.getString("message", "");
-                            if (!message.isEmpty()) {
-                                player.sendMessage(ChatColor.translateAlternateColorCodes('&', message));
-                            }
-                        }
-                    }
-                } catch (NumberFormatException ignored) {
-                    // Ignore non-numeric keys
-                }
+        UUID uuid = event.getUniqueId();
+        try {
+            PlayerData data = getPlayerDataAsync(uuid).get(settings.getPrefetchTimeoutMillis(), TimeUnit.MILLISECONDS);
+            if (data == null && isReady()) {
+                newPlayers.add(uuid);
+            }
+        } catch (TimeoutException e) {
+            getLogger().fine("Prefetch for " + event.getName() + " timed out, loading after the join");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Already logged by the load; the join tries again
+        }
+    }
+
+    @EventHandler
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        Player player = event.getPlayer();
+        UUID uuid = player.getUniqueId();
+        playerCache.pin(uuid);
+
+        // Usually already cached by the pre-login prefetch
+        PlayerData data = playerCache.getIfPresent(uuid);
+        if (data != null) {
+            newPlayers.remove(uuid);
+            // In incremental mode the stored XP is the base that increments are added to, so refresh it
+            if (settings.isIncrementalXp()) {
+                calculateAndUpdatePlayerXp(player);
             }
+            return;
         }
+
+        if (newPlayers.remove(uuid)) {
+            // Known to have no stored record: start from an empty one without asking the database again
+            playerCache.putIfAbsent(new PlayerData(uuid, player.getName(), 0, 1));
+            calculateAndUpdatePlayerXp(player);
+            return;
+        }
+
+        // The prefetch timed out or the entry was evicted: load without blocking the join
+        getPlayerDataAsync(uuid).thenAccept(loaded -> {
+            if (loaded == null || settings.isIncrementalXp()) {
+                // New player, calculate initial XP
+                calculateAndUpdatePlayerXp(player);
+            }
+        });
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onStatisticIncrement(PlayerStatisticIncrementEvent event) {
+        PluginConfig config = settings;
+        if (!config.isEnabled() || !config.isIncrementalXp()) return;
+
+        long weight = config.getStatisticIndex().getWeight(event.getStatistic(), event.getMaterial(), event.getEntityType());
+        if (weight == 0) return;
+
+        addPlayerXp(event.getPlayer(), Xp.times(weight, (long) event.getNewValue() - event.getPreviousValue()));
+    }
+
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        UUID uuid = event.getPlayer().getUniqueId();
+        playerCache.unpin(uuid);
+        newPlayers.remove(uuid);
+
+        // Save the player's unsaved changes first; the cache never evicts dirty entries
+        PlayerData data = playerCache.peek(uuid);
+        if (data != null && data.isDirty()) {
+            writeBehindQueue.flush(uuid).thenRun(() -> playerCache.evict(uuid));
+        } else {
+            playerCache.evict(uuid);
+        }
+    }
+
+    /**
+     * Returns up to {@code count} ranked players after skipping {@code offset}, from the in-memory leaderboard.
+     */
+    public List<PlayerData> getLeaderboardPage(int offset, int count) {
+        List<PlayerData> page = new ArrayList<>();
+        for (LeaderboardIndex.Entry entry : leaderboard.getRange(offset, count)) {
+            page.add(new PlayerData(entry.getUuid(), entry.getName(), entry.getXp(), entry.getLevel()));
+        }
+        return page;
+    }
+
+    /**
+     * Whether the leaderboard is correct for the top {@code ranks} ranks: always once
+     * fully loaded, and for the prefetched ranks before that.
+     */
+    boolean isTopAvailable(int ranks) {
+        return leaderboard.isLoaded() || ranks <= prefetchedTop;
+    }
+
+    /**
+     * Whether the database is connected and migrated. Until then commands and
+     * placeholders show a loading state.
+     */
+    boolean isReady() {
+        return storage != null;
+    }
+
+    LeaderboardIndex getLeaderboard() {
+        return leaderboard;
+    }
+
+    NameIndex getNameIndex() {
+        return nameIndex;
+    }
+
+    StatisticRules getStatisticRules() {
+        return settings.getStatisticRules();
+    }
+
+    RewardTable getRewardTable() {
+        return settings.getRewardTable();
+    }
+
+    XpWindows getXpWindows() {
+        return xpWindows;
+    }
+
+    RewardDispatcher getRewardDispatcher() {
+        return rewardDispatcher;
+    }
+
+    ChangeEvents getChangeEvents() {
+        return changeEvents;
+    }
+
+    /**
+     * Returns the colored message under {@code messages.<key>}, or null if it is not set.
+     */
+    String getMessage(String key) {
+        return settings.getMessage(key);
+    }
+
+    WriteBehindQueue getWriteBehindQueue() {
+        return writeBehindQueue;
     }
 
-    @EventHandler
-    public void onPlayerJoin(PlayerJoinEvent event) {
-        Player player = event.getPlayer();
+    NetworkSync getNetworkSync() {
+        return networkSync;
+    }
 
-        // Load or create player data
-        PlayerData data = getPlayerData(player.getUniqueId());
+    PlayerJournal getJournal() {
+        return journal;
+    }
 
-        if (data == null) {
-            // New player, calculate initial XP
-            calculateAndUpdatePlayerXp(player);
-        }
+    Metrics getMetrics() {
+        return metrics;
+    }
+
+    RecomputeScheduler getRecomputeScheduler() {
+        return recomputeScheduler;
+    }
+
+    PlayerCache getPlayerCache() {
+        return playerCache;
     }
 
     public boolean isPluginEnabled() {
-        return pluginEnabled;
+        return settings.isEnabled();
     }
 
     public double getBaseXp() {
-        return baseXp;
+        return settings.getBaseXp();
     }
 
     public double getXpMultiplier() {
-        return xpMultiplier;
+        return settings.getXpMultiplier();
+    }
+
+    /**
+     * A player's XP and offset as a bulk write stored them. {@code version} is the
+     * row's version after the write, from {@link #readCachedVersions}, or -1.
+     */
+    record StoredXp(UUID uuid, String name, long xp, long xpOffset, long version) {
+    }
+
+    /**
+     * A level re-derived from the XP it was computed for.
+     */
+    private record StoredLevel(UUID uuid, long xp, int level) {
+    }
+
+    /**
+     * The last statistic snapshot applied to a player, the baseline for the next one.
+     */
+    record AppliedSnapshot(StatisticRules rules, long statsXp, long eventXp, long takenAt) {
     }
 
     // Static class for player data
     public static class PlayerData {
         private final UUID uuid;
-        private final String name;
-        private final double xp;
-        private final int level;
-
-        public PlayerData(UUID uuid, String name, double xp, int level) {
+        private volatile String name;
+        // In milli-XP, see Xp
+        private volatile long xp;
+        private volatile int level;
+        private volatile boolean dirty;
+        private volatile RenderedPlaceholders placeholders;
+        // The stored row's version in network mode, or -1 if it was never read
+        private volatile long version = -1;
+        // The stored statistics XP that no longer counts, see applySnapshot
+        private volatile long xpOffset;
+        // Main thread only: XP added by statistic events, and the last applied snapshot
+        private long eventXp;
+        private AppliedSnapshot lastSnapshot;
+
+        public PlayerData(UUID uuid, String name, long xp, int level) {
             this.uuid = uuid;
             this.name = name;
             this.xp = xp;
@@ -444,43 +1577,84 @@ public class PlayerLevels extends JavaPlugin implements Listener {
             return name;
         }
 
-        public double getXp() {
+        void setName(String name) {
+            this.name = name;
+        }
+
+        // In milli-XP, see Xp
+        public long getXpMillis() {
             return xp;
         }
 
+        /**
+         * @deprecated returns XP points as a {@code double}; use {@link #getXpMillis()}
+         */
+        @Deprecated
+        public double getXp() {
+            return Xp.toPoints(xp);
+        }
+
         public int getLevel() {
             return level;
         }
-    }
 
-    // Static class for statistic configuration
-    public static class StatisticConfig {
-        private final Statistic statistic;
-        private final Material material;
-        private final EntityType entityType;
-        private final double xpValue;
+        void setXp(long xp, int level) {
+            this.xp = xp;
+            this.level = level;
+        }
+
+        void setLevel(int level) {
+            this.level = level;
+        }
+
+        RenderedPlaceholders getPlaceholders(LevelCurve curve, RenderedPlaceholders.Style style) {
+            long currentXp = xp;
+            RenderedPlaceholders rendered = placeholders;
+            if (rendered == null || !rendered.isCurrent(currentXp, curve, style)) {
+                rendered = RenderedPlaceholders.render(currentXp, curve, style);
+                placeholders = rendered;
+            }
+            return rendered;
+        }
+
+        boolean isDirty() {
+            return dirty;
+        }
+
+        void setDirty(boolean dirty) {
+            this.dirty = dirty;
+        }
+
+        long getVersion() {
+            return version;
+        }
+
+        void setVersion(long version) {
+            this.version = version;
+        }
+
+        long getXpOffset() {
+            return xpOffset;
+        }
 
-        public StatisticConfig(Statistic statistic, Material material, EntityType entityType, double xpValue) {
-            this.statistic = statistic;
-            this.material = material;
-            this.entityType = entityType;
-            this.xpValue = xpValue;
+        void setXpOffset(long xpOffset) {
+            this.xpOffset = xpOffset;
         }
 
-        public Statistic getStatistic() {
-            return statistic;
+        long getEventXp() {
+            return eventXp;
         }
 
-        public Material getMaterial() {
-            return material;
+        void addEventXp(long xp) {
+            eventXp = Xp.add(eventXp, xp);
         }
 
-        public EntityType getEntityType() {
-            return entityType;
+        AppliedSnapshot getLastSnapshot() {
+            return lastSnapshot;
         }
 
-        public double getXpValue() {
-            return xpValue;
+        void setLastSnapshot(AppliedSnapshot lastSnapshot) {
+            this.lastSnapshot = lastSnapshot;
         }
     }
 }
@@ -515,30 +1689,142 @@ class PlayerLevelExpansion extends PlaceholderExpansion {
 
     @Override
     public String onPlaceholderRequest(Player player, @NotNull String identifier) {
+        // top_<n>_name and top_<n>_level don't depend on the viewing player
+        if (identifier.startsWith("top_")) {
+            return getTopPlaceholder(identifier);
+        }
+
         if (player == null) {
             return "";
         }
 
-        if (identifier.equals("level")) {
-            PlayerLevels.PlayerData data = plugin.getPlayerData(player.getUniqueId());
-            return data != null ? String.valueOf(data.getLevel()) : "1";
+        // xp_<window> and rank_<window> cover the current day, week or month
+        int windowSeparator = identifier.indexOf('_');
+        XpWindows.Window window = windowSeparator > 0 ? XpWindows.Window.fromKey(identifier.substring(windowSeparator + 1)) : null;
+        if (window != null) {
+            return getWindowPlaceholder(identifier.substring(0, windowSeparator), window, player.getUniqueId());
         }
 
-        if (identifier.equals("xp")) {
-            PlayerLevels.PlayerData data = plugin.getPlayerData(player.getUniqueId());
-            return data != null ? String.format("%.0f", data.getXp()) : "0";
+        if (identifier.equals("rank") || identifier.equals("percentile")) {
+            // Ranks are only meaningful once every player is in the leaderboard
+            if (!plugin.getLeaderboard().isLoaded()) return plugin.getPlaceholderLoadingText();
         }
 
-        if (identifier.equals("xp_needed")) {
-            PlayerLevels.PlayerData data = plugin.getPlayerData(player.getUniqueId());
-            if (data != null) {
-                double xpNeeded = plugin.getXpForNextLevel(data.getXp());
-                return String.format("%.0f", xpNeeded);
-            }
-            return String.valueOf(plugin.getBaseXp());
+        if (identifier.equals("rank")) {
+            int rank = plugin.getLeaderboard().getRank(player.getUniqueId());
+            return rank > 0 ? String.valueOf(rank) : "-";
+        }
+
+        if (identifier.equals("percentile")) {
+            double percentile = plugin.getLeaderboard().getPercentile(player.getUniqueId());
+            return percentile >= 0 ? String.format("%.1f", percentile) : "-";
+        }
+
+        RenderedPlaceholders values;
+        PlayerLevels.PlayerData data = plugin.getPlayerDataIfCached(player.getUniqueId());
+        if (data != null) {
+            values = plugin.getPlaceholders(data);
+        } else if (plugin.getPlayerCache().isLoading(player.getUniqueId())) {
+            return isPlayerPlaceholder(identifier) ? plugin.getPlaceholderLoadingText() : null;
+        } else {
+            // No stored data yet, show the values of a brand-new player
+            values = plugin.getDefaultPlaceholders();
+        }
+
+        switch (identifier) {
+            case "level":
+                return values.level;
+            case "xp":
+                return values.xpText;
+            case "xp_needed":
+                return values.xpNeeded;
+            case "progress_percent":
+                return values.progressPercent;
+            case "progress_bar":
+                return values.progressBar;
+            default:
+                return null;
+        }
+    }
+
+    private static boolean isPlayerPlaceholder(String identifier) {
+        switch (identifier) {
+            case "level":
+            case "xp":
+            case "xp_needed":
+            case "progress_percent":
+            case "progress_bar":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private String getWindowPlaceholder(String field, XpWindows.Window window, UUID uuid) {
+        if (!field.equals("xp") && !field.equals("rank")) return null;
+
+        XpWindows windows = plugin.getXpWindows();
+        if (!windows.isLoaded()) return plugin.getPlaceholderLoadingText();
+
+        if (field.equals("xp")) {
+            return Xp.format(windows.getXp(window, uuid));
+        }
+        int rank = windows.getRank(window, uuid);
+        return rank > 0 ? String.valueOf(rank) : "-";
+    }
+
+    private String getTopPlaceholder(String identifier) {
+        // top_<window>_<n>_name and top_<window>_<n>_xp rank by XP gained in the window
+        int windowSeparator = identifier.indexOf('_', 4);
+        XpWindows.Window window = windowSeparator > 0 ? XpWindows.Window.fromKey(identifier.substring(4, windowSeparator)) : null;
+        if (window != null) {
+            return getWindowTopPlaceholder(window, identifier.substring(windowSeparator + 1));
+        }
+
+        int separator = identifier.indexOf('_', 4);
+        if (separator < 0) return null;
+
+        int rank;
+        try {
+            rank = Integer.parseInt(identifier.substring(4, separator));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        String field = identifier.substring(separator + 1);
+        if (!field.equals("name") && !field.equals("level")) return null;
+
+        if (!plugin.isTopAvailable(rank)) return plugin.getPlaceholderLoadingText();
+
+        LeaderboardIndex.Entry entry = plugin.getLeaderboard().getByRank(rank);
+        if (entry == null) {
+            return field.equals("name") ? "-" : "0";
+        }
+        return field.equals("name") ? entry.getName() : String.valueOf(entry.getLevel());
+    }
+
+    private String getWindowTopPlaceholder(XpWindows.Window window, String identifier) {
+        int separator = identifier.indexOf('_');
+        if (separator < 0) return null;
+
+        int rank;
+        try {
+            rank = Integer.parseInt(identifier.substring(0, separator));
+        } catch (NumberFormatException e) {
+            return null;
         }
 
-        return null;
+        String field = identifier.substring(separator + 1);
+        if (!field.equals("name") && !field.equals("xp")) return null;
+
+        XpWindows windows = plugin.getXpWindows();
+        if (!windows.isLoaded()) return plugin.getPlaceholderLoadingText();
+
+        LeaderboardIndex.Entry entry = windows.getByRank(window, rank);
+        if (entry == null) {
+            return field.equals("name") ? "-" : "0";
+        }
+        return field.equals("name") ? entry.getName() : Xp.format(entry.getXp());
     }
 }
 
@@ -557,6 +1843,14 @@ class LevelCommand implements CommandExecutor {
             return true;
         }
 
+        // Reload and debug also work while the database is still connecting
+        boolean needsStorage = args.length == 0
+                || !(args[0].equalsIgnoreCase("reload") || args[0].equalsIgnoreCase("debug"));
+        if (needsStorage && !plugin.isReady()) {
+            sender.sendMessage(ChatColor.YELLOW + "PlayerLevels is still loading, try again in a moment.");
+            return true;
+        }
+
         if (args.length == 0) {
             // Show player's level
             if (sender instanceof Player player) {
@@ -574,8 +1868,69 @@ class LevelCommand implements CommandExecutor {
                     return true;
                 }
 
-                plugin.loadConfig();
+                List<String> changes = plugin.reloadSettings();
                 sender.sendMessage(ChatColor.GREEN + "PlayerLevels configuration reloaded!");
+                for (String change : changes) {
+                    sender.sendMessage(ChatColor.GRAY + change);
+                }
+                return true;
+
+            case "rebuild":
+                if (!sender.hasPermission("playerlevels.admin")) {
+                    sender.sendMessage(ChatColor.RED + "You don't have permission to use this command.");
+                    return true;
+                }
+
+                if (!StatsRebuildTask.start(plugin, sender)) {
+                    sender.sendMessage(ChatColor.RED + "A rebuild is already running.");
+                }
+                return true;
+
+            case "debug":
+                if (!sender.hasPermission("playerlevels.admin")) {
+                    sender.sendMessage(ChatColor.RED + "You don't have permission to use this command.");
+                    return true;
+                }
+
+                for (String line : plugin.getMetrics().describe()) {
+                    sender.sendMessage(line);
+                }
+                return true;
+
+            case "journal":
+                if (!sender.hasPermission("playerlevels.admin")) {
+                    sender.sendMessage(ChatColor.RED + "You don't have permission to use this command.");
+                    return true;
+                }
+
+                if (plugin.getJournal() == null) {
+                    sender.sendMessage(ChatColor.RED + "The journal is only used with storage type \"journal\".");
+                    return true;
+                }
+
+                if (args.length < 3 || !(args[1].equalsIgnoreCase("export") || args[1].equalsIgnoreCase("import"))
+                        || !(args[2].equalsIgnoreCase("sqlite") || args[2].equalsIgnoreCase("mysql"))) {
+                    sender.sendMessage(ChatColor.RED + "Usage: /level journal <export|import> <sqlite|mysql>");
+                    return true;
+                }
+
+                plugin.transferJournal(sender, args[1].equalsIgnoreCase("export"), args[2].toLowerCase());
+                return true;
+
+            case "breakdown":
+                if (!sender.hasPermission("playerlevels.admin")) {
+                    sender.sendMessage(ChatColor.RED + "You don't have permission to use this command.");
+                    return true;
+                }
+
+                Player breakdownTarget = args.length > 1 ? Bukkit.getPlayer(args[1])
+                        : sender instanceof Player player ? player : null;
+                if (breakdownTarget == null) {
+                    sender.sendMessage(ChatColor.RED + "Usage: /level breakdown <online player>");
+                    return true;
+                }
+
+                showBreakdown(sender, breakdownTarget);
                 return true;
 
             case "set":
@@ -589,95 +1944,254 @@ class LevelCommand implements CommandExecutor {
                     return true;
                 }
 
-                String playerName = args[1];
-                Player target = Bukkit.getPlayer(playerName);
+                int level;
+                try {
+                    level = Integer.parseInt(args[2]);
+                } catch (NumberFormatException e) {
+                    sender.sendMessage(ChatColor.RED + "Invalid level: " + args[2]);
+                    return true;
+                }
+                if (level < 1) {
+                    sender.sendMessage(ChatColor.RED + "Level must be at least 1.");
+                    return true;
+                }
+
+                setLevel(sender, args[1], level, "Set %s's level to " + level, "Your level has been set to " + level);
+                return true;
+
+            case "reset":
+                if (!sender.hasPermission("playerlevels.admin")) {
+                    sender.sendMessage(ChatColor.RED + "You don't have permission to use this command.");
+                    return true;
+                }
 
-                if (target == null) {
-                    sender.sendMessage(ChatColor.RED + "Player not found: " + playerName);
+                if (args.length < 2) {
+                    sender.sendMessage(ChatColor.RED + "Usage: /level reset <player|all>");
                     return true;
                 }
 
-                try {
-                    int level = Integer.parseInt(args[2]);
-                    if (level < 1) {
-                        sender.sendMessage(ChatColor.RED + "Level must be at least 1.");
-                        return true;
+                if (args[1].equalsIgnoreCase("all")) {
+                    if (!BulkOperations.startReset(plugin, sender)) {
+                        sender.sendMessage(ChatColor.RED + "An export, import or reset is already running.");
+                    } else {
+                        sender.sendMessage(ChatColor.YELLOW + "Resetting every player to level 1...");
                     }
+                    return true;
+                }
 
-                    plugin.setPlayerLevel(target.getUniqueId(), target.getName(), level);
-                    sender.sendMessage(ChatColor.GREEN + "Set " + target.getName() + "'s level to " + level);
-                    target.sendMessage(ChatColor.GREEN + "Your level has been set to " + level);
-                } catch (NumberFormatException e) {
-                    sender.sendMessage(ChatColor.RED + "Invalid level: " + args[2]);
+                setLevel(sender, args[1], 1, "Reset %s to level 1", "Your level has been reset");
+                return true;
+
+            case "export":
+            case "import":
+                if (!sender.hasPermission("playerlevels.admin")) {
+                    sender.sendMessage(ChatColor.RED + "You don't have permission to use this command.");
+                    return true;
+                }
+
+                boolean export = args[0].equalsIgnoreCase("export");
+                if (!export && args.length < 2) {
+                    sender.sendMessage(ChatColor.RED + "Usage: /level import <file>");
+                    return true;
+                }
+
+                String fileName = args.length > 1 ? args[1] : null;
+                boolean started = export
+                        ? BulkOperations.startExport(plugin, sender, fileName)
+                        : BulkOperations.startImport(plugin, sender, fileName);
+                if (!started) {
+                    sender.sendMessage(ChatColor.RED + "An export, import or reset is already running.");
                 }
                 return true;
 
             default:
                 // Check if arg[0] is a player name
-                Player otherPlayer = Bukkit.getPlayer(args[0]);
+                if (!sender.hasPermission("playerlevels.others")) {
+                    sender.sendMessage(ChatColor.RED + "Unknown command or player not found.");
+                    return true;
+                }
 
-                if (otherPlayer != null && sender.hasPermission("playerlevels.others")) {
+                Player otherPlayer = Bukkit.getPlayer(args[0]);
+                if (otherPlayer != null) {
                     showPlayerLevel(sender, otherPlayer);
                 } else {
-                    sender.sendMessage(ChatColor.RED + "Unknown command or player not found.");
+                    showOfflineLevel(sender, args[0]);
                 }
                 return true;
         }
     }
 
-    private void showPlayerLevel(CommandSender sender, Player targetPlayer) {
-        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
-            PlayerLevels.PlayerData data = plugin.getPlayerData(targetPlayer.getUniqueId());
+    // Looks the player up off the main thread, so it also works for offline players; replies on the main thread
+    private void setLevel(CommandSender sender, String playerName, int level, String done, String notice) {
+        plugin.setPlayerLevel(playerName, level).whenComplete((name, error) -> Bukkit.getScheduler().runTask(plugin, () -> {
+            if (error != null) {
+                sender.sendMessage(ChatColor.RED + "Could not look up " + playerName + ": " + error.getCause().getMessage());
+            } else if (name == null) {
+                sender.sendMessage(ChatColor.RED + "Player not found: " + playerName);
+            } else {
+                sender.sendMessage(ChatColor.GREEN + String.format(done, name));
+                Player target = Bukkit.getPlayerExact(name);
+                if (target != null) {
+                    target.sendMessage(ChatColor.GREEN + notice);
+                }
+            }
+        }));
+    }
 
-            if (data == null) {
-                plugin.calculateAndUpdatePlayerXp(targetPlayer);
-                data = plugin.getPlayerData(targetPlayer.getUniqueId());
+    private void showBreakdown(CommandSender sender, Player targetPlayer) {
+        StatisticSnapshot snapshot = plugin.snapshotStatistics(targetPlayer);
+        StatisticRules rules = snapshot.getRules();
+        long[] breakdown = new long[rules.getRuleCount()];
+        long total = snapshot.computeXp(breakdown);
+
+        sender.sendMessage(ChatColor.GOLD + "===== " + targetPlayer.getName() + "'s XP Sources =====");
+        for (int rule = 0; rule < breakdown.length; rule++) {
+            if (breakdown[rule] != 0) {
+                sender.sendMessage(ChatColor.YELLOW + rules.getRuleName(rule) + ": " + ChatColor.WHITE
+                        + Xp.formatTenths(breakdown[rule]));
             }
+        }
+        sender.sendMessage(ChatColor.YELLOW + "Total XP: " + ChatColor.WHITE + Xp.format(total));
 
-            if (data != null) {
-                double xpForNextLevel = plugin.getXpForNextLevel(data.getXp());
+        PlayerLevels.PlayerData data = plugin.getPlayerDataIfCached(targetPlayer.getUniqueId());
+        if (data != null && data.getXpOffset() != 0) {
+            sender.sendMessage(ChatColor.YELLOW + "Not counted since a reset or /level set: " + ChatColor.WHITE
+                    + Xp.format(data.getXpOffset()));
+        }
+    }
 
-                sender.sendMessage(ChatColor.GOLD + "===== " + targetPlayer.getName() + "'s Level =====");
-                sender.sendMessage(ChatColor.YELLOW + "Level: " + ChatColor.WHITE + data.getLevel());
-                sender.sendMessage(ChatColor.YELLOW + "Total XP: " + ChatColor.WHITE + String.format("%.0f", data.getXp()));
-                sender.sendMessage(ChatColor.YELLOW + "XP for next level: " + ChatColor.WHITE + String.format("%.0f", xpForNextLevel));
-            } else {
-                sender.sendMessage(ChatColor.RED + "Could not retrieve level data for " + targetPlayer.getName());
+    private void showPlayerLevel(CommandSender sender, Player targetPlayer) {
+        plugin.getPlayerDataAsync(targetPlayer.getUniqueId()).thenAccept(data -> {
+            if (data == null) {
+                plugin.calculateAndUpdatePlayerXp(targetPlayer);
+                sender.sendMessage(ChatColor.YELLOW + "Calculating level for " + targetPlayer.getName() + ", try again in a moment.");
+                return;
             }
+
+            sendLevel(sender, targetPlayer.getName(), data);
+        }).exceptionally(error -> {
+            sender.sendMessage(ChatColor.RED + "Could not retrieve level data for " + targetPlayer.getName());
+            return null;
         });
     }
+
+    private void showOfflineLevel(CommandSender sender, String playerName) {
+        plugin.findPlayerUuid(playerName)
+                .thenCompose(uuid -> uuid != null
+                        ? plugin.getPlayerDataAsync(uuid)
+                        : CompletableFuture.completedFuture(null))
+                .whenComplete((data, error) -> {
+                    if (error != null) {
+                        sender.sendMessage(ChatColor.RED + "Could not retrieve level data for " + playerName);
+                    } else if (data == null) {
+                        sender.sendMessage(ChatColor.RED + "Unknown command or player not found.");
+                    } else {
+                        sendLevel(sender, data.getName(), data);
+                    }
+                });
+    }
+
+    private void sendLevel(CommandSender sender, String name, PlayerLevels.PlayerData data) {
+        long xpForNextLevel = plugin.getXpForNextLevelMillis(data.getXpMillis());
+
+        sender.sendMessage(ChatColor.GOLD + "===== " + name + "'s Level =====");
+        sender.sendMessage(ChatColor.YELLOW + "Level: " + ChatColor.WHITE + data.getLevel());
+        sender.sendMessage(ChatColor.YELLOW + "Total XP: " + ChatColor.WHITE + Xp.format(data.getXpMillis()));
+        sender.sendMessage(ChatColor.YELLOW + "XP for next level: " + ChatColor.WHITE + Xp.format(xpForNextLevel));
+    }
 }
 
 // Level tab completer
 class LevelTabCompleter implements TabCompleter {
+    private static final int MAX_NAMES = 50;
+
+    private final PlayerLevels plugin;
+
+    public LevelTabCompleter(PlayerLevels plugin) {
+        this.plugin = plugin;
+    }
 
     @Override
     public List<String> onTabComplete(@NotNull CommandSender sender, @NotNull Command command, @NotNull String alias, String[] args) {
         List<String> completions = new ArrayList<>();
+        String typed = args.length > 0 ? args[args.length - 1] : "";
 
         if (args.length == 1) {
             if (sender.hasPermission("playerlevels.admin")) {
                 completions.add("reload");
+                completions.add("rebuild");
+                completions.add("breakdown");
+                completions.add("debug");
                 completions.add("set");
+                completions.add("reset");
+                completions.add("export");
+                completions.add("import");
+                completions.add("journal");
             }
+            completions = matching(completions, typed);
 
             if (sender.hasPermission("playerlevels.others")) {
-                completions.addAll(Bukkit.getOnlinePlayers().stream()
-                        .map(Player::getName)
-                        .collect(Collectors.toList()));
+                completions.addAll(playerNames(typed));
             }
-        } else if (args.length == 2 && args[0].equalsIgnoreCase("set") && sender.hasPermission("playerlevels.admin")) {
-            completions.addAll(Bukkit.getOnlinePlayers().stream()
-                    .map(Player::getName)
-                    .collect(Collectors.toList()));
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("breakdown") && sender.hasPermission("playerlevels.admin")) {
+            // Breakdowns read live statistics, so only online players qualify
+            completions = matching(onlineNames(), typed);
+        } else if (args.length == 2 && (args[0].equalsIgnoreCase("set") || args[0].equalsIgnoreCase("reset"))
+                && sender.hasPermission("playerlevels.admin")) {
+            if (args[0].equalsIgnoreCase("reset")) {
+                completions = matching(List.of("all"), typed);
+            }
+            completions.addAll(playerNames(typed));
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("journal") && sender.hasPermission("playerlevels.admin")) {
+            completions = matching(List.of("export", "import"), typed);
+        } else if (args.length == 3 && args[0].equalsIgnoreCase("journal") && sender.hasPermission("playerlevels.admin")) {
+            completions = matching(List.of("sqlite", "mysql"), typed);
         }
 
         return completions;
     }
+
+    // Online players for an empty prefix, otherwise every known player starting with it
+    private List<String> playerNames(String prefix) {
+        if (prefix.isEmpty()) {
+            List<String> online = onlineNames();
+            return online.size() > MAX_NAMES ? online.subList(0, MAX_NAMES) : online;
+        }
+
+        List<String> names = plugin.getNameIndex().complete(prefix, MAX_NAMES);
+        if (names.size() < MAX_NAMES) {
+            // Players who joined for the first time may not be saved yet
+            for (String online : matching(onlineNames(), prefix)) {
+                if (names.size() == MAX_NAMES) break;
+                if (names.stream().noneMatch(online::equalsIgnoreCase)) {
+                    names.add(online);
+                }
+            }
+        }
+        return names;
+    }
+
+    private static List<String> onlineNames() {
+        return Bukkit.getOnlinePlayers().stream()
+                .map(Player::getName)
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> matching(List<String> options, String prefix) {
+        List<String> matches = new ArrayList<>();
+        for (String option : options) {
+            if (option.regionMatches(true, 0, prefix, 0, prefix.length())) {
+                matches.add(option);
+            }
+        }
+        return matches;
+    }
 }
 
 // LevelTop command class
 class LevelTopCommand implements CommandExecutor {
+    private static final int PAGE_SIZE = 10;
+
     private final PlayerLevels plugin;
 
     public LevelTopCommand(PlayerLevels plugin) {
@@ -696,6 +2210,44 @@ class LevelTopCommand implements CommandExecutor {
             return true;
         }
 
+        if (!plugin.isReady()) {
+            sender.sendMessage(ChatColor.YELLOW + "PlayerLevels is still loading, try again in a moment.");
+            return true;
+        }
+
+        // /leveltop day|week|month [limit] ranks by XP gained in the current period
+        XpWindows.Window window = args.length > 0 ? XpWindows.Window.fromKey(args[0]) : null;
+        if (window != null) {
+            showWindow(sender, window, args.length > 1 ? args[1] : null);
+            return true;
+        }
+
+        // /leveltop page <n> shows ten players per page
+        if (args.length > 0 && args[0].equalsIgnoreCase("page")) {
+            if (!plugin.getLeaderboard().isLoaded()) {
+                sender.sendMessage(ChatColor.YELLOW + "The leaderboard is still loading, try again in a moment.");
+                return true;
+            }
+
+            int page = 1;
+            if (args.length > 1) {
+                try {
+                    page = Math.max(1, Integer.parseInt(args[1]));
+                } catch (NumberFormatException e) {
+                    sender.sendMessage(ChatColor.RED + "Invalid number: " + args[1]);
+                    return true;
+                }
+            }
+
+            int ranked = plugin.getLeaderboard().size();
+            int pages = Math.max(1, (ranked + PAGE_SIZE - 1) / PAGE_SIZE);
+            page = Math.min(page, pages);
+
+            sender.sendMessage(ChatColor.GOLD + "===== Leaderboard (page " + page + "/" + pages + ") =====");
+            sendRanks(sender, plugin.getLeaderboardPage((page - 1) * PAGE_SIZE, PAGE_SIZE), (page - 1) * PAGE_SIZE + 1);
+            return true;
+        }
+
         int limit = 10;
         if (args.length > 0) {
             try {
@@ -708,25 +2260,81 @@ class LevelTopCommand implements CommandExecutor {
         }
 
         final int finalLimit = limit;
-        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
-            List<PlayerLevels.PlayerData> topPlayers = plugin.getTopPlayers(finalLimit);
-
+        plugin.getTopPlayersAsync(finalLimit).thenAccept(topPlayers -> {
             sender.sendMessage(ChatColor.GOLD + "===== Top " + finalLimit + " Players =====");
-
-            if (topPlayers.isEmpty()) {
-                sender.sendMessage(ChatColor.YELLOW + "No players found.");
-            } else {
-                int rank = 1;
-                for (PlayerLevels.PlayerData data : topPlayers) {
-                    sender.sendMessage(ChatColor.YELLOW + "#" + rank + ": " +
-                            ChatColor.WHITE + data.getName() + " - " +
-                            ChatColor.GREEN + "Level " + data.getLevel() +
-                            ChatColor.GRAY + " (" + String.format("%.0f", data.getXp()) + " XP)");
-                    rank++;
-                }
-            }
+            sendRanks(sender, topPlayers, 1);
+        }).exceptionally(error -> {
+            sender.sendMessage(ChatColor.RED + "Could not load the leaderboard.");
+            return null;
         });
 
         return true;
     }
+
+    private void showWindow(CommandSender sender, XpWindows.Window window, String limitArg) {
+        XpWindows windows = plugin.getXpWindows();
+        if (!windows.isLoaded()) {
+            sender.sendMessage(ChatColor.YELLOW + "The leaderboard is still loading, try again in a moment.");
+            return;
+        }
+
+        int limit = 10;
+        if (limitArg != null) {
+            try {
+                limit = Math.max(1, Math.min(100, Integer.parseInt(limitArg)));
+            } catch (NumberFormatException e) {
+                sender.sendMessage(ChatColor.RED + "Invalid number: " + limitArg);
+                return;
+            }
+        }
+
+        List<LeaderboardIndex.Entry> entries = windows.getRange(window, 0, limit);
+        sender.sendMessage(ChatColor.GOLD + "===== Top " + limit + " Players This " + capitalize(window.getKey()) + " =====");
+        if (entries.isEmpty()) {
+            sender.sendMessage(ChatColor.YELLOW + "No players found.");
+        }
+        int rank = 1;
+        for (LeaderboardIndex.Entry entry : entries) {
+            sender.sendMessage(ChatColor.YELLOW + "#" + rank + ": " +
+                    ChatColor.WHITE + entry.getName() + " - " +
+                    ChatColor.GREEN + Xp.format(entry.getXp()) + " XP gained");
+            rank++;
+        }
+
+        if (sender instanceof Player player) {
+            int playerRank = windows.getRank(window, player.getUniqueId());
+            if (playerRank > 0) {
+                sender.sendMessage(ChatColor.YELLOW + "Your rank: " + ChatColor.WHITE + "#" + playerRank +
+                        ChatColor.GRAY + " of " + windows.size(window) + " (" +
+                        Xp.format(windows.getXp(window, player.getUniqueId())) + " XP gained)");
+            }
+        }
+    }
+
+    private static String capitalize(String text) {
+        return Character.toUpperCase(text.charAt(0)) + text.substring(1);
+    }
+
+    private void sendRanks(CommandSender sender, List<PlayerLevels.PlayerData> players, int firstRank) {
+        if (players.isEmpty()) {
+            sender.sendMessage(ChatColor.YELLOW + "No players found.");
+        } else {
+            int rank = firstRank;
+            for (PlayerLevels.PlayerData data : players) {
+                sender.sendMessage(ChatColor.YELLOW + "#" + rank + ": " +
+                        ChatColor.WHITE + data.getName() + " - " +
+                        ChatColor.GREEN + "Level " + data.getLevel() +
+                        ChatColor.GRAY + " (" + Xp.format(data.getXpMillis()) + " XP)");
+                rank++;
+            }
+        }
+
+        if (sender instanceof Player player && plugin.getLeaderboard().isLoaded()) {
+            int rank = plugin.getLeaderboard().getRank(player.getUniqueId());
+            if (rank > 0) {
+                sender.sendMessage(ChatColor.YELLOW + "Your rank: " + ChatColor.WHITE + "#" + rank +
+                        ChatColor.GRAY + " of " + plugin.getLeaderboard().size());
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,68 @@
+package com.flow258.playerLevels;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The API other plugins use to read player levels, registered with Bukkit's
+ * {@link org.bukkit.plugin.ServicesManager}:
+ * <pre>{@code
+ * PlayerLevelsAPI api = Bukkit.getServicesManager().load(PlayerLevelsAPI.class);
+ * api.getPlayer(uuid).thenAccept(info -> ...);
+ * }</pre>
+ * No method blocks. Futures complete on a database or scheduler thread, so
+ * switch to the main thread before touching the Bukkit world. Changes are
+ * announced with {@link PlayerXpChangeEvent} and {@link PlayerLevelChangeEvent};
+ * bulk changes, such as a rebuild or an import, only announce cached players.
+ */
+public interface PlayerLevelsAPI {
+
+    /**
+     * A player's level and XP at one point in time.
+     *
+     * @param milliXp the total XP in thousandths of a point, as stored
+     */
+    record PlayerInfo(UUID uuid, String name, long milliXp, int level) {
+
+        /**
+         * Returns the total XP in points.
+         */
+        public double xp() {
+            return Xp.toPoints(milliXp);
+        }
+    }
+
+    /**
+     * Returns the player's level and XP, loading them from storage if they are
+     * not cached. Completes with null if the player has never been seen.
+     */
+    CompletableFuture<PlayerInfo> getPlayer(UUID uuid);
+
+    /**
+     * Returns the level and XP of every given player that has been seen. Cached
+     * players are answered from memory and the rest are read in a single storage
+     * round trip. Players loaded this way are not added to the cache.
+     */
+    CompletableFuture<Map<UUID, PlayerInfo>> getPlayers(Collection<UUID> uuids);
+
+    /**
+     * Returns the player's level and XP if they are cached, as they always are
+     * for online players, or null otherwise. Never blocks; on a miss the player
+     * is loaded in the background, so a later call may succeed.
+     */
+    PlayerInfo getCachedPlayer(UUID uuid);
+
+    /**
+     * Returns the level the given total XP, in thousandths of a point, reaches
+     * under the current level curve.
+     */
+    int getLevelForXp(long milliXp);
+
+    /**
+     * Returns the total XP, in thousandths of a point, needed to reach the level
+     * under the current level curve.
+     */
+    long getXpForLevel(int level);
+}
@@ -0,0 +1,53 @@
+package com.flow258.playerLevels;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The {@link PlayerLevelsAPI} registered with the services manager. Hands out
+ * immutable copies, so callers never see a cached player change under them.
+ */
+final class PlayerLevelsService implements PlayerLevelsAPI {
+
+    private final PlayerLevels plugin;
+
+    PlayerLevelsService(PlayerLevels plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public CompletableFuture<PlayerInfo> getPlayer(UUID uuid) {
+        return plugin.getPlayerDataAsync(uuid).thenApply(PlayerLevelsService::toInfo);
+    }
+
+    @Override
+    public CompletableFuture<Map<UUID, PlayerInfo>> getPlayers(Collection<UUID> uuids) {
+        return plugin.getPlayerDataBatch(uuids).thenApply(found -> {
+            Map<UUID, PlayerInfo> players = new HashMap<>(found.size() * 2);
+            found.forEach((uuid, data) -> players.put(uuid, toInfo(data)));
+            return players;
+        });
+    }
+
+    @Override
+    public PlayerInfo getCachedPlayer(UUID uuid) {
+        return toInfo(plugin.getPlayerDataIfCached(uuid));
+    }
+
+    @Override
+    public int getLevelForXp(long milliXp) {
+        return plugin.calculateLevelMillis(milliXp);
+    }
+
+    @Override
+    public long getXpForLevel(int level) {
+        return plugin.getXpForLevelMillis(level);
+    }
+
+    private static PlayerInfo toInfo(PlayerLevels.PlayerData data) {
+        return data != null ? new PlayerInfo(data.getUuid(), data.getName(), data.getXpMillis(), data.getLevel()) : null;
+    }
+}
@@ -0,0 +1,77 @@
+package com.flow258.playerLevels;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.UUID;
+
+/**
+ * Called on the main thread when a player's total XP has changed, at most once
+ * per player per tick. The old value is from before the first change in the
+ * tick, the new value after the last one. The player may be offline.
+ */
+public class PlayerXpChangeEvent extends Event {
+
+    private static final HandlerList HANDLERS = new HandlerList();
+
+    private final UUID uuid;
+    private final String name;
+    private final long oldMilliXp;
+    private final long newMilliXp;
+
+    public PlayerXpChangeEvent(UUID uuid, String name, long oldMilliXp, long newMilliXp) {
+        this.uuid = uuid;
+        this.name = name;
+        this.oldMilliXp = oldMilliXp;
+        this.newMilliXp = newMilliXp;
+    }
+
+    public UUID getUuid() {
+        return uuid;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the player if they are online on this server, or null.
+     */
+    public Player getPlayer() {
+        return Bukkit.getPlayer(uuid);
+    }
+
+    /**
+     * Returns the previous total XP in thousandths of a point.
+     */
+    public long getOldMilliXp() {
+        return oldMilliXp;
+    }
+
+    /**
+     * Returns the new total XP in thousandths of a point.
+     */
+    public long getNewMilliXp() {
+        return newMilliXp;
+    }
+
+    public double getOldXp() {
+        return Xp.toPoints(oldMilliXp);
+    }
+
+    public double getNewXp() {
+        return Xp.toPoints(newMilliXp);
+    }
+
+    @Override
+    public @NotNull HandlerList getHandlers() {
+        return HANDLERS;
+    }
+
+    public static HandlerList getHandlerList() {
+        return HANDLERS;
+    }
+}
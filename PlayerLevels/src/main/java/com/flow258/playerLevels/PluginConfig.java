@@ -0,0 +1,189 @@
+package com.flow258.playerLevels;
+
+import org.bukkit.ChatColor;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * The whole configuration, compiled once per load into an immutable snapshot.
+ * <p>
+ * The plugin holds the current snapshot in a single volatile field and replaces
+ * it in one write, so a task that reads the config sees either everything from
+ * the previous load or everything from the new one, never a mix. Each snapshot
+ * also keeps the raw values of the sections it was built from, so a reload can
+ * tell exactly which parts changed and only redo the work those parts affect.
+ */
+final class PluginConfig {
+
+    static final String LEVELS = "settings.levels";
+    static final String XP_TRACKING = "settings.xp-tracking";
+    static final String PLACEHOLDERS = "settings.placeholders";
+    static final String STATISTICS = "settings.statistics";
+    static final String REWARDS = "settings.rewards";
+    static final String REWARD_DISPATCH = "settings.reward-dispatch";
+    static final String WINDOWS = "settings.windows";
+    static final String EVENTS = "settings.events";
+    static final String MESSAGES = "messages";
+    static final String STORAGE = "storage";
+
+    private static final String[] TRACKED_SECTIONS = {
+            LEVELS, XP_TRACKING, PLACEHOLDERS, STATISTICS, REWARDS, REWARD_DISPATCH, WINDOWS, EVENTS, MESSAGES, STORAGE
+    };
+
+    private final boolean enabled;
+    private final double baseXp;
+    private final double xpMultiplier;
+    private final String storageType;
+    private final long prefetchTimeoutMillis;
+    private final boolean incrementalXp;
+    private final long recomputeIntervalTicks;
+    private final LevelCurve levelCurve;
+    private final RenderedPlaceholders.Style placeholderStyle;
+    private final StatisticRules statisticRules;
+    private final StatisticIndex statisticIndex;
+    private final RewardTable rewardTable;
+    private final Map<String, String> messages;
+    private final Map<String, Map<String, Object>> sources;
+
+    private PluginConfig(FileConfiguration config, Logger logger) {
+        enabled = config.getBoolean("settings.enable-plugin", true);
+        baseXp = config.getDouble("settings.levels.base-xp", 100);
+        xpMultiplier = config.getDouble("settings.levels.xp-multiplier", 1.5);
+        storageType = config.getString("storage.type", "sqlite").toLowerCase();
+        prefetchTimeoutMillis = Math.max(0, config.getLong("storage.cache.prefetch-timeout", 2000));
+
+        // In incremental mode XP follows statistic events and the full recompute only reconciles
+        incrementalXp = "incremental".equalsIgnoreCase(config.getString("settings.xp-tracking.mode", "incremental"));
+        long recomputeSeconds = incrementalXp
+                ? config.getLong("settings.xp-tracking.reconcile-interval", 1800)
+                : config.getLong("settings.xp-tracking.poll-interval", 300);
+        recomputeIntervalTicks = 20L * Math.max(1, recomputeSeconds);
+
+        levelCurve = LevelCurve.fromConfig(config.getConfigurationSection(LEVELS), logger);
+        placeholderStyle = RenderedPlaceholders.Style.fromConfig(config.getConfigurationSection(PLACEHOLDERS));
+
+        // Compile the statistic rules, then derive the event lookup table from them
+        statisticRules = StatisticRules.compile(config.getConfigurationSection(STATISTICS), logger);
+        statisticIndex = StatisticIndex.build(statisticRules);
+
+        rewardTable = RewardTable.fromConfig(config.getConfigurationSection(REWARDS), logger);
+
+        Map<String, String> messages = new HashMap<>();
+        ConfigurationSection messageSection = config.getConfigurationSection(MESSAGES);
+        if (messageSection != null) {
+            for (String key : messageSection.getKeys(false)) {
+                String message = messageSection.getString(key);
+                if (message != null) {
+                    messages.put(key, ChatColor.translateAlternateColorCodes('&', message));
+                }
+            }
+        }
+        this.messages = Collections.unmodifiableMap(messages);
+
+        Map<String, Map<String, Object>> sources = new HashMap<>();
+        for (String path : TRACKED_SECTIONS) {
+            sources.put(path, flatten(config.getConfigurationSection(path)));
+        }
+        this.sources = Collections.unmodifiableMap(sources);
+    }
+
+    /**
+     * Compiles a snapshot of the loaded configuration. Invalid entries are logged and skipped.
+     */
+    static PluginConfig load(FileConfiguration config, Logger logger) {
+        return new PluginConfig(config, logger);
+    }
+
+    /**
+     * Returns the tracked sections whose values differ from {@code previous}, and
+     * {@code "settings.enable-plugin"} if that flag changed.
+     */
+    Set<String> getChangedSections(PluginConfig previous) {
+        Set<String> changed = new LinkedHashSet<>();
+        if (enabled != previous.enabled) {
+            changed.add("settings.enable-plugin");
+        }
+        for (String path : TRACKED_SECTIONS) {
+            if (!Objects.equals(sources.get(path), previous.sources.get(path))) {
+                changed.add(path);
+            }
+        }
+        return changed;
+    }
+
+    // Leaf values only: nested sections compare by identity, their leaves are listed separately
+    private static Map<String, Object> flatten(ConfigurationSection section) {
+        if (section == null) return Collections.emptyMap();
+
+        Map<String, Object> values = new HashMap<>();
+        for (Map.Entry<String, Object> entry : section.getValues(true).entrySet()) {
+            if (!(entry.getValue() instanceof ConfigurationSection)) {
+                values.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return values;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    double getBaseXp() {
+        return baseXp;
+    }
+
+    double getXpMultiplier() {
+        return xpMultiplier;
+    }
+
+    String getStorageType() {
+        return storageType;
+    }
+
+    long getPrefetchTimeoutMillis() {
+        return prefetchTimeoutMillis;
+    }
+
+    boolean isIncrementalXp() {
+        return incrementalXp;
+    }
+
+    long getRecomputeIntervalTicks() {
+        return recomputeIntervalTicks;
+    }
+
+    LevelCurve getLevelCurve() {
+        return levelCurve;
+    }
+
+    RenderedPlaceholders.Style getPlaceholderStyle() {
+        return placeholderStyle;
+    }
+
+    StatisticRules getStatisticRules() {
+        return statisticRules;
+    }
+
+    StatisticIndex getStatisticIndex() {
+        return statisticIndex;
+    }
+
+    RewardTable getRewardTable() {
+        return rewardTable;
+    }
+
+    /**
+     * Returns the colored message under {@code messages.<key>}, or null if it is not set.
+     */
+    String getMessage(String key) {
+        return messages.get(key);
+    }
+}
@@ -0,0 +1,206 @@
+package com.flow258.playerLevels;
+
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spreads the full XP recompute across the recompute interval.
+ * <p>
+ * Runs every tick on the main thread. At the start of a cycle every online
+ * player is queued, and each tick reads statistics for only as many players as
+ * needed to stay on an even pace through the interval, capped by
+ * {@code slice-size} and by the {@code tick-budget} in milliseconds. XP is then
+ * computed off the main thread, one async task per tick, applied back on the
+ * main thread and saved in the background.
+ * <p>
+ * After a level curve change it also re-derives the cached players' levels,
+ * as many per tick as fit in the {@code tick-budget}.
+ */
+class RecomputeScheduler implements Runnable {
+
+    private static final long FIRST_CYCLE_DELAY_TICKS = 20L * 60;
+
+    private final PlayerLevels plugin;
+    private final Deque<UUID> queue = new ArrayDeque<>();
+    private final Deque<UUID> levelQueue = new ArrayDeque<>();
+    private LevelCurve levelCurve;
+
+    private long intervalTicks;
+    private long budgetNanos;
+    private int sliceSize;
+    private boolean logCycles;
+
+    private long tick;
+    private long nextCycleTick = FIRST_CYCLE_DELAY_TICKS;
+    private long cycleStartTick;
+    private int cyclePlayers;
+    private int cycleProcessed;
+    private long cycleMainThreadNanos;
+    private boolean cycleRunning;
+
+    private volatile long lastCycleTicks;
+    private volatile int lastCyclePlayers;
+    private volatile long lastCycleMainThreadNanos;
+
+    RecomputeScheduler(PlayerLevels plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Applies the scheduling settings from {@code settings.xp-tracking}. Takes effect from the next cycle.
+     */
+    void configure(long intervalTicks, ConfigurationSection config) {
+        this.intervalTicks = Math.max(1, intervalTicks);
+
+        double budgetMillis = 0.5;
+        int sliceSize = 20;
+        boolean logCycles = false;
+        if (config != null) {
+            budgetMillis = config.getDouble("tick-budget", budgetMillis);
+            sliceSize = config.getInt("slice-size", sliceSize);
+            logCycles = config.getBoolean("log-cycles", logCycles);
+        }
+
+        this.budgetNanos = (long) (Math.max(0.01, budgetMillis) * 1_000_000);
+        this.sliceSize = Math.max(1, sliceSize);
+        this.logCycles = logCycles;
+    }
+
+    @Override
+    public void run() {
+        tick++;
+        // Nothing to compare against until the database is up
+        if (!plugin.isPluginEnabled() || !plugin.isReady()) return;
+
+        if (!levelQueue.isEmpty()) {
+            rederiveLevels();
+        }
+
+        if (queue.isEmpty()) {
+            if (cycleRunning) {
+                finishCycle();
+            }
+            if (tick < nextCycleTick) return;
+            startCycle();
+        }
+
+        // Even pace: by the end of this tick, (elapsed / interval) of the cycle should be done
+        long elapsed = tick - cycleStartTick + 1;
+        long target = elapsed >= intervalTicks ? cyclePlayers : (cyclePlayers * elapsed + intervalTicks - 1) / intervalTicks;
+        int quota = (int) Math.min(sliceSize, target - cycleProcessed);
+        if (quota <= 0) return;
+
+        List<StatisticSnapshot> snapshots = new ArrayList<>(quota);
+        long start = System.nanoTime();
+
+        while (quota-- > 0 && !queue.isEmpty()) {
+            if (!snapshots.isEmpty() && System.nanoTime() - start > budgetNanos) break;
+
+            UUID uuid = queue.poll();
+            cycleProcessed++;
+
+            Player player = Bukkit.getPlayer(uuid);
+            if (player != null && player.isOnline()) {
+                snapshots.add(plugin.snapshotStatistics(player));
+            }
+        }
+
+        long sliceNanos = System.nanoTime() - start;
+        cycleMainThreadNanos += sliceNanos;
+        plugin.getMetrics().recomputeSlice.record(sliceNanos);
+
+        if (!snapshots.isEmpty()) {
+            plugin.applySnapshots(snapshots);
+        }
+    }
+
+    /**
+     * Starts a full cycle on the next tick, or right after the one in progress.
+     * Main thread only.
+     */
+    void requestCycle() {
+        nextCycleTick = Math.min(nextCycleTick, tick + 1);
+    }
+
+    /**
+     * Re-derives the players' levels from their XP with {@code curve} over the next
+     * ticks, replacing a re-derivation still in progress. Main thread only.
+     */
+    void requestLevels(LevelCurve curve, Collection<UUID> players) {
+        levelCurve = curve;
+        levelQueue.clear();
+        levelQueue.addAll(players);
+    }
+
+    private void rederiveLevels() {
+        List<LeaderboardIndex.Entry> uncached = new ArrayList<>();
+        long start = System.nanoTime();
+
+        while (!levelQueue.isEmpty() && System.nanoTime() - start <= budgetNanos) {
+            UUID uuid = levelQueue.poll();
+            // Evicted since it was queued: only the stored level is left to update
+            if (!plugin.rederiveLevel(uuid, levelCurve)) {
+                LeaderboardIndex.Entry entry = plugin.getLeaderboard().get(uuid);
+                if (entry != null) {
+                    uncached.add(entry);
+                }
+            }
+        }
+
+        if (!uncached.isEmpty()) {
+            plugin.storeLevels(uncached, levelCurve);
+        }
+    }
+
+    private void startCycle() {
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            queue.add(player.getUniqueId());
+        }
+
+        cycleStartTick = tick;
+        nextCycleTick = tick + intervalTicks;
+        cyclePlayers = queue.size();
+        cycleProcessed = 0;
+        cycleMainThreadNanos = 0;
+        cycleRunning = true;
+    }
+
+    private void finishCycle() {
+        cycleRunning = false;
+        lastCycleTicks = tick - cycleStartTick;
+        lastCyclePlayers = cyclePlayers;
+        lastCycleMainThreadNanos = cycleMainThreadNanos;
+        plugin.getMetrics().recomputeCycle.record(cycleMainThreadNanos);
+        plugin.getMetrics().recomputedPlayers.add(cyclePlayers);
+
+        if (logCycles) {
+            plugin.getLogger().info("Recomputed " + cyclePlayers + " players over " + lastCycleTicks + " ticks using "
+                    + String.format("%.2f", cycleMainThreadNanos / 1_000_000.0) + "ms of main thread time");
+        }
+    }
+
+    long getLastCycleTicks() {
+        return lastCycleTicks;
+    }
+
+    int getLastCyclePlayers() {
+        return lastCyclePlayers;
+    }
+
+    long getLastCycleMainThreadMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(lastCycleMainThreadNanos);
+    }
+
+    int getQueuedPlayers() {
+        return queue.size();
+    }
+}
@@ -0,0 +1,90 @@
+package com.flow258.playerLevels;
+
+import org.bukkit.ChatColor;
+import org.bukkit.configuration.ConfigurationSection;
+
+/**
+ * Placeholder strings for one player, rendered once per XP value.
+ * <p>
+ * {@link PlayerLevels.PlayerData} keeps the last rendered instance and only
+ * asks for a new one when its XP, the level curve or the placeholder style has
+ * changed, so scoreboard refreshes are plain field reads.
+ */
+final class RenderedPlaceholders {
+
+    /**
+     * Placeholder settings from {@code settings.placeholders}.
+     */
+    static final class Style {
+        private final String loading;
+        private final int barLength;
+        private final String filled;
+        private final String empty;
+
+        private Style(String loading, int barLength, String filled, String empty) {
+            this.loading = loading;
+            this.barLength = barLength;
+            this.filled = filled;
+            this.empty = empty;
+        }
+
+        static Style fromConfig(ConfigurationSection section) {
+            if (section == null) {
+                return new Style("...", 10, color("&a|"), color("&7|"));
+            }
+            return new Style(
+                    color(section.getString("loading", "...")),
+                    Math.max(1, section.getInt("progress-bar.length", 10)),
+                    color(section.getString("progress-bar.filled", "&a|")),
+                    color(section.getString("progress-bar.empty", "&7|")));
+        }
+
+        String getLoading() {
+            return loading;
+        }
+
+        private static String color(String text) {
+            return ChatColor.translateAlternateColorCodes('&', text);
+        }
+    }
+
+    private final long xp;
+    private final LevelCurve curve;
+    private final Style style;
+
+    final String level;
+    final String xpText;
+    final String xpNeeded;
+    final String progressPercent;
+    final String progressBar;
+
+    private RenderedPlaceholders(long xp, LevelCurve curve, Style style) {
+        this.xp = xp;
+        this.curve = curve;
+        this.style = style;
+
+        int currentLevel = curve.getLevel(xp);
+        double progress = curve.getProgress(xp);
+        int percent = (int) (progress * 100);
+        int filledCount = (int) (progress * style.barLength);
+
+        this.level = Integer.toString(currentLevel);
+        this.xpText = Xp.format(xp);
+        this.xpNeeded = Xp.format(curve.getXpForNextLevel(xp));
+        this.progressPercent = Integer.toString(percent);
+
+        StringBuilder bar = new StringBuilder(style.barLength * Math.max(style.filled.length(), style.empty.length()));
+        for (int i = 0; i < style.barLength; i++) {
+            bar.append(i < filledCount ? style.filled : style.empty);
+        }
+        this.progressBar = bar.toString();
+    }
+
+    static RenderedPlaceholders render(long xp, LevelCurve curve, Style style) {
+        return new RenderedPlaceholders(xp, curve, style);
+    }
+
+    boolean isCurrent(long xp, LevelCurve curve, Style style) {
+        return this.xp == xp && this.curve == curve && this.style == style;
+    }
+}
@@ -0,0 +1,166 @@
+package com.flow258.playerLevels;
+
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+
+/**
+ * Pays out level rewards.
+ * <p>
+ * When a player's level goes up, every reward between the old and the new level
+ * is claimed in the {@code reward_claims} table on the database writer. Only
+ * rewards that were not claimed before are queued, so each level pays out at
+ * most once per player even if their level drops and rises again. The queue is
+ * drained on the main thread at {@code commands-per-tick} commands per tick, so
+ * a mass level-up cannot stall the server.
+ */
+class RewardDispatcher implements Runnable {
+
+    private record Payout(UUID uuid, String name, RewardTable.Reward reward) {
+    }
+
+    private final PlayerLevels plugin;
+    private final Queue<Payout> payouts = new ConcurrentLinkedQueue<>();
+    private volatile int commandsPerTick = 20;
+
+    // Main thread only
+    private Payout current;
+    private int nextCommand;
+
+    RewardDispatcher(PlayerLevels plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Applies {@code settings.reward-dispatch}.
+     */
+    void configure(ConfigurationSection config) {
+        commandsPerTick = config != null ? Math.max(1, config.getInt("commands-per-tick", 20)) : 20;
+    }
+
+    /**
+     * Claims and queues every reward above {@code oldLevel} up to {@code newLevel}.
+     * Safe to call from any thread; does nothing unless a reward was crossed.
+     */
+    void levelChanged(UUID uuid, String name, int oldLevel, int newLevel) {
+        if (newLevel <= oldLevel) return;
+
+        RewardTable table = plugin.getRewardTable();
+        if (!table.hasRewardsBetween(oldLevel, newLevel)) return;
+
+        // Levels crossed while the database is still connecting are claimed once it is up
+        List<RewardTable.Reward> crossed = new ArrayList<>(table.getRewardsBetween(oldLevel, newLevel).values());
+        plugin.getStorageReady().thenAccept(storage -> {
+            if (storage == null) return;
+
+            storage.write("claim_rewards", pooled -> claim(pooled, storage.isSqlite(), uuid, crossed)).whenComplete((claimed, error) -> {
+                if (error != null) {
+                    plugin.getLogger().log(Level.SEVERE, "Error claiming rewards for " + name, error.getCause());
+                    return;
+                }
+                plugin.getMetrics().rewardsClaimed.add(claimed.size());
+                for (RewardTable.Reward reward : claimed) {
+                    payouts.add(new Payout(uuid, name, reward));
+                }
+            });
+        });
+    }
+
+    /**
+     * Records the claims and returns the rewards that had not been claimed yet.
+     */
+    private List<RewardTable.Reward> claim(StorageExecutor.PooledConnection pooled, boolean sqlite, UUID uuid,
+                                           Collection<RewardTable.Reward> crossed) throws SQLException {
+        String sql = sqlite
+                ? "INSERT OR IGNORE INTO reward_claims (uuid, level, claimed_at) VALUES (?, ?, ?)"
+                : "INSERT IGNORE INTO reward_claims (uuid, level, claimed_at) VALUES (?, ?, ?)";
+
+        Connection connection = pooled.getConnection();
+        PreparedStatement statement = pooled.prepare(sql);
+        List<RewardTable.Reward> claimed = new ArrayList<>(crossed.size());
+        long now = System.currentTimeMillis();
+
+        connection.setAutoCommit(false);
+        try {
+            for (RewardTable.Reward reward : crossed) {
+                statement.setBytes(1, StorageExecutor.toBytes(uuid));
+                statement.setInt(2, reward.getLevel());
+                statement.setLong(3, now);
+                if (statement.executeUpdate() > 0) {
+                    claimed.add(reward);
+                }
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+
+        return claimed;
+    }
+
+    /**
+     * Runs queued reward commands, at most {@code commands-per-tick} per call. Runs every tick.
+     */
+    @Override
+    public void run() {
+        dispatch(commandsPerTick);
+    }
+
+    /**
+     * Runs every queued reward. Used on shutdown so claimed rewards are not lost.
+     */
+    void drain() {
+        dispatch(Integer.MAX_VALUE);
+    }
+
+    private void dispatch(int budget) {
+        while (budget > 0) {
+            if (current == null) {
+                current = payouts.poll();
+                nextCommand = 0;
+                if (current == null) return;
+            }
+
+            RewardTable.Reward reward = current.reward();
+            if (nextCommand < reward.getCommandCount()) {
+                String command = reward.getCommand(nextCommand++, current.name());
+                long start = System.nanoTime();
+                try {
+                    Bukkit.dispatchCommand(Bukkit.getConsoleSender(), command);
+                } catch (Exception e) {
+                    plugin.getLogger().log(Level.WARNING, "Error running level " + reward.getLevel()
+                            + " reward command: " + command, e);
+                }
+                plugin.getMetrics().rewardCommand.record(System.nanoTime() - start);
+                budget--;
+                continue;
+            }
+
+            // The message is sent once all of the reward's commands have run
+            String message = reward.getMessage(current.name());
+            Player player = Bukkit.getPlayer(current.uuid());
+            if (message != null && player != null) {
+                player.sendMessage(message);
+            }
+            current = null;
+        }
+    }
+
+    int getPendingPayouts() {
+        return payouts.size();
+    }
+}
@@ -0,0 +1,135 @@
+package com.flow258.playerLevels;
+
+import org.bukkit.ChatColor;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * The {@code settings.rewards} section compiled once per config load.
+ * <p>
+ * Rewards are keyed by level in a {@link NavigableMap}, so finding every reward
+ * between two levels is a range query. Commands and messages are pre-split
+ * around {@code %player%}, so paying out only joins a few strings.
+ */
+final class RewardTable {
+
+    private static final String PLAYER_PLACEHOLDER = "%player%";
+
+    /**
+     * The commands and message for one level.
+     */
+    static final class Reward {
+        private final int level;
+        private final String[][] commands;
+        private final String[] message;
+
+        private Reward(int level, String[][] commands, String[] message) {
+            this.level = level;
+            this.commands = commands;
+            this.message = message;
+        }
+
+        int getLevel() {
+            return level;
+        }
+
+        int getCommandCount() {
+            return commands.length;
+        }
+
+        String getCommand(int index, String playerName) {
+            return render(commands[index], playerName);
+        }
+
+        /**
+         * Returns the colored message for the player, or null if the reward has none.
+         */
+        String getMessage(String playerName) {
+            return message != null ? render(message, playerName) : null;
+        }
+    }
+
+    private final NavigableMap<Integer, Reward> rewards;
+
+    private RewardTable(NavigableMap<Integer, Reward> rewards) {
+        this.rewards = rewards;
+    }
+
+    static RewardTable fromConfig(ConfigurationSection section, Logger logger) {
+        NavigableMap<Integer, Reward> rewards = new TreeMap<>();
+
+        if (section != null) {
+            for (String key : section.getKeys(false)) {
+                ConfigurationSection rewardConfig = section.getConfigurationSection(key);
+                if (rewardConfig == null) continue;
+
+                int level;
+                try {
+                    level = Integer.parseInt(key);
+                } catch (NumberFormatException e) {
+                    logger.warning("Ignoring reward '" + key + "': the key must be a level number");
+                    continue;
+                }
+
+                List<String> commands = rewardConfig.getStringList("commands");
+                String[][] splitCommands = new String[commands.size()][];
+                for (int i = 0; i < splitCommands.length; i++) {
+                    splitCommands[i] = split(commands.get(i));
+                }
+
+                String message = rewardConfig.getString("message", "");
+                String[] splitMessage = message.isEmpty() ? null
+                        : split(ChatColor.translateAlternateColorCodes('&', message));
+
+                rewards.put(level, new Reward(level, splitCommands, splitMessage));
+            }
+        }
+
+        return new RewardTable(Collections.unmodifiableNavigableMap(rewards));
+    }
+
+    /**
+     * Returns true if there is a reward above {@code fromLevel} and at or below {@code toLevel}.
+     */
+    boolean hasRewardsBetween(int fromLevel, int toLevel) {
+        Integer next = rewards.higherKey(fromLevel);
+        return next != null && next <= toLevel;
+    }
+
+    /**
+     * Returns the rewards above {@code fromLevel} and at or below {@code toLevel}, lowest first.
+     */
+    NavigableMap<Integer, Reward> getRewardsBetween(int fromLevel, int toLevel) {
+        return rewards.subMap(fromLevel, false, toLevel, true);
+    }
+
+    int size() {
+        return rewards.size();
+    }
+
+    private static String[] split(String template) {
+        return template.split(Pattern.quote(PLAYER_PLACEHOLDER), -1);
+    }
+
+    private static String render(String[] parts, String playerName) {
+        if (parts.length == 1) return parts[0];
+
+        int length = parts.length * playerName.length();
+        for (String part : parts) {
+            length += part.length();
+        }
+
+        StringBuilder builder = new StringBuilder(length);
+        builder.append(parts[0]);
+        for (int i = 1; i < parts.length; i++) {
+            builder.append(playerName).append(parts[i]);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,344 @@
+package com.flow258.playerLevels;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Ordered schema migrations, recorded in the {@code schema_version} table.
+ * <p>
+ * Each migration runs once, in version order, and is recorded together with its
+ * changes in one transaction. On MySQL DDL commits implicitly, so migrations that
+ * rebuild a table copy into a new table and only swap it in once the copy has
+ * been verified. Add new migrations to the end of the list; never edit or
+ * reorder ones that have shipped.
+ */
+final class SchemaMigrations {
+
+    private static final int COPY_BATCH_SIZE = 1000;
+
+    /**
+     * The changes of one migration, for the given dialect.
+     */
+    @FunctionalInterface
+    private interface Step {
+        void apply(Connection connection, boolean sqlite, Logger logger) throws SQLException;
+    }
+
+    private record Migration(int version, String description, Step step) {
+    }
+
+    private static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "Create player_levels and reward_claims", script(
+                    new String[]{
+                            "CREATE TABLE IF NOT EXISTS player_levels (uuid VARCHAR(36) PRIMARY KEY, "
+                                    + "name VARCHAR(16) NOT NULL, xp DOUBLE NOT NULL DEFAULT 0, level INT NOT NULL DEFAULT 1)",
+                            "CREATE TABLE IF NOT EXISTS reward_claims (uuid VARCHAR(36) NOT NULL, level INT NOT NULL, "
+                                    + "claimed_at BIGINT NOT NULL, PRIMARY KEY (uuid, level))"
+                    },
+                    new String[]{
+                            "CREATE TABLE IF NOT EXISTS player_levels (uuid VARCHAR(36) PRIMARY KEY, "
+                                    + "name VARCHAR(16) NOT NULL, xp DOUBLE NOT NULL DEFAULT 0, level INT NOT NULL DEFAULT 1)",
+                            "CREATE TABLE IF NOT EXISTS reward_claims (uuid VARCHAR(36) NOT NULL, level INT NOT NULL, "
+                                    + "claimed_at BIGINT NOT NULL, PRIMARY KEY (uuid, level))"
+                    })),
+            new Migration(2, "Store UUIDs as 16-byte binary", SchemaMigrations::binaryUuids),
+            new Migration(3, "Index player_levels by (level, xp) for the leaderboard", script(
+                    new String[]{"CREATE INDEX IF NOT EXISTS idx_player_levels_rank ON player_levels (level, xp)"},
+                    new String[]{"CREATE INDEX idx_player_levels_rank ON player_levels (level, xp)"})),
+            new Migration(4, "Add row versions and the level_changes log for network mode", SchemaMigrations::changeLog),
+            new Migration(5, "Create xp_buckets for the day, week and month leaderboards", script(
+                    new String[]{
+                            "CREATE TABLE IF NOT EXISTS xp_buckets (uuid BLOB NOT NULL, day INT NOT NULL, "
+                                    + "xp BIGINT NOT NULL DEFAULT 0, PRIMARY KEY (uuid, day)) WITHOUT ROWID",
+                            "CREATE INDEX IF NOT EXISTS idx_xp_buckets_day ON xp_buckets (day)"
+                    },
+                    new String[]{
+                            "CREATE TABLE IF NOT EXISTS xp_buckets (uuid BINARY(16) NOT NULL, day INT NOT NULL, "
+                                    + "xp BIGINT NOT NULL DEFAULT 0, PRIMARY KEY (uuid, day), INDEX idx_xp_buckets_day (day))"
+                    })),
+            // MySQL compares with the column's case-insensitive collation, so a plain index does the same there
+            new Migration(6, "Index player_levels by lowercase name for player lookups", script(
+                    new String[]{"CREATE INDEX IF NOT EXISTS idx_player_levels_name ON player_levels (LOWER(name))"},
+                    new String[]{"CREATE INDEX idx_player_levels_name ON player_levels (name)"})),
+            new Migration(7, "Store XP as integer milli-XP", SchemaMigrations::milliXp),
+            new Migration(8, "Add player_levels.xp_offset for resets that survive a recompute", SchemaMigrations::xpOffset)
+    );
+
+    private SchemaMigrations() {
+    }
+
+    /**
+     * Applies every migration newer than the database. Returns the resulting schema version.
+     */
+    static int migrate(StorageExecutor.PooledConnection pooled, boolean sqlite, Logger logger) throws SQLException {
+        Connection connection = pooled.getConnection();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS schema_version (version INT PRIMARY KEY, "
+                    + "description VARCHAR(255) NOT NULL, applied_at BIGINT NOT NULL)");
+        }
+
+        int current = getVersion(connection);
+        int latest = MIGRATIONS.get(MIGRATIONS.size() - 1).version();
+        if (current > latest) {
+            logger.warning("Database schema version " + current + " is newer than this plugin supports (" + latest
+                    + "). Was it opened by a newer version of PlayerLevels?");
+            return current;
+        }
+
+        for (Migration migration : MIGRATIONS) {
+            if (migration.version() <= current) continue;
+
+            long start = System.nanoTime();
+            connection.setAutoCommit(false);
+            try {
+                migration.step().apply(connection, sqlite, logger);
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "INSERT INTO schema_version (version, description, applied_at) VALUES (?, ?, ?)")) {
+                    statement.setInt(1, migration.version());
+                    statement.setString(2, migration.description());
+                    statement.setLong(3, System.currentTimeMillis());
+                    statement.executeUpdate();
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw new SQLException("Schema migration " + migration.version() + " (" + migration.description()
+                        + ") failed", e);
+            } finally {
+                connection.setAutoCommit(true);
+            }
+
+            current = migration.version();
+            logger.info("Applied schema migration " + current + ": " + migration.description() + " in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+        }
+
+        return current;
+    }
+
+    private static int getVersion(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT MAX(version) FROM schema_version")) {
+            return resultSet.next() ? resultSet.getInt(1) : 0;
+        }
+    }
+
+    private static Step script(String[] sqlite, String[] mysql) {
+        return (connection, isSqlite, logger) -> {
+            try (Statement statement = connection.createStatement()) {
+                for (String sql : isSqlite ? sqlite : mysql) {
+                    statement.execute(sql);
+                }
+            }
+        };
+    }
+
+    /**
+     * Rebuilds both tables with {@code BINARY(16)} UUID keys. Rows are copied in
+     * batches and counted before the new tables replace the old ones.
+     */
+    private static void binaryUuids(Connection connection, boolean sqlite, Logger logger) throws SQLException {
+        String uuidType = sqlite ? "BLOB" : "BINARY(16)";
+        String tableOptions = sqlite ? " WITHOUT ROWID" : "";
+
+        try (Statement statement = connection.createStatement()) {
+            // Left over if an earlier attempt failed on MySQL, where DDL is not rolled back
+            statement.execute("DROP TABLE IF EXISTS player_levels_v2");
+            statement.execute("DROP TABLE IF EXISTS reward_claims_v2");
+
+            statement.execute("CREATE TABLE player_levels_v2 (uuid " + uuidType + " NOT NULL PRIMARY KEY, "
+                    + "name VARCHAR(16) NOT NULL, xp DOUBLE NOT NULL DEFAULT 0, level INT NOT NULL DEFAULT 1)" + tableOptions);
+            statement.execute("CREATE TABLE reward_claims_v2 (uuid " + uuidType + " NOT NULL, level INT NOT NULL, "
+                    + "claimed_at BIGINT NOT NULL, PRIMARY KEY (uuid, level))" + tableOptions);
+        }
+
+        copyWithBinaryUuid(connection, logger, "player_levels",
+                "SELECT uuid, name, xp, level FROM player_levels",
+                "INSERT INTO player_levels_v2 (uuid, name, xp, level) VALUES (?, ?, ?, ?)");
+        copyWithBinaryUuid(connection, logger, "reward_claims",
+                "SELECT uuid, level, claimed_at FROM reward_claims",
+                "INSERT INTO reward_claims_v2 (uuid, level, claimed_at) VALUES (?, ?, ?)");
+
+        try (Statement statement = connection.createStatement()) {
+            if (sqlite) {
+                statement.execute("DROP TABLE player_levels");
+                statement.execute("ALTER TABLE player_levels_v2 RENAME TO player_levels");
+                statement.execute("DROP TABLE reward_claims");
+                statement.execute("ALTER TABLE reward_claims_v2 RENAME TO reward_claims");
+            } else {
+                // One atomic rename, so the old tables stay in place until the new ones are complete
+                statement.execute("RENAME TABLE player_levels TO player_levels_v1, player_levels_v2 TO player_levels, "
+                        + "reward_claims TO reward_claims_v1, reward_claims_v2 TO reward_claims");
+                statement.execute("DROP TABLE player_levels_v1, reward_claims_v1");
+            }
+        }
+    }
+
+    /**
+     * Adds {@code player_levels.version} for compare-and-set writes, and the
+     * {@code level_changes} table other servers poll by id. Safe to re-run on
+     * MySQL after a partial failure.
+     */
+    private static void changeLog(Connection connection, boolean sqlite, Logger logger) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            if (!hasColumn(connection, "player_levels", "version")) {
+                statement.execute("ALTER TABLE player_levels ADD COLUMN version BIGINT NOT NULL DEFAULT 0");
+            }
+
+            if (sqlite) {
+                statement.execute("CREATE TABLE IF NOT EXISTS level_changes (id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + "uuid BLOB NOT NULL, server_id VARCHAR(64) NOT NULL, changed_at BIGINT NOT NULL)");
+                statement.execute("CREATE INDEX IF NOT EXISTS idx_level_changes_changed_at ON level_changes (changed_at)");
+            } else {
+                statement.execute("CREATE TABLE IF NOT EXISTS level_changes (id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                        + "uuid BINARY(16) NOT NULL, server_id VARCHAR(64) NOT NULL, changed_at BIGINT NOT NULL, "
+                        + "INDEX idx_level_changes_changed_at (changed_at))");
+            }
+        }
+    }
+
+    /**
+     * Rebuilds {@code player_levels} with a {@code BIGINT} milli-XP column. SQLite
+     * keeps turning integers in a {@code DOUBLE} column back into floating point,
+     * so both dialects copy into a new table and swap it in once the row counts
+     * match, as in {@link #binaryUuids}. {@code xp_buckets} is created with
+     * milli-XP already.
+     */
+    private static void milliXp(Connection connection, boolean sqlite, Logger logger) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS player_levels_v2");
+
+            if (sqlite) {
+                statement.execute("CREATE TABLE player_levels_v2 (uuid BLOB NOT NULL PRIMARY KEY, "
+                        + "name VARCHAR(16) NOT NULL, xp BIGINT NOT NULL DEFAULT 0, level INT NOT NULL DEFAULT 1, "
+                        + "version BIGINT NOT NULL DEFAULT 0) WITHOUT ROWID");
+            } else {
+                // LIKE copies the indexes too; their names are per table on MySQL
+                statement.execute("CREATE TABLE player_levels_v2 LIKE player_levels");
+                statement.execute("ALTER TABLE player_levels_v2 MODIFY xp BIGINT NOT NULL DEFAULT 0");
+            }
+        }
+
+        String milliXp = sqlite ? "CAST(ROUND(xp * " + Xp.SCALE + ") AS INTEGER)" : "ROUND(xp * " + Xp.SCALE + ")";
+        copyVerified(connection, logger, "player_levels", "INSERT INTO player_levels_v2 (uuid, name, xp, level, version) "
+                + "SELECT uuid, name, " + milliXp + ", level, version FROM player_levels");
+
+        try (Statement statement = connection.createStatement()) {
+            if (sqlite) {
+                // Index names are per database on SQLite, so they can only be recreated once the old table is gone
+                statement.execute("DROP TABLE player_levels");
+                statement.execute("ALTER TABLE player_levels_v2 RENAME TO player_levels");
+                statement.execute("CREATE INDEX idx_player_levels_rank ON player_levels (level, xp)");
+                statement.execute("CREATE INDEX idx_player_levels_name ON player_levels (LOWER(name))");
+            } else {
+                statement.execute("RENAME TABLE player_levels TO player_levels_v1, player_levels_v2 TO player_levels");
+                statement.execute("DROP TABLE player_levels_v1");
+            }
+        }
+    }
+
+    /**
+     * Adds {@code player_levels.xp_offset}, the statistics XP that no longer
+     * counts after a reset or {@code /level set}. Safe to re-run on MySQL after a
+     * partial failure.
+     */
+    private static void xpOffset(Connection connection, boolean sqlite, Logger logger) throws SQLException {
+        if (hasColumn(connection, "player_levels", "xp_offset")) return;
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ALTER TABLE player_levels ADD COLUMN xp_offset BIGINT NOT NULL DEFAULT 0");
+        }
+    }
+
+    /**
+     * Runs an {@code INSERT ... SELECT} from {@code table} into {@code table_v2}
+     * and fails unless every row arrived.
+     */
+    private static void copyVerified(Connection connection, Logger logger, String table, String copySql)
+            throws SQLException {
+        long sourceRows = count(connection, table);
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(copySql);
+        }
+
+        long copiedRows = count(connection, table + "_v2");
+        if (copiedRows != sourceRows) {
+            throw new SQLException("Row count mismatch copying " + table + ": " + sourceRows + " rows, "
+                    + copiedRows + " copied");
+        }
+        logger.info("Converted " + copiedRows + " " + table + " rows to milli-XP");
+    }
+
+    private static boolean hasColumn(Connection connection, String table, String column) throws SQLException {
+        try (ResultSet columns = connection.getMetaData().getColumns(connection.getCatalog(), null, table, column)) {
+            return columns.next();
+        }
+    }
+
+    /**
+     * Copies every row, converting the first column from a UUID string to 16 bytes.
+     * Rows with an unparseable UUID are logged and skipped; the copy fails unless
+     * every other row arrived.
+     */
+    private static void copyWithBinaryUuid(Connection connection, Logger logger, String table,
+                                           String selectSql, String insertSql) throws SQLException {
+        long sourceRows = count(connection, table);
+        long skipped = 0;
+
+        try (Statement select = connection.createStatement();
+             PreparedStatement insert = connection.prepareStatement(insertSql)) {
+            select.setFetchSize(COPY_BATCH_SIZE);
+            try (ResultSet resultSet = select.executeQuery(selectSql)) {
+                int columns = resultSet.getMetaData().getColumnCount();
+                int batched = 0;
+
+                while (resultSet.next()) {
+                    String uuid = resultSet.getString(1);
+                    try {
+                        insert.setBytes(1, StorageExecutor.toBytes(UUID.fromString(uuid)));
+                    } catch (IllegalArgumentException e) {
+                        logger.warning("Skipping " + table + " row with invalid UUID '" + uuid + "'");
+                        skipped++;
+                        continue;
+                    }
+
+                    for (int column = 2; column <= columns; column++) {
+                        insert.setObject(column, resultSet.getObject(column));
+                    }
+                    insert.addBatch();
+
+                    if (++batched == COPY_BATCH_SIZE) {
+                        insert.executeBatch();
+                        batched = 0;
+                    }
+                }
+
+                if (batched > 0) {
+                    insert.executeBatch();
+                }
+            }
+        }
+
+        long copiedRows = count(connection, table + "_v2");
+        if (copiedRows + skipped != sourceRows) {
+            throw new SQLException("Row count mismatch copying " + table + ": " + sourceRows + " rows, "
+                    + copiedRows + " copied, " + skipped + " skipped");
+        }
+        logger.info("Converted " + copiedRows + " " + table + " rows to binary UUIDs");
+    }
+
+    private static long count(Connection connection, String table) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+}
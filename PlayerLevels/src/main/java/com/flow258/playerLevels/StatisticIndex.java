@@ -0,0 +1,81 @@
+package com.flow258.playerLevels;
+
+import org.bukkit.Material;
+import org.bukkit.Statistic;
+import org.bukkit.entity.EntityType;
+
+/**
+ * Lookup table from a statistic increment to the XP weight it is worth.
+ * <p>
+ * Weights are stored in arrays indexed by enum ordinal, so matching a
+ * {@code PlayerStatisticIncrementEvent} is a couple of array reads with no
+ * allocation. Per-material and per-entity rows are only created for statistics
+ * that have a rule using them. Built from the reads of a compiled
+ * {@link StatisticRules} plan, so tags and wildcards are already expanded.
+ */
+final class StatisticIndex {
+
+    private static final int MATERIAL_COUNT = Material.values().length;
+    private static final int ENTITY_COUNT = EntityType.values().length;
+
+    private final long[] untyped;
+    private final long[][] byMaterial;
+    private final long[][] byEntity;
+
+    private StatisticIndex(long[] untyped, long[][] byMaterial, long[][] byEntity) {
+        this.untyped = untyped;
+        this.byMaterial = byMaterial;
+        this.byEntity = byEntity;
+    }
+
+    static StatisticIndex build(StatisticRules rules) {
+        int statisticCount = Statistic.values().length;
+        long[] untyped = new long[statisticCount];
+        long[][] byMaterial = new long[statisticCount][];
+        long[][] byEntity = new long[statisticCount][];
+
+        for (int read = 0; read < rules.getReadCount(); read++) {
+            int ordinal = rules.getStatistic(read).ordinal();
+            Material material = rules.getMaterial(read);
+            EntityType entityType = rules.getEntityType(read);
+            long weight = rules.getWeight(read);
+
+            if (material != null) {
+                if (byMaterial[ordinal] == null) {
+                    byMaterial[ordinal] = new long[MATERIAL_COUNT];
+                }
+                int index = material.ordinal();
+                byMaterial[ordinal][index] = Xp.add(byMaterial[ordinal][index], weight);
+            } else if (entityType != null) {
+                if (byEntity[ordinal] == null) {
+                    byEntity[ordinal] = new long[ENTITY_COUNT];
+                }
+                int index = entityType.ordinal();
+                byEntity[ordinal][index] = Xp.add(byEntity[ordinal][index], weight);
+            } else {
+                untyped[ordinal] = Xp.add(untyped[ordinal], weight);
+            }
+        }
+
+        return new StatisticIndex(untyped, byMaterial, byEntity);
+    }
+
+    /**
+     * Returns the milli-XP worth of one increment of the statistic, or 0 if no rule matches.
+     */
+    long getWeight(Statistic statistic, Material material, EntityType entityType) {
+        int ordinal = statistic.ordinal();
+
+        if (material != null) {
+            long[] row = byMaterial[ordinal];
+            return row != null ? row[material.ordinal()] : 0;
+        }
+
+        if (entityType != null) {
+            long[] row = byEntity[ordinal];
+            return row != null ? row[entityType.ordinal()] : 0;
+        }
+
+        return untyped[ordinal];
+    }
+}
@@ -0,0 +1,419 @@
+package com.flow258.playerLevels;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Keyed;
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.Statistic;
+import org.bukkit.Tag;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * The {@code settings.statistics} section compiled into a flat evaluation plan.
+ * <p>
+ * Each rule may name one statistic and any number of materials or entities,
+ * including tags such as {@code #minecraft:logs} and wildcards such as
+ * {@code *_ORE}. These are expanded once here into a list of single statistic
+ * reads, sorted by statistic so reads of the same statistic are adjacent. A read
+ * shared by several rules is only made once and credited to each of them. Rules
+ * that could never match, such as a block statistic with no valid block, are
+ * dropped with a warning.
+ * <p>
+ * The plan is a handful of primitive arrays; reading and evaluating it does not
+ * allocate. A new plan is compiled on every config load and swapped in as a whole.
+ */
+final class StatisticRules {
+
+    private static final Statistic[] STATISTICS = Statistic.values();
+    private static final Material[] MATERIALS = Material.values();
+    private static final EntityType[] ENTITY_TYPES = EntityType.values();
+
+    private static final int UNTYPED = 0;
+    private static final int MATERIAL = 1;
+    private static final int ENTITY = 2;
+
+    private static final double MAX_WEIGHT = 1_000_000;
+
+    private record Contribution(int rule, long weight) {
+    }
+
+    private final Logger logger;
+    private final String[] ruleNames;
+
+    // One entry per read, sorted by statistic
+    private final int[] readStatistic;
+    private final int[] readKind;
+    private final int[] readQualifier;
+    private final long[] readWeight;
+
+    // Rules credited by read r are contributionRule[contributionStart[r] .. contributionStart[r + 1])
+    private final int[] contributionStart;
+    private final int[] contributionRule;
+    private final long[] contributionWeight;
+
+    private final AtomicBoolean readFailureLogged = new AtomicBoolean();
+
+    private StatisticRules(Logger logger, List<String> ruleNames, Map<Long, List<Contribution>> reads) {
+        this.logger = logger;
+        this.ruleNames = ruleNames.toArray(new String[0]);
+
+        int readCount = reads.size();
+        int contributionCount = 0;
+        for (List<Contribution> contributions : reads.values()) {
+            contributionCount += contributions.size();
+        }
+
+        readStatistic = new int[readCount];
+        readKind = new int[readCount];
+        readQualifier = new int[readCount];
+        readWeight = new long[readCount];
+        contributionStart = new int[readCount + 1];
+        contributionRule = new int[contributionCount];
+        contributionWeight = new long[contributionCount];
+
+        int r = 0;
+        int c = 0;
+        for (Map.Entry<Long, List<Contribution>> read : reads.entrySet()) {
+            long key = read.getKey();
+            readStatistic[r] = (int) (key >>> 34);
+            readKind[r] = (int) (key >>> 32) & 3;
+            readQualifier[r] = (int) key;
+
+            contributionStart[r] = c;
+            for (Contribution contribution : read.getValue()) {
+                contributionRule[c] = contribution.rule();
+                contributionWeight[c] = contribution.weight();
+                readWeight[r] = Xp.add(readWeight[r], contribution.weight());
+                c++;
+            }
+            r++;
+        }
+        contributionStart[readCount] = c;
+    }
+
+    /**
+     * Compiles the {@code settings.statistics} section. Invalid rules are logged and skipped.
+     */
+    static StatisticRules compile(ConfigurationSection section, Logger logger) {
+        List<String> ruleNames = new ArrayList<>();
+        Map<Long, List<Contribution>> reads = new TreeMap<>();
+
+        if (section != null) {
+            for (String key : section.getKeys(false)) {
+                ConfigurationSection rule = section.getConfigurationSection(key);
+                if (rule != null) {
+                    compileRule(key, rule, ruleNames.size(), reads, logger, ruleNames);
+                }
+            }
+        }
+
+        return new StatisticRules(logger, ruleNames, reads);
+    }
+
+    private static void compileRule(String name, ConfigurationSection rule, int index,
+                                    Map<Long, List<Contribution>> reads, Logger logger, List<String> ruleNames) {
+        String statisticName = rule.getString("statistic", "");
+        Statistic statistic;
+        try {
+            statistic = Statistic.valueOf(statisticName.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            logger.warning("Statistic rule " + name + ": unknown statistic '" + statisticName + "'");
+            return;
+        }
+
+        double xpValue = rule.getDouble("xp-value");
+        if (!(Math.abs(xpValue) <= MAX_WEIGHT)) {
+            logger.warning("Statistic rule " + name + ": xp-value must be a number between -"
+                    + (long) MAX_WEIGHT + " and " + (long) MAX_WEIGHT);
+            return;
+        }
+        long weight = Xp.of(xpValue);
+        if (weight == 0) {
+            logger.warning("Statistic rule " + name + ": xp-value must be non-zero and at least 0.001");
+            return;
+        }
+        if (Xp.toPoints(weight) != xpValue) {
+            logger.warning("Statistic rule " + name + ": xp-value " + xpValue + " rounded to "
+                    + Xp.toPoints(weight) + ", XP is counted in thousandths");
+        }
+
+        List<String> materials = getNames(rule, "material", "materials");
+        List<String> entities = getNames(rule, "entity", "entities");
+
+        int kind;
+        int[] qualifiers;
+        switch (statistic.getType()) {
+            case BLOCK:
+            case ITEM:
+                if (!entities.isEmpty()) {
+                    logger.warning("Statistic rule " + name + ": " + statistic + " counts materials, not entities");
+                    return;
+                }
+                kind = MATERIAL;
+                qualifiers = expandMaterials(name, statistic, materials, logger);
+                break;
+            case ENTITY:
+                if (!materials.isEmpty()) {
+                    logger.warning("Statistic rule " + name + ": " + statistic + " counts entities, not materials");
+                    return;
+                }
+                kind = ENTITY;
+                qualifiers = expandEntities(name, entities, logger);
+                break;
+            default:
+                if (!materials.isEmpty() || !entities.isEmpty()) {
+                    logger.warning("Statistic rule " + name + ": " + statistic + " does not take a material or entity");
+                    return;
+                }
+                kind = UNTYPED;
+                qualifiers = new int[]{0};
+                break;
+        }
+
+        if (qualifiers.length == 0) {
+            logger.warning("Statistic rule " + name + ": no valid " + (kind == ENTITY ? "entity" : "material")
+                    + " for " + statistic + ", skipping it");
+            return;
+        }
+
+        List<String> qualifierNames = kind == ENTITY ? entities : materials;
+        ruleNames.add(qualifierNames.isEmpty() ? name + " " + statistic
+                : name + " " + statistic + " " + String.join(", ", qualifierNames));
+        for (int qualifier : qualifiers) {
+            long key = ((long) statistic.ordinal() << 34) | ((long) kind << 32) | qualifier;
+            reads.computeIfAbsent(key, ignored -> new ArrayList<>(1)).add(new Contribution(index, weight));
+        }
+    }
+
+    /**
+     * Reads a key that may hold either one name or a list of names, plus its plural form.
+     */
+    private static List<String> getNames(ConfigurationSection rule, String singular, String plural) {
+        List<String> names = new ArrayList<>();
+        for (String key : new String[]{singular, plural}) {
+            if (rule.isList(key)) {
+                names.addAll(rule.getStringList(key));
+            } else {
+                String value = rule.getString(key, "");
+                if (!value.isEmpty()) {
+                    names.add(value);
+                }
+            }
+        }
+        return names;
+    }
+
+    private static int[] expandMaterials(String name, Statistic statistic, List<String> names, Logger logger) {
+        boolean blocks = statistic.getType() == Statistic.Type.BLOCK;
+        Set<Material> expanded = EnumSet.noneOf(Material.class);
+
+        for (String token : names) {
+            Set<Material> matches;
+            if (token.startsWith("#")) {
+                matches = getTagValues(token, blocks ? Tag.REGISTRY_BLOCKS : Tag.REGISTRY_ITEMS, Material.class);
+            } else if (token.contains("*")) {
+                matches = EnumSet.noneOf(Material.class);
+                Pattern pattern = compileWildcard(token);
+                for (Material material : MATERIALS) {
+                    if (pattern.matcher(material.name()).matches()) {
+                        matches.add(material);
+                    }
+                }
+            } else {
+                Material material = Material.matchMaterial(token);
+                if (material == null || material.isLegacy() || (blocks ? !material.isBlock() : !material.isItem())) {
+                    logger.warning("Statistic rule " + name + ": '" + token + "' is not a valid "
+                            + (blocks ? "block" : "item") + " for " + statistic);
+                    continue;
+                }
+                matches = EnumSet.of(material);
+            }
+
+            if (matches == null || matches.isEmpty()) {
+                logger.warning("Statistic rule " + name + ": '" + token + "' matches nothing");
+                continue;
+            }
+
+            for (Material material : matches) {
+                if (!material.isLegacy() && (blocks ? material.isBlock() : material.isItem())) {
+                    expanded.add(material);
+                }
+            }
+        }
+
+        return expanded.stream().mapToInt(Enum::ordinal).toArray();
+    }
+
+    private static int[] expandEntities(String name, List<String> names, Logger logger) {
+        Set<EntityType> expanded = EnumSet.noneOf(EntityType.class);
+
+        for (String token : names) {
+            Set<EntityType> matches;
+            if (token.startsWith("#")) {
+                matches = getTagValues(token, Tag.REGISTRY_ENTITY_TYPES, EntityType.class);
+            } else if (token.contains("*")) {
+                matches = EnumSet.noneOf(EntityType.class);
+                Pattern pattern = compileWildcard(token);
+                for (EntityType entityType : ENTITY_TYPES) {
+                    if (pattern.matcher(entityType.name()).matches()) {
+                        matches.add(entityType);
+                    }
+                }
+            } else {
+                try {
+                    matches = EnumSet.of(EntityType.valueOf(token.toUpperCase(Locale.ROOT)));
+                } catch (IllegalArgumentException e) {
+                    matches = null;
+                }
+            }
+
+            if (matches == null || matches.isEmpty()) {
+                logger.warning("Statistic rule " + name + ": '" + token + "' matches no entity");
+                continue;
+            }
+
+            // Entity statistics only exist for living entities
+            for (EntityType entityType : matches) {
+                if (entityType.isAlive()) {
+                    expanded.add(entityType);
+                }
+            }
+        }
+
+        return expanded.stream().mapToInt(Enum::ordinal).toArray();
+    }
+
+    private static <T extends Keyed> Set<T> getTagValues(String token, String registry, Class<T> type) {
+        NamespacedKey key = NamespacedKey.fromString(token.substring(1).toLowerCase(Locale.ROOT));
+        if (key == null) return Collections.emptySet();
+
+        Tag<T> tag = Bukkit.getTag(registry, key, type);
+        return tag != null ? tag.getValues() : Collections.emptySet();
+    }
+
+    private static Pattern compileWildcard(String token) {
+        String[] parts = token.toUpperCase(Locale.ROOT).split("\\*", -1);
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                regex.append(".*");
+            }
+            regex.append(Pattern.quote(parts[i]));
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Reads every statistic in the plan into {@code values}, which must be
+     * {@link #getReadCount()} long. Must run on the main thread.
+     */
+    void read(Player player, int[] values) {
+        for (int r = 0; r < values.length; r++) {
+            Statistic statistic = STATISTICS[readStatistic[r]];
+            try {
+                switch (readKind[r]) {
+                    case MATERIAL:
+                        values[r] = player.getStatistic(statistic, MATERIALS[readQualifier[r]]);
+                        break;
+                    case ENTITY:
+                        values[r] = player.getStatistic(statistic, ENTITY_TYPES[readQualifier[r]]);
+                        break;
+                    default:
+                        values[r] = player.getStatistic(statistic);
+                        break;
+                }
+            } catch (IllegalArgumentException e) {
+                // Validation should prevent this; log once per plan instead of once per player
+                values[r] = 0;
+                if (readFailureLogged.compareAndSet(false, true)) {
+                    logger.warning("Could not read statistic " + statistic + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the total XP the values read by {@link #read} are worth. If
+     * {@code breakdown} is not null it must be {@link #getRuleCount()} long, and
+     * receives the XP each rule contributed. All amounts are in milli-XP, and
+     * sums saturate at {@link Xp#MAX} instead of overflowing.
+     */
+    long evaluate(int[] values, long[] breakdown) {
+        if (breakdown != null) {
+            Arrays.fill(breakdown, 0);
+        }
+
+        long total = 0;
+        for (int r = 0; r < values.length; r++) {
+            int value = values[r];
+            if (value == 0) continue;
+
+            if (breakdown == null) {
+                total = Xp.add(total, Xp.times(readWeight[r], value));
+                continue;
+            }
+
+            for (int c = contributionStart[r]; c < contributionStart[r + 1]; c++) {
+                long xp = Xp.times(contributionWeight[c], value);
+                breakdown[contributionRule[c]] = Xp.add(breakdown[contributionRule[c]], xp);
+                total = Xp.add(total, xp);
+            }
+        }
+        return total;
+    }
+
+    int getReadCount() {
+        return readStatistic.length;
+    }
+
+    Statistic getStatistic(int read) {
+        return STATISTICS[readStatistic[read]];
+    }
+
+    /**
+     * Returns the material of a read, or null if it is not a material statistic.
+     */
+    Material getMaterial(int read) {
+        return readKind[read] == MATERIAL ? MATERIALS[readQualifier[read]] : null;
+    }
+
+    /**
+     * Returns the entity of a read, or null if it is not an entity statistic.
+     */
+    EntityType getEntityType(int read) {
+        return readKind[read] == ENTITY ? ENTITY_TYPES[readQualifier[read]] : null;
+    }
+
+    /**
+     * Returns the combined milli-XP of one increment of a read, over every rule that uses it.
+     */
+    long getWeight(int read) {
+        return readWeight[read];
+    }
+
+    int getRuleCount() {
+        return ruleNames.length;
+    }
+
+    /**
+     * Returns the rule's config key, statistic and materials or entities, for display.
+     */
+    String getRuleName(int rule) {
+        return ruleNames[rule];
+    }
+}
@@ -0,0 +1,99 @@
+package com.flow258.playerLevels;
+
+import org.bukkit.entity.Player;
+
+import java.util.UUID;
+
+/**
+ * Statistic values read for one player on the main thread, so XP can be
+ * computed from them on another thread without touching the {@link Player}.
+ * It also records what the player's cached data held at that moment, so the
+ * result can be applied later without losing the statistic events in between.
+ */
+final class StatisticSnapshot {
+
+    private final UUID uuid;
+    private final String name;
+    private final StatisticRules rules;
+    private final int[] values;
+    private final long takenAt;
+    private final long eventXp;
+    private final long previousXp;
+
+    private StatisticSnapshot(UUID uuid, String name, StatisticRules rules, int[] values, long eventXp,
+                              long previousXp) {
+        this.uuid = uuid;
+        this.name = name;
+        this.rules = rules;
+        this.values = values;
+        this.takenAt = System.nanoTime();
+        this.eventXp = eventXp;
+        this.previousXp = previousXp;
+    }
+
+    /**
+     * Reads every statistic the rules use. Must run on the main thread.
+     */
+    static StatisticSnapshot take(Player player, StatisticRules rules) {
+        return take(player, rules, null);
+    }
+
+    /**
+     * Reads every statistic the rules use, along with the player's cached data,
+     * which may be null. Must run on the main thread.
+     */
+    static StatisticSnapshot take(Player player, StatisticRules rules, PlayerLevels.PlayerData data) {
+        int[] values = new int[rules.getReadCount()];
+        rules.read(player, values);
+        return new StatisticSnapshot(player.getUniqueId(), player.getName(), rules, values,
+                data != null ? data.getEventXp() : 0, data != null ? data.getXpMillis() : -1);
+    }
+
+    /**
+     * Returns the total milli-XP the snapshot is worth under the rules it was taken with.
+     */
+    long computeXp() {
+        return rules.evaluate(values, null);
+    }
+
+    /**
+     * Returns the total XP and fills {@code breakdown} with the XP of each rule.
+     * See {@link StatisticRules#evaluate}.
+     */
+    long computeXp(long[] breakdown) {
+        return rules.evaluate(values, breakdown);
+    }
+
+    StatisticRules getRules() {
+        return rules;
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} the statistics were read at.
+     */
+    long getTakenAt() {
+        return takenAt;
+    }
+
+    /**
+     * Returns the event XP the cached data had received when the statistics were read.
+     */
+    long getEventXp() {
+        return eventXp;
+    }
+
+    /**
+     * Returns the cached XP when the statistics were read, or -1 if the player was not cached.
+     */
+    long getPreviousXp() {
+        return previousXp;
+    }
+
+    UUID getUuid() {
+        return uuid;
+    }
+
+    String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,481 @@
+package com.flow258.playerLevels;
+
+import com.google.gson.stream.JsonReader;
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.Statistic;
+import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Recomputes XP for every player from the vanilla {@code world/stats/<uuid>.json} files.
+ * <p>
+ * The folder is listed lazily and each file is read with a streaming JSON reader,
+ * looking only at the statistics that have a rule. Files are evaluated on a
+ * fork-join pool, and a semaphore caps how many are in flight. Results are written
+ * in large batches, so memory use does not depend on the number of files.
+ * Players the plugin has never seen only have their UUID and XP kept until the
+ * end, when their names are looked up on the main thread a batch per tick.
+ * Online players are skipped; at the end the recompute scheduler reads their live
+ * statistics on the main thread. Cached players take the rebuilt XP on the main thread too.
+ * Like a recompute, each player's stored XP offset is subtracted from their statistics XP.
+ */
+class StatsRebuildTask implements Runnable {
+
+    private static final AtomicBoolean RUNNING = new AtomicBoolean();
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final int NAME_LOOKUPS_PER_TICK = 500;
+
+    /**
+     * Vanilla stats file categories of the typed statistics.
+     */
+    private static final Map<Statistic, String> TYPED_CATEGORIES = new EnumMap<>(Statistic.class);
+
+    /**
+     * Custom statistics whose vanilla key is not simply the lowercase Bukkit name.
+     */
+    private static final Map<String, String> CUSTOM_KEYS = new HashMap<>();
+
+    static {
+        TYPED_CATEGORIES.put(Statistic.MINE_BLOCK, "minecraft:mined");
+        TYPED_CATEGORIES.put(Statistic.CRAFT_ITEM, "minecraft:crafted");
+        TYPED_CATEGORIES.put(Statistic.USE_ITEM, "minecraft:used");
+        TYPED_CATEGORIES.put(Statistic.BREAK_ITEM, "minecraft:broken");
+        TYPED_CATEGORIES.put(Statistic.PICKUP, "minecraft:picked_up");
+        TYPED_CATEGORIES.put(Statistic.DROP, "minecraft:dropped");
+        TYPED_CATEGORIES.put(Statistic.KILL_ENTITY, "minecraft:killed");
+        TYPED_CATEGORIES.put(Statistic.ENTITY_KILLED_BY, "minecraft:killed_by");
+
+        CUSTOM_KEYS.put("DROP_COUNT", "drop");
+        CUSTOM_KEYS.put("PLAY_ONE_MINUTE", "play_time");
+        CUSTOM_KEYS.put("CAKE_SLICES_EATEN", "eat_cake_slice");
+        CUSTOM_KEYS.put("CAULDRON_FILLED", "fill_cauldron");
+        CUSTOM_KEYS.put("CAULDRON_USED", "use_cauldron");
+        CUSTOM_KEYS.put("ARMOR_CLEANED", "clean_armor");
+        CUSTOM_KEYS.put("BANNER_CLEANED", "clean_banner");
+        CUSTOM_KEYS.put("BREWINGSTAND_INTERACTION", "interact_with_brewingstand");
+        CUSTOM_KEYS.put("BEACON_INTERACTION", "interact_with_beacon");
+        CUSTOM_KEYS.put("DROPPER_INSPECTED", "inspect_dropper");
+        CUSTOM_KEYS.put("HOPPER_INSPECTED", "inspect_hopper");
+        CUSTOM_KEYS.put("DISPENSER_INSPECTED", "inspect_dispenser");
+        CUSTOM_KEYS.put("NOTEBLOCK_PLAYED", "play_noteblock");
+        CUSTOM_KEYS.put("NOTEBLOCK_TUNED", "tune_noteblock");
+        CUSTOM_KEYS.put("FLOWER_POTTED", "pot_flower");
+        CUSTOM_KEYS.put("TRAPPED_CHEST_TRIGGERED", "trigger_trapped_chest");
+        CUSTOM_KEYS.put("ENDERCHEST_OPENED", "open_enderchest");
+        CUSTOM_KEYS.put("ITEM_ENCHANTED", "enchant_item");
+        CUSTOM_KEYS.put("RECORD_PLAYED", "play_record");
+        CUSTOM_KEYS.put("FURNACE_INTERACTION", "interact_with_furnace");
+        CUSTOM_KEYS.put("CRAFTING_TABLE_INTERACTION", "interact_with_crafting_table");
+        CUSTOM_KEYS.put("CHEST_OPENED", "open_chest");
+        CUSTOM_KEYS.put("SHULKER_BOX_OPENED", "open_shulker_box");
+    }
+
+    private record Result(UUID uuid, String name, long xp) {
+    }
+
+    private record Unnamed(UUID uuid, long xp) {
+    }
+
+    private final PlayerLevels plugin;
+    private final CommandSender sender;
+    private final Path statsFolder;
+    private final Set<UUID> onlinePlayers;
+    private final Map<String, Map<String, Long>> weights;
+    private final int parallelism;
+    private final int batchSize;
+
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final Queue<Unnamed> unnamed = new ConcurrentLinkedQueue<>();
+    private final Object batchLock = new Object();
+    private List<Result> batch;
+    private long startNanos;
+    private long lastProgressNanos;
+    private long total;
+
+    private StatsRebuildTask(PlayerLevels plugin, CommandSender sender, Path statsFolder, Set<UUID> onlinePlayers,
+                             StatisticRules rules, ConfigurationSection config) {
+        this.plugin = plugin;
+        this.sender = sender;
+        this.statsFolder = statsFolder;
+        this.onlinePlayers = onlinePlayers;
+        this.weights = buildWeights(rules);
+        this.parallelism = config != null
+                ? Math.max(1, config.getInt("parallelism", Runtime.getRuntime().availableProcessors()))
+                : Runtime.getRuntime().availableProcessors();
+        this.batchSize = config != null ? Math.max(100, config.getInt("batch-size", 5000)) : 5000;
+        this.batch = new ArrayList<>(batchSize);
+    }
+
+    /**
+     * Starts a rebuild of the main world's statistics in the background. Must be
+     * called on the main thread. Returns false if one is already running.
+     */
+    static boolean start(PlayerLevels plugin, CommandSender sender) {
+        if (!RUNNING.compareAndSet(false, true)) {
+            return false;
+        }
+
+        Path statsFolder = Bukkit.getWorlds().get(0).getWorldFolder().toPath().resolve("stats");
+        Set<UUID> online = new HashSet<>();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            online.add(player.getUniqueId());
+        }
+
+        StatsRebuildTask task = new StatsRebuildTask(plugin, sender, statsFolder, online, plugin.getStatisticRules(),
+                plugin.getConfig().getConfigurationSection("settings.rebuild"));
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, task);
+        return true;
+    }
+
+    @Override
+    public void run() {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            rebuild(pool);
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.SEVERE, "Error rebuilding levels from " + statsFolder, e);
+            sender.sendMessage(ChatColor.RED + "Rebuild failed: " + e.getMessage());
+        } finally {
+            pool.shutdownNow();
+            RUNNING.set(false);
+        }
+    }
+
+    private void rebuild(ForkJoinPool pool) throws IOException, InterruptedException, ExecutionException {
+        if (!Files.isDirectory(statsFolder)) {
+            sender.sendMessage(ChatColor.RED + "Statistics folder not found: " + statsFolder);
+            return;
+        }
+
+        // Counting first only keeps a number, not the file list
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(statsFolder, "*.json")) {
+            for (Path ignored : files) {
+                total++;
+            }
+        }
+
+        sender.sendMessage(ChatColor.YELLOW + "Rebuilding levels from " + total + " statistics files...");
+        startNanos = System.nanoTime();
+        lastProgressNanos = startNanos;
+
+        Semaphore inFlight = new Semaphore(parallelism * 4);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(statsFolder, "*.json")) {
+            for (Path file : files) {
+                inFlight.acquire();
+                pool.execute(() -> {
+                    try {
+                        process(file);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+                reportProgress();
+            }
+        }
+
+        // Wait for the last files, then write the final partial batch
+        inFlight.acquire(parallelism * 4);
+        resolveNames();
+        flushBatch(takeBatch());
+
+        double seconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+        sender.sendMessage(ChatColor.GREEN + "Rebuild finished: " + written.get() + " players updated, "
+                + skipped.get() + " skipped, " + failed.get() + " failed in " + String.format("%.1f", seconds) + "s ("
+                + String.format("%.0f", processed.get() / Math.max(seconds, 0.001)) + " files/sec)");
+
+        // Online players have newer statistics in memory than on disk; they are read on the main thread, a slice per tick
+        if (!onlinePlayers.isEmpty()) {
+            Bukkit.getScheduler().runTask(plugin, () -> plugin.getRecomputeScheduler().requestCycle());
+        }
+    }
+
+    private void process(Path file) {
+        try {
+            String fileName = file.getFileName().toString();
+            UUID uuid;
+            try {
+                uuid = UUID.fromString(fileName.substring(0, fileName.length() - ".json".length()));
+            } catch (IllegalArgumentException e) {
+                skipped.incrementAndGet();
+                return;
+            }
+
+            if (onlinePlayers.contains(uuid)) {
+                skipped.incrementAndGet();
+                return;
+            }
+
+            // Offline player lookups are main thread only, so unknown names are resolved at the end
+            String name = plugin.getLeaderboard().getName(uuid);
+            if (name == null) {
+                unnamed.add(new Unnamed(uuid, evaluate(file)));
+            } else {
+                addResult(new Result(uuid, name, evaluate(file)));
+            }
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            plugin.getLogger().warning("Could not read statistics file " + file.getFileName() + ": " + e.getMessage());
+        } finally {
+            processed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Looks up the names of the players the plugin has never seen on the main
+     * thread and queues their results. Players unknown to the server are skipped,
+     * since the name column is required.
+     */
+    private void resolveNames() throws InterruptedException, ExecutionException {
+        while (!unnamed.isEmpty()) {
+            List<Unnamed> chunk = new ArrayList<>(NAME_LOOKUPS_PER_TICK);
+            Unnamed next;
+            while (chunk.size() < NAME_LOOKUPS_PER_TICK && (next = unnamed.poll()) != null) {
+                chunk.add(next);
+            }
+
+            List<String> names = Bukkit.getScheduler().callSyncMethod(plugin, () -> {
+                List<String> resolved = new ArrayList<>(chunk.size());
+                for (Unnamed player : chunk) {
+                    resolved.add(Bukkit.getOfflinePlayer(player.uuid()).getName());
+                }
+                return resolved;
+            }).get();
+
+            for (int i = 0; i < chunk.size(); i++) {
+                if (names.get(i) == null) {
+                    skipped.incrementAndGet();
+                } else {
+                    addResult(new Result(chunk.get(i).uuid(), names.get(i), chunk.get(i).xp()));
+                }
+            }
+        }
+    }
+
+    private long evaluate(Path file) throws IOException {
+        long xp = 0;
+
+        try (JsonReader reader = new JsonReader(Files.newBufferedReader(file))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!reader.nextName().equals("stats")) {
+                    reader.skipValue();
+                    continue;
+                }
+
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    Map<String, Long> category = weights.get(reader.nextName());
+                    if (category == null) {
+                        reader.skipValue();
+                        continue;
+                    }
+
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        Long weight = category.get(reader.nextName());
+                        if (weight == null) {
+                            reader.skipValue();
+                        } else {
+                            xp = Xp.add(xp, Xp.times(weight, reader.nextLong()));
+                        }
+                    }
+                    reader.endObject();
+                }
+                reader.endObject();
+            }
+            reader.endObject();
+        }
+
+        return xp;
+    }
+
+    private void addResult(Result result) {
+        List<Result> full = null;
+        synchronized (batchLock) {
+            batch.add(result);
+            if (batch.size() >= batchSize) {
+                full = batch;
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+
+        // The worker that fills a batch writes it, which holds back the pool while the database catches up
+        if (full != null) {
+            flushBatch(full);
+        }
+    }
+
+    private List<Result> takeBatch() {
+        synchronized (batchLock) {
+            List<Result> rest = batch;
+            batch = new ArrayList<>(0);
+            return rest;
+        }
+    }
+
+    private void flushBatch(List<Result> results) {
+        if (results.isEmpty()) return;
+
+        StorageExecutor storage = plugin.getStorage();
+        String sql = storage.isSqlite()
+                ? "INSERT INTO player_levels (uuid, name, xp, level) VALUES (?, ?, ?, ?) " +
+                "ON CONFLICT(uuid) DO UPDATE SET xp = excluded.xp, level = excluded.level, version = version + 1"
+                : "INSERT INTO player_levels (uuid, name, xp, level) VALUES (?, ?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE xp = VALUES(xp), level = VALUES(level), version = version + 1";
+        NetworkSync network = plugin.getNetworkSync();
+        PlayerJournal journal = plugin.getJournal();
+
+        long[] xps = new long[results.size()];
+        long[] offsets = new long[results.size()];
+        long[] versions;
+        try {
+            versions = storage.write("rebuild_batch", pooled -> {
+                long[] storedOffsets = plugin.readXpOffsets(pooled, results.stream().map(Result::uuid).toList());
+                System.arraycopy(storedOffsets, 0, offsets, 0, offsets.length);
+                for (int i = 0; i < xps.length; i++) {
+                    xps[i] = Math.max(0, Xp.add(results.get(i).xp(), -offsets[i]));
+                }
+
+                if (journal != null) {
+                    appendToJournal(journal, results, xps, offsets);
+                    return null;
+                }
+
+                Connection connection = pooled.getConnection();
+                PreparedStatement statement = pooled.prepare(sql);
+                connection.setAutoCommit(false);
+                try {
+                    for (int i = 0; i < results.size(); i++) {
+                        Result result = results.get(i);
+                        statement.setBytes(1, StorageExecutor.toBytes(result.uuid()));
+                        statement.setString(2, result.name());
+                        statement.setLong(3, xps[i]);
+                        statement.setInt(4, plugin.calculateLevelMillis(xps[i]));
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+
+                    List<UUID> uuids = results.stream().map(Result::uuid).toList();
+                    if (network != null) {
+                        network.recordChanges(pooled, uuids);
+                    }
+                    long[] cachedVersions = plugin.readCachedVersions(pooled, uuids);
+                    connection.commit();
+                    return cachedVersions;
+                } catch (Exception e) {
+                    statement.clearBatch();
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+            }).join();
+        } catch (CompletionException e) {
+            plugin.getLogger().log(Level.SEVERE, "Error writing " + results.size() + " rebuilt players", e.getCause());
+            failed.addAndGet(results.size());
+            return;
+        }
+
+        List<PlayerLevels.StoredXp> stored = new ArrayList<>(results.size());
+        for (int i = 0; i < results.size(); i++) {
+            Result result = results.get(i);
+            stored.add(new PlayerLevels.StoredXp(result.uuid(), result.name(), xps[i], offsets[i],
+                    versions != null ? versions[i] : -1));
+        }
+        plugin.applyStoredXp(stored);
+        written.addAndGet(results.size());
+    }
+
+    // Like the SQL upsert, a stored name is kept
+    private void appendToJournal(PlayerJournal journal, List<Result> results, long[] xps, long[] offsets) {
+        List<PlayerJournal.Record> records = new ArrayList<>(results.size());
+        for (int i = 0; i < results.size(); i++) {
+            Result result = results.get(i);
+            PlayerJournal.Record stored = journal.get(result.uuid());
+            records.add(new PlayerJournal.Record(result.uuid(), stored != null ? stored.name() : result.name(),
+                    xps[i], plugin.calculateLevelMillis(xps[i]), offsets[i]));
+        }
+
+        try {
+            journal.appendRecords(records);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void reportProgress() {
+        long now = System.nanoTime();
+        if (now - lastProgressNanos < PROGRESS_INTERVAL_NANOS) return;
+        lastProgressNanos = now;
+
+        long done = processed.get();
+        double seconds = (now - startNanos) / 1_000_000_000.0;
+        sender.sendMessage(ChatColor.YELLOW + "Rebuild: " + done + "/" + total + " files ("
+                + String.format("%.0f", done / Math.max(seconds, 0.001)) + " files/sec)");
+    }
+
+    /**
+     * Maps each read of the compiled rules to its category and key in the vanilla stats file.
+     */
+    private static Map<String, Map<String, Long>> buildWeights(StatisticRules rules) {
+        Map<String, Map<String, Long>> weights = new HashMap<>();
+
+        for (int read = 0; read < rules.getReadCount(); read++) {
+            Statistic statistic = rules.getStatistic(read);
+            String category;
+            String key;
+
+            String typedCategory = TYPED_CATEGORIES.get(statistic);
+            if (typedCategory != null) {
+                category = typedCategory;
+                if (rules.getMaterial(read) != null) {
+                    key = rules.getMaterial(read).getKey().toString();
+                } else if (rules.getEntityType(read) != null) {
+                    key = rules.getEntityType(read).getKey().toString();
+                } else {
+                    continue;
+                }
+            } else {
+                category = "minecraft:custom";
+                String name = statistic.name();
+                key = "minecraft:" + CUSTOM_KEYS.getOrDefault(name, name.toLowerCase(Locale.ROOT));
+            }
+
+            weights.computeIfAbsent(category, ignored -> new HashMap<>()).merge(key, rules.getWeight(read), Xp::add);
+        }
+
+        return weights;
+    }
+}
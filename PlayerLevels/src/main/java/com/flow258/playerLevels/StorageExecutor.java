@@ -0,0 +1,383 @@
+package com.flow258.playerLevels;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs all JDBC work for the plugin off the server threads.
+ * <p>
+ * Writes go through a single writer thread with its own connection, which keeps
+ * them ordered and matches SQLite's single-writer model. Reads borrow one of a
+ * small, fixed set of reader connections; on SQLite the database is switched to
+ * WAL mode so those readers do not block the writer. Every connection caches
+ * its prepared statements, so each SQL string is only prepared once. Every unit
+ * of work is named, and its run time is recorded per name for {@link Metrics}.
+ * <p>
+ * A connection that sat idle is checked before it is used, and one that failed
+ * with a lost connection is checked before its next use. A dead connection, e.g.
+ * one MySQL closed after {@code wait_timeout}, is reopened in place with an
+ * empty statement cache.
+ */
+class StorageExecutor {
+
+    /**
+     * A unit of JDBC work that runs with exclusive use of a connection.
+     */
+    @FunctionalInterface
+    interface SqlFunction<T> {
+        T apply(PooledConnection connection) throws SQLException;
+    }
+
+    // A connection used within this window is not checked again before the next unit of work
+    private static final long VALIDATION_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+    /**
+     * A connection together with its prepared statement cache.
+     */
+    static final class PooledConnection {
+        private Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+        // Until then the connection is trusted without a round trip, see validate
+        private long validUntilNanos;
+
+        private PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Returns a cached statement for the SQL, preparing it on first use.
+         * Callers must not close it.
+         */
+        PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null || statement.isClosed()) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
+
+        Connection getConnection() {
+            return connection;
+        }
+
+        // Swaps in a new connection; the old statements belong to the old one
+        private void replace(Connection replacement) {
+            close();
+            connection = replacement;
+        }
+
+        private void close() {
+            for (PreparedStatement statement : statements.values()) {
+                try {
+                    statement.close();
+                } catch (SQLException ignored) {
+                    // Closing the connection releases it anyway
+                }
+            }
+            statements.clear();
+
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+                // Nothing left to do with a broken connection
+            }
+        }
+    }
+
+    private final Logger logger;
+    private final String storageType;
+    private final String url;
+    private final String username;
+    private final String password;
+    private final PooledConnection writerConnection;
+    private final BlockingQueue<PooledConnection> readerConnections;
+    private final List<PooledConnection> allConnections = new ArrayList<>();
+    private final ExecutorService writer;
+    private final ExecutorService readers;
+    private final Map<String, LatencyHistogram> queryLatencies = new ConcurrentHashMap<>();
+
+    private StorageExecutor(Logger logger, String storageType, String url, String username, String password,
+                            int readerCount, boolean virtualThreads) throws SQLException {
+        this.logger = logger;
+        this.storageType = storageType;
+        this.url = url;
+        this.username = username;
+        this.password = password;
+
+        try {
+            this.writerConnection = open();
+            if (isSqlite()) {
+                try (Statement statement = writerConnection.getConnection().createStatement()) {
+                    statement.execute("PRAGMA journal_mode=WAL");
+                }
+            }
+
+            this.readerConnections = new ArrayBlockingQueue<>(readerCount);
+            for (int i = 0; i < readerCount; i++) {
+                readerConnections.add(open());
+            }
+        } catch (SQLException e) {
+            closeConnections();
+            throw e;
+        }
+
+        this.writer = Executors.newSingleThreadExecutor(namedThreads("PlayerLevels-DB-writer"));
+        ExecutorService virtual = virtualThreads ? newVirtualThreadExecutor(logger, readerCount) : null;
+        this.readers = virtual != null
+                ? virtual
+                : Executors.newFixedThreadPool(readerCount, namedThreads("PlayerLevels-DB-reader"));
+    }
+
+    /**
+     * Opens the configured database. {@code storageType} "mysql" connects to MySQL,
+     * anything else opens {@code sqliteFile}; the {@code storage} section supplies
+     * connection and pool settings.
+     */
+    static StorageExecutor open(Logger logger, String storageType, String sqliteFile,
+                                ConfigurationSection storage) throws SQLException {
+        boolean virtualThreads = storage != null && storage.getBoolean("pool.virtual-threads", false);
+
+        if ("mysql".equals(storageType)) {
+            String host = storage.getString("mysql.host", "localhost");
+            int port = storage.getInt("mysql.port", 3306);
+            String database = storage.getString("mysql.database", "minecraft");
+            String username = storage.getString("mysql.username", "root");
+            String password = storage.getString("mysql.password", "");
+            int readers = Math.max(1, storage.getInt("pool.readers", 4));
+
+            return new StorageExecutor(logger, storageType,
+                    "jdbc:mysql://" + host + ":" + port + "/" + database, username, password, readers, virtualThreads);
+        }
+
+        int readers = storage != null ? Math.max(1, storage.getInt("pool.readers", 2)) : 2;
+        return new StorageExecutor(logger, "sqlite", "jdbc:sqlite:" + sqliteFile, null, null, readers, virtualThreads);
+    }
+
+    private PooledConnection open() throws SQLException {
+        PooledConnection pooled = new PooledConnection(connect());
+        allConnections.add(pooled);
+        return pooled;
+    }
+
+    private Connection connect() throws SQLException {
+        Connection connection = username != null
+                ? DriverManager.getConnection(url, username, password)
+                : DriverManager.getConnection(url);
+
+        if (isSqlite()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("PRAGMA busy_timeout=5000");
+                // Safe with WAL: a power loss can only roll back the last commits, never corrupt
+                statement.execute("PRAGMA synchronous=NORMAL");
+            } catch (SQLException e) {
+                connection.close();
+                throw e;
+            }
+        }
+        return connection;
+    }
+
+    // Reopens the connection if it is no longer usable; runs on the thread that holds it
+    private void validate(PooledConnection pooled) throws SQLException {
+        if (System.nanoTime() - pooled.validUntilNanos < 0 && !pooled.connection.isClosed()) {
+            return;
+        }
+        if (!pooled.connection.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+            logger.warning("Lost a database connection, reconnecting");
+            pooled.replace(connect());
+        }
+    }
+
+    // SQLState class 08 is a connection exception
+    private static boolean isConnectionLost(SQLException e) {
+        String state = e.getSQLState();
+        return e instanceof SQLRecoverableException || state != null && state.startsWith("08");
+    }
+
+    /**
+     * Encodes a UUID as the 16 bytes stored in {@code uuid} columns.
+     */
+    static byte[] toBytes(UUID uuid) {
+        return ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array();
+    }
+
+    static UUID toUuid(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    boolean isSqlite() {
+        return "sqlite".equals(storageType);
+    }
+
+    String getStorageType() {
+        return storageType;
+    }
+
+    /**
+     * Runs the work on the writer connection. Writes run one at a time in submission order.
+     * {@code query} names the work in the latency metrics.
+     */
+    <T> CompletableFuture<T> write(String query, SqlFunction<T> work) {
+        LatencyHistogram latency = getLatency(query);
+        return submit(() -> run(writerConnection, work, latency), writer);
+    }
+
+    /**
+     * Runs the work on one of the reader connections. The number of reads in
+     * flight is bounded by the number of reader connections.
+     * {@code query} names the work in the latency metrics.
+     */
+    <T> CompletableFuture<T> read(String query, SqlFunction<T> work) {
+        LatencyHistogram latency = getLatency(query);
+        return submit(() -> borrowAndRun(work, latency), readers);
+    }
+
+    // After shutdown the work fails like any other, instead of throwing on the caller's thread
+    private static <T> CompletableFuture<T> submit(Supplier<T> task, ExecutorService executor) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(new CompletionException(new SQLException("The database is closed", e)));
+        }
+    }
+
+    /**
+     * Returns the run time of each named unit of work so far.
+     */
+    Map<String, LatencyHistogram> getQueryLatencies() {
+        return queryLatencies;
+    }
+
+    private LatencyHistogram getLatency(String query) {
+        LatencyHistogram latency = queryLatencies.get(query);
+        return latency != null ? latency : queryLatencies.computeIfAbsent(query, ignored -> new LatencyHistogram());
+    }
+
+    private <T> T borrowAndRun(SqlFunction<T> work, LatencyHistogram latency) {
+        PooledConnection connection;
+        try {
+            connection = readerConnections.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+
+        try {
+            return run(connection, work, latency);
+        } finally {
+            readerConnections.add(connection);
+        }
+    }
+
+    private <T> T run(PooledConnection connection, SqlFunction<T> work, LatencyHistogram latency) {
+        long start = System.nanoTime();
+        try {
+            validate(connection);
+            T result = work.apply(connection);
+            connection.validUntilNanos = System.nanoTime() + VALIDATION_WINDOW_NANOS;
+            return result;
+        } catch (SQLException e) {
+            if (isConnectionLost(e)) {
+                // Checked, and reopened if dead, before the next unit of work
+                connection.validUntilNanos = System.nanoTime();
+            }
+            throw new CompletionException(e);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Stops accepting work, waits for queued writes and in-flight reads, and
+     * closes all connections. Both wait within the same timeout.
+     */
+    void shutdown(long timeout, TimeUnit unit) {
+        writer.shutdown();
+        readers.shutdown();
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        String limit = timeout + " " + unit.toString().toLowerCase();
+        try {
+            if (!writer.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                logger.warning("Database writer did not finish within " + limit);
+                writer.shutdownNow();
+            }
+            if (!readers.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                logger.warning("Database readers did not finish within " + limit);
+                readers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        closeConnections();
+    }
+
+    private void closeConnections() {
+        for (PooledConnection connection : allConnections) {
+            connection.close();
+        }
+        allConnections.clear();
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Creates a virtual-thread-per-task executor on Java 21+, or returns null so the
+     * platform reader pool is used instead. Looked up reflectively since the plugin targets Java 17.
+     */
+    private static ExecutorService newVirtualThreadExecutor(Logger logger, int readerCount) {
+        if (Runtime.version().feature() < 21) {
+            logger.warning("storage.pool.virtual-threads needs Java 21 or newer, using " + readerCount + " reader threads");
+            return null;
+        }
+
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            logger.log(Level.WARNING, "Could not create virtual thread executor", e);
+            return null;
+        }
+    }
+}
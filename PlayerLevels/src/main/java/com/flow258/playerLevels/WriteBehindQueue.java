@@ -0,0 +1,285 @@
+package com.flow258.playerLevels;
+
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+
+/**
+ * Write-behind buffer for {@code player_levels}.
+ * <p>
+ * Updates only mark the player's {@link PlayerLevels.PlayerData} dirty. Repeated
+ * updates to the same player are coalesced, and the latest values are written
+ * in one JDBC batch inside a single transaction on the database writer, either every
+ * {@code flush-interval} seconds or as soon as {@code max-dirty} players are waiting.
+ * With the journal storage type the batch is appended to the journal instead.
+ */
+class WriteBehindQueue {
+
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    private final PlayerLevels plugin;
+    private final Map<UUID, PlayerLevels.PlayerData> pending = new ConcurrentHashMap<>();
+    private final long flushIntervalTicks;
+    private final int maxDirty;
+    private final long shutdownTimeoutMillis;
+    private final boolean logFlushes;
+
+    private BukkitTask flushTask;
+    private volatile boolean flushScheduled;
+
+    private volatile long lastFlushMillis;
+    private volatile int lastBatchSize;
+    private volatile long totalFlushed;
+    private volatile long totalFlushes;
+
+    WriteBehindQueue(PlayerLevels plugin, ConfigurationSection config) {
+        this.plugin = plugin;
+
+        if (config != null) {
+            this.flushIntervalTicks = 20L * Math.max(1, config.getLong("flush-interval", 10));
+            this.maxDirty = Math.max(1, config.getInt("max-dirty", 500));
+            this.shutdownTimeoutMillis = 1000L * Math.max(1, config.getLong("shutdown-timeout", 10));
+            this.logFlushes = config.getBoolean("log-flushes", false);
+        } else {
+            this.flushIntervalTicks = 20L * 10;
+            this.maxDirty = 500;
+            this.shutdownTimeoutMillis = 10000;
+            this.logFlushes = false;
+        }
+    }
+
+    void start() {
+        flushTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::flush, flushIntervalTicks, flushIntervalTicks);
+    }
+
+    /**
+     * Queues the player's current values for the next flush.
+     */
+    void markDirty(PlayerLevels.PlayerData data) {
+        if (data.isDirty()) return;
+
+        data.setDirty(true);
+        pending.put(data.getUuid(), data);
+
+        if (pending.size() >= maxDirty && !flushScheduled) {
+            flushScheduled = true;
+            flush();
+        }
+    }
+
+    /**
+     * Hands every pending player to the database writer, to be saved in one transaction.
+     */
+    CompletableFuture<Void> flush() {
+        StorageExecutor storage = plugin.getStorage();
+        if (pending.isEmpty() || storage == null) {
+            flushScheduled = false;
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return storage.write("flush", this::writePending);
+    }
+
+    /**
+     * Saves one player's pending values right away, e.g. when they leave the server,
+     * without waiting for or triggering a flush of everyone else.
+     */
+    CompletableFuture<Void> flush(UUID uuid) {
+        StorageExecutor storage = plugin.getStorage();
+        if (storage == null || !pending.containsKey(uuid)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return storage.write("flush_player", pooled -> {
+            // Null if a batch flush already wrote the player; both run on the writer
+            PlayerLevels.PlayerData data = pending.remove(uuid);
+            if (data != null) {
+                data.setDirty(false);
+                write(pooled, List.of(data));
+            }
+            return null;
+        });
+    }
+
+    private Void writePending(StorageExecutor.PooledConnection pooled) {
+        flushScheduled = false;
+        if (pending.isEmpty()) return null;
+
+        long start = System.nanoTime();
+        List<PlayerLevels.PlayerData> batch = drain();
+        if (!write(pooled, batch)) return null;
+
+        lastFlushMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        lastBatchSize = batch.size();
+        totalFlushed += batch.size();
+        totalFlushes++;
+
+        if (logFlushes) {
+            plugin.getLogger().info("Flushed " + batch.size() + " player records in " + lastFlushMillis + "ms");
+        }
+        return null;
+    }
+
+    /**
+     * Upserts the batch in one transaction. On failure the players are queued again.
+     */
+    private boolean write(StorageExecutor.PooledConnection pooled, List<PlayerLevels.PlayerData> batch) {
+        PlayerJournal journal = plugin.getJournal();
+        if (journal != null) {
+            try {
+                journal.append(batch);
+                return true;
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Error appending " + batch.size() + " player records to the journal", e);
+                requeue(batch);
+                return false;
+            }
+        }
+
+        Connection connection = pooled.getConnection();
+        NetworkSync network = plugin.getNetworkSync();
+        long[] versions = null;
+
+        try {
+            connection.setAutoCommit(false);
+            try {
+                if (network != null) {
+                    versions = network.write(pooled, plugin.getStorage().isSqlite(), batch);
+                } else {
+                    upsert(pooled, batch);
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.SEVERE, "Error flushing " + batch.size() + " player records", e);
+            requeue(batch);
+            return false;
+        }
+
+        if (network != null) {
+            try {
+                network.committed(pooled, batch, versions);
+            } catch (SQLException e) {
+                // The skipped saves conflict again on the next flush and are resolved then
+                plugin.getLogger().log(Level.WARNING, "Error resolving write conflicts", e);
+                for (int i = 0; i < batch.size(); i++) {
+                    if (versions[i] < 0) {
+                        markDirty(batch.get(i));
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private void upsert(StorageExecutor.PooledConnection pooled, List<PlayerLevels.PlayerData> batch) throws SQLException {
+        PreparedStatement statement = pooled.prepare(plugin.getUpsertSql());
+        try {
+            int queued = 0;
+            for (PlayerLevels.PlayerData data : batch) {
+                statement.setBytes(1, StorageExecutor.toBytes(data.getUuid()));
+                statement.setString(2, data.getName());
+                statement.setLong(3, data.getXpMillis());
+                statement.setInt(4, data.getLevel());
+                statement.addBatch();
+
+                if (++queued % MAX_BATCH_SIZE == 0) {
+                    statement.executeBatch();
+                }
+            }
+            statement.executeBatch();
+        } catch (SQLException e) {
+            statement.clearBatch();
+            throw e;
+        }
+    }
+
+    /**
+     * Stops the periodic flush and writes whatever is still pending, giving up
+     * after {@code shutdown-timeout} seconds so a dead database cannot hang shutdown.
+     */
+    void shutdown() {
+        if (flushTask != null) {
+            flushTask.cancel();
+        }
+
+        int remaining = pending.size();
+        if (remaining == 0) return;
+
+        try {
+            flush().get(shutdownTimeoutMillis, TimeUnit.MILLISECONDS);
+            plugin.getLogger().info("Saved " + lastBatchSize + " player records in " + lastFlushMillis + "ms");
+        } catch (TimeoutException e) {
+            plugin.getLogger().warning("Timed out saving " + remaining + " player records on shutdown");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            plugin.getLogger().log(Level.SEVERE, "Error saving player data on shutdown", e.getCause());
+        }
+    }
+
+    private List<PlayerLevels.PlayerData> drain() {
+        List<PlayerLevels.PlayerData> batch = new ArrayList<>(pending.size());
+        Iterator<PlayerLevels.PlayerData> iterator = pending.values().iterator();
+
+        while (iterator.hasNext()) {
+            PlayerLevels.PlayerData data = iterator.next();
+            iterator.remove();
+            // Clear before the values are read so a concurrent update re-queues the player
+            data.setDirty(false);
+            batch.add(data);
+        }
+
+        return batch;
+    }
+
+    private void requeue(List<PlayerLevels.PlayerData> batch) {
+        for (PlayerLevels.PlayerData data : batch) {
+            // A newer object for the same player may already be waiting
+            if (pending.putIfAbsent(data.getUuid(), data) == null) {
+                data.setDirty(true);
+            }
+        }
+    }
+
+    int getPendingCount() {
+        return pending.size();
+    }
+
+    long getLastFlushMillis() {
+        return lastFlushMillis;
+    }
+
+    int getLastBatchSize() {
+        return lastBatchSize;
+    }
+
+    long getTotalFlushed() {
+        return totalFlushed;
+    }
+
+    long getTotalFlushes() {
+        return totalFlushes;
+    }
+}
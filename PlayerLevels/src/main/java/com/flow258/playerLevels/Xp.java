@@ -0,0 +1,104 @@
+package com.flow258.playerLevels;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * XP amounts are fixed-point {@code long}s counting thousandths of an XP point.
+ * <p>
+ * Statistic weights, totals, level thresholds and the stored columns all use
+ * this unit, so sums of fractional weights such as {@code 0.001} per centimetre
+ * are exact, and comparing or ranking XP is a primitive comparison. Whole XP is
+ * only produced for display, through an integer path.
+ */
+final class Xp {
+
+    /**
+     * Milli-XP per XP point. Weights finer than {@code 1 / SCALE} are rounded.
+     */
+    static final long SCALE = 1000;
+
+    /**
+     * The most XP any total may reach, so that sums of a few totals cannot overflow.
+     */
+    static final long MAX = Long.MAX_VALUE / 4;
+
+    private Xp() {
+    }
+
+    /**
+     * Converts XP points, e.g. from the config, to milli-XP, rounding to the nearest unit.
+     */
+    static long of(double xp) {
+        double scaled = xp * SCALE;
+        if (!(scaled > -MAX)) return Double.isNaN(scaled) ? 0 : -MAX;
+        if (scaled >= MAX) return MAX;
+        return Math.round(scaled);
+    }
+
+    // Limits a sum of two values within [-MAX, MAX] to that range
+    private static long clamp(long xp) {
+        return Math.max(-MAX, Math.min(MAX, xp));
+    }
+
+    /**
+     * Adds two amounts within {@code [-MAX, MAX]}, saturating instead of overflowing.
+     */
+    static long add(long a, long b) {
+        return clamp(a + b);
+    }
+
+    /**
+     * Returns {@code count} increments of {@code weight}, saturating at {@code MAX}.
+     */
+    static long times(long weight, long count) {
+        long product = weight * count;
+        long high = Math.multiplyHigh(weight, count);
+        if (high != product >> 63) return high < 0 ? -MAX : MAX;
+        return clamp(product);
+    }
+
+    /**
+     * Converts milli-XP to XP points, for APIs and files that use decimal XP.
+     */
+    static double toPoints(long xp) {
+        return (double) xp / SCALE;
+    }
+
+    /**
+     * Exact XP points as plain decimal text, for files that are read back with {@link #parse}.
+     */
+    static String toDecimal(long xp) {
+        return BigDecimal.valueOf(xp, 3).stripTrailingZeros().toPlainString();
+    }
+
+    /**
+     * Parses decimal XP points, as written by {@link #toDecimal} or an older
+     * version's {@code double}, rounding to the nearest milli-XP.
+     *
+     * @throws NumberFormatException if the text is not a number or is out of range
+     */
+    static long parse(String text) {
+        BigDecimal points = new BigDecimal(text).movePointRight(3);
+        if (points.abs().compareTo(BigDecimal.valueOf(MAX)) > 0) {
+            throw new NumberFormatException("XP out of range: " + text);
+        }
+        return points.setScale(0, RoundingMode.HALF_UP).longValue();
+    }
+
+    /**
+     * Whole XP points, rounded half up, as text for display.
+     */
+    static String format(long xp) {
+        return Long.toString(Math.floorDiv(xp + SCALE / 2, SCALE));
+    }
+
+    /**
+     * XP points with one decimal, rounded half up.
+     */
+    static String formatTenths(long xp) {
+        long tenths = Math.floorDiv(xp + SCALE / 20, SCALE / 10);
+        long abs = Math.abs(tenths);
+        return (tenths < 0 ? "-" : "") + abs / 10 + "." + abs % 10;
+    }
+}
@@ -0,0 +1,328 @@
+package com.flow258.playerLevels;
+
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.DateTimeException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.TemporalAdjusters;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * XP gained per calendar day, week and month, ranked like the lifetime leaderboard.
+ * <p>
+ * Each gain is added to the player's bucket for the current day, which is saved
+ * to {@code xp_buckets} in the background, and to a running total with its own
+ * {@link LeaderboardIndex} for every window, so a windowed rank costs the same as
+ * a lifetime one. When a day, week or month ends, that window starts over empty.
+ * At startup the windows are rebuilt by summing each player's buckets in the
+ * current periods. Buckets older than the oldest current period are deleted, so
+ * storage only grows with the players active in the last month.
+ */
+final class XpWindows {
+
+    /**
+     * A calendar period. Weeks start on Monday.
+     */
+    enum Window {
+        DAY, WEEK, MONTH;
+
+        /**
+         * Returns the epoch day the period containing {@code date} starts on.
+         */
+        long getPeriodStart(LocalDate date) {
+            return switch (this) {
+                case DAY -> date.toEpochDay();
+                case WEEK -> date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).toEpochDay();
+                case MONTH -> date.withDayOfMonth(1).toEpochDay();
+            };
+        }
+
+        String getKey() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        /**
+         * Returns the window named {@code key} ("day", "week" or "month"), or null.
+         */
+        static Window fromKey(String key) {
+            for (Window window : values()) {
+                if (window.getKey().equalsIgnoreCase(key)) return window;
+            }
+            return null;
+        }
+    }
+
+    private record Bucket(UUID uuid, long day) {
+    }
+
+    /**
+     * The totals of one window's current period.
+     */
+    private static final class Ranking {
+        private final long periodStart;
+        private final Map<UUID, Long> totals = new HashMap<>();
+        private final LeaderboardIndex index = new LeaderboardIndex();
+
+        private Ranking(long periodStart) {
+            this.periodStart = periodStart;
+        }
+
+        private void add(UUID uuid, String name, long gained) {
+            index.update(uuid, name, 0, totals.merge(uuid, gained, Xp::add));
+        }
+    }
+
+    private final PlayerLevels plugin;
+    private volatile ZoneId zone = ZoneId.systemDefault();
+    private volatile boolean loaded;
+
+    // Guarded by this
+    private final Ranking[] rankings = new Ranking[Window.values().length];
+    private Map<Bucket, Long> pending = new HashMap<>();
+
+    // Only touched on the database writer
+    private long expiredBefore;
+
+    XpWindows(PlayerLevels plugin) {
+        this.plugin = plugin;
+        LocalDate today = LocalDate.now(zone);
+        for (Window window : Window.values()) {
+            rankings[window.ordinal()] = new Ranking(window.getPeriodStart(today));
+        }
+    }
+
+    /**
+     * Applies {@code settings.windows}.
+     */
+    void configure(ConfigurationSection config) {
+        String timezone = config != null ? config.getString("timezone", "") : "";
+        try {
+            zone = timezone == null || timezone.isBlank() ? ZoneId.systemDefault() : ZoneId.of(timezone);
+        } catch (DateTimeException e) {
+            plugin.getLogger().warning("Unknown time zone '" + timezone + "' in settings.windows, using the server's");
+            zone = ZoneId.systemDefault();
+        }
+    }
+
+    /**
+     * Saves the gained XP every {@code flushTicks}. With network mode on, the
+     * windows are also reloaded every {@code reloadTicks} to take in the gains of
+     * the other servers.
+     */
+    void start(long flushTicks, long reloadTicks) {
+        Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, () -> {
+            StorageExecutor storage = plugin.getStorage();
+            if (storage != null) {
+                flush(storage);
+            }
+        }, flushTicks, flushTicks);
+
+        Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, () -> {
+            StorageExecutor storage = plugin.getStorage();
+            if (storage != null && loaded && plugin.getNetworkSync() != null) {
+                load(storage);
+            }
+        }, reloadTicks, reloadTicks);
+    }
+
+    /**
+     * Counts XP the player gained by playing. Losses are ignored.
+     */
+    synchronized void record(UUID uuid, String name, long gained) {
+        if (gained <= 0) return;
+
+        LocalDate today = LocalDate.now(zone);
+        pending.merge(new Bucket(uuid, today.toEpochDay()), gained, Xp::add);
+        for (Window window : Window.values()) {
+            current(window, today).add(uuid, name, gained);
+        }
+    }
+
+    // Starts the window over once its period has ended
+    private Ranking current(Window window, LocalDate today) {
+        long periodStart = window.getPeriodStart(today);
+        Ranking ranking = rankings[window.ordinal()];
+        if (ranking.periodStart != periodStart) {
+            ranking = new Ranking(periodStart);
+            rankings[window.ordinal()] = ranking;
+        }
+        return ranking;
+    }
+
+    private synchronized LeaderboardIndex getIndex(Window window) {
+        return current(window, LocalDate.now(zone)).index;
+    }
+
+    List<LeaderboardIndex.Entry> getRange(Window window, int offset, int count) {
+        return getIndex(window).getRange(offset, count);
+    }
+
+    LeaderboardIndex.Entry getByRank(Window window, int rank) {
+        return getIndex(window).getByRank(rank);
+    }
+
+    /**
+     * Returns the player's 1-based rank in the window, or 0 if they gained nothing.
+     */
+    int getRank(Window window, UUID uuid) {
+        return getIndex(window).getRank(uuid);
+    }
+
+    int size(Window window) {
+        return getIndex(window).size();
+    }
+
+    /**
+     * Returns the milli-XP the player gained in the window's current period.
+     */
+    synchronized long getXp(Window window, UUID uuid) {
+        return current(window, LocalDate.now(zone)).totals.getOrDefault(uuid, 0L);
+    }
+
+    /**
+     * Returns whether the stored buckets have been read since startup.
+     */
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Adds the gained XP to the stored day buckets and deletes expired buckets.
+     */
+    CompletableFuture<Void> flush(StorageExecutor storage) {
+        return storage.<Void>write("flush_buckets", pooled -> {
+            writePending(pooled, storage.isSqlite());
+            expire(pooled);
+            return null;
+        }).whenComplete((ignored, error) -> {
+            if (error != null) {
+                plugin.getLogger().log(Level.SEVERE, "Error saving gained XP", error.getCause());
+            }
+        });
+    }
+
+    private void writePending(StorageExecutor.PooledConnection pooled, boolean sqlite) throws SQLException {
+        Map<Bucket, Long> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) return;
+            batch = pending;
+            pending = new HashMap<>();
+        }
+
+        Connection connection = pooled.getConnection();
+        PreparedStatement statement = pooled.prepare(sqlite
+                ? "INSERT INTO xp_buckets (uuid, day, xp) VALUES (?, ?, ?) ON CONFLICT(uuid, day) DO UPDATE SET xp = xp + excluded.xp"
+                : "INSERT INTO xp_buckets (uuid, day, xp) VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE xp = xp + VALUES(xp)");
+        connection.setAutoCommit(false);
+        try {
+            for (Map.Entry<Bucket, Long> entry : batch.entrySet()) {
+                statement.setBytes(1, StorageExecutor.toBytes(entry.getKey().uuid()));
+                statement.setLong(2, entry.getKey().day());
+                statement.setLong(3, entry.getValue());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            statement.clearBatch();
+            connection.rollback();
+
+            // Kept for the next flush
+            synchronized (this) {
+                batch.forEach((bucket, gained) -> pending.merge(bucket, gained, Xp::add));
+            }
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private void expire(StorageExecutor.PooledConnection pooled) throws SQLException {
+        long oldest = getOldestPeriodStart(LocalDate.now(zone));
+        if (oldest <= expiredBefore) return;
+
+        PreparedStatement statement = pooled.prepare("DELETE FROM xp_buckets WHERE day < ?");
+        statement.setLong(1, oldest);
+        statement.executeUpdate();
+        expiredBefore = oldest;
+    }
+
+    /**
+     * Rebuilds every window from the stored buckets plus the gains not saved yet.
+     * Runs on the writer, so no flush can land between the read and the swap.
+     * Player names come from the lifetime leaderboard, so call this once it is loaded.
+     */
+    CompletableFuture<Integer> load(StorageExecutor storage) {
+        long start = System.nanoTime();
+        return storage.write("load_buckets", pooled -> {
+            LocalDate today = LocalDate.now(zone);
+            Ranking[] loading = new Ranking[rankings.length];
+            for (Window window : Window.values()) {
+                loading[window.ordinal()] = new Ranking(window.getPeriodStart(today));
+            }
+
+            PreparedStatement statement = pooled.prepare("SELECT uuid, day, xp FROM xp_buckets WHERE day >= ?");
+            statement.setLong(1, getOldestPeriodStart(today));
+            int buckets = 0;
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    addTotal(loading, StorageExecutor.toUuid(resultSet.getBytes("uuid")), resultSet.getLong("day"),
+                            resultSet.getLong("xp"));
+                    buckets++;
+                }
+            }
+
+            synchronized (this) {
+                pending.forEach((bucket, gained) -> addTotal(loading, bucket.uuid(), bucket.day(), gained));
+                for (Ranking ranking : loading) {
+                    ranking.totals.forEach((uuid, total) -> ranking.index.update(uuid, getName(uuid), 0, total));
+                }
+                System.arraycopy(loading, 0, rankings, 0, rankings.length);
+            }
+            loaded = true;
+            return buckets;
+        }).whenComplete((buckets, error) -> {
+            if (error != null) {
+                plugin.getLogger().log(Level.SEVERE, "Error loading gained XP", error.getCause());
+            } else if (plugin.getNetworkSync() == null) {
+                plugin.getLogger().info("Loaded " + buckets + " XP buckets for the day, week and month leaderboards in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+            }
+        });
+    }
+
+    private static void addTotal(Ranking[] target, UUID uuid, long day, long gained) {
+        for (Ranking ranking : target) {
+            if (day >= ranking.periodStart) {
+                ranking.totals.merge(uuid, gained, Xp::add);
+            }
+        }
+    }
+
+    private String getName(UUID uuid) {
+        String name = plugin.getLeaderboard().getName(uuid);
+        return name != null ? name : uuid.toString().substring(0, 8);
+    }
+
+    private static long getOldestPeriodStart(LocalDate today) {
+        long oldest = Long.MAX_VALUE;
+        for (Window window : Window.values()) {
+            oldest = Math.min(oldest, window.getPeriodStart(today));
+        }
+        return oldest;
+    }
+}
@@ -0,0 +1,283 @@
+package com.flow258.playerLevels;
+
+import org.bukkit.Material;
+import org.bukkit.Statistic;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.PlayerStatisticIncrementEvent;
+import org.bukkit.plugin.InvalidDescriptionException;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.mockbukkit.mockbukkit.ServerMock;
+import org.mockbukkit.mockbukkit.entity.PlayerMock;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Soak test: runs the plugin on a MockBukkit server under simulated load and
+ * fails if the main thread, the save queue or the heap degrade.
+ * <p>
+ * Thousands of fake players join and quit at random, gain statistics through
+ * {@link PlayerStatisticIncrementEvent}s, poll scoreboard placeholders once a
+ * second and spam {@code /leveltop}. Ticks are paced like a real server, so the
+ * background saves get the same wall-clock time per tick as in production.
+ * <p>
+ * Tick time counts only the plugin: the scheduler tick, the statistic listener,
+ * placeholder requests and commands. Picking players, updating their mock
+ * statistics, joins and quits, which include MockBukkit's own player setup, are
+ * left out.
+ * <p>
+ * {@code mvn verify} runs a one-minute soak and {@code mvn -P soak verify} the full
+ * one; every setting is a {@code soak.*} system property, see the pom.
+ */
+public final class LoadSoak {
+
+    private static final String[] PLACEHOLDERS = {"level", "xp", "progress_bar", "rank", "xp_day", "top_1_name"};
+    private static final String[] TOP_COMMANDS = {"", "page 3", "week", "25"};
+
+    private final int knownPlayers = Integer.getInteger("soak.players", 2000);
+    private final int onlineTarget = Integer.getInteger("soak.online", 500);
+    private final int ticks = Integer.getInteger("soak.ticks", 1200);
+    private final int tickMillis = Integer.getInteger("soak.tick-millis", 50);
+    private final int eventsPerTick = Integer.getInteger("soak.events-per-tick", 200);
+    private final int commandsPerTick = Integer.getInteger("soak.commands-per-tick", 2);
+    private final double maxTickP99Millis = doubleProperty("soak.max-tick-p99-ms", 25);
+    private final double maxTickMeanMillis = doubleProperty("soak.max-tick-mean-ms", 5);
+    private final int maxPendingSaves = Integer.getInteger("soak.max-pending-saves", 5000);
+    private final double minSavesPerSecond = doubleProperty("soak.min-saves-per-second", 25);
+    private final double maxHeapGrowthMb = doubleProperty("soak.max-heap-growth-mb", 128);
+
+    private final Random random = new Random(Long.getLong("soak.seed", 1L));
+    private final List<PlayerMock> online = new ArrayList<>();
+    private final List<PlayerMock> offline = new ArrayList<>();
+    private final LatencyHistogram tickTime = new LatencyHistogram();
+
+    private ServerMock server;
+    private PlayerLevels plugin;
+    private PlayerLevelExpansion expansion;
+    private StatisticRules rules;
+    private int maxPending;
+    // Time spent in the plugin during the current tick's simulated activity
+    private long pluginNanos;
+
+    public static void main(String[] args) throws Exception {
+        int failures;
+        try {
+            failures = new LoadSoak().run();
+        } finally {
+            MockBukkit.unmock();
+        }
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private int run() throws Exception {
+        server = MockBukkit.mock();
+        plugin = MockBukkit.loadWith(PlayerLevels.class, loadDescription());
+        expansion = new PlayerLevelExpansion(plugin);
+        rules = plugin.getStatisticRules();
+
+        // The database connects in the background
+        while (!plugin.isReady()) {
+            server.getScheduler().performOneTick();
+            Thread.sleep(tickMillis);
+        }
+
+        for (int i = 0; i < knownPlayers; i++) {
+            PlayerMock player = server.addPlayer("Soak" + i);
+            online.add(player);
+        }
+        while (online.size() > onlineTarget) {
+            quit(online.get(random.nextInt(online.size())));
+        }
+
+        log("Running " + ticks + " ticks with " + knownPlayers + " players, " + onlineTarget + " online");
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        int warmupTicks = ticks / 5;
+        long baselineHeap = 0;
+        long measureStart = 0;
+        long savedAtStart = 0;
+
+        for (int tick = 0; tick < ticks; tick++) {
+            if (tick == warmupTicks) {
+                baselineHeap = usedHeapAfterGc(memory);
+                measureStart = System.nanoTime();
+                savedAtStart = plugin.getWriteBehindQueue().getTotalFlushed();
+            }
+
+            long tickStart = System.nanoTime();
+            pluginNanos = 0;
+            simulateTick(tick);
+            long start = System.nanoTime();
+            server.getScheduler().performOneTick();
+            if (tick >= warmupTicks) {
+                tickTime.record(pluginNanos + System.nanoTime() - start);
+            }
+
+            maxPending = Math.max(maxPending, plugin.getWriteBehindQueue().getPendingCount());
+            if (tick % 1200 == 0) {
+                log("Tick " + tick + ": p99 " + millis(tickTime.getPercentileNanos(99)) + ", "
+                        + plugin.getWriteBehindQueue().getPendingCount() + " pending saves");
+            }
+
+            long sleep = TimeUnit.MILLISECONDS.toNanos(tickMillis) - (System.nanoTime() - tickStart);
+            if (sleep > 0) {
+                TimeUnit.NANOSECONDS.sleep(sleep);
+            }
+        }
+
+        double seconds = (System.nanoTime() - measureStart) / 1_000_000_000.0;
+        double savesPerSecond = (plugin.getWriteBehindQueue().getTotalFlushed() - savedAtStart) / seconds;
+        double heapGrowthMb = (usedHeapAfterGc(memory) - baselineHeap) / (1024.0 * 1024.0);
+        return report(savesPerSecond, heapGrowthMb);
+    }
+
+    private void simulateTick(int tick) {
+        // Joins and quits keep the online count around the target
+        if (random.nextInt(4) == 0 && !online.isEmpty()) {
+            quit(online.get(random.nextInt(online.size())));
+        }
+        if (online.size() < onlineTarget && !offline.isEmpty()) {
+            join(offline.get(random.nextInt(offline.size())));
+        }
+
+        for (int i = 0; i < eventsPerTick && !online.isEmpty(); i++) {
+            incrementStatistic(online.get(random.nextInt(online.size())));
+        }
+
+        // Scoreboards refresh every second, spread over the ticks
+        long start = System.nanoTime();
+        for (int i = tick % 20; i < online.size(); i += 20) {
+            PlayerMock player = online.get(i);
+            for (String placeholder : PLACEHOLDERS) {
+                expansion.onPlaceholderRequest(player, placeholder);
+            }
+        }
+        pluginNanos += System.nanoTime() - start;
+
+        for (int i = 0; i < commandsPerTick && !online.isEmpty(); i++) {
+            PlayerMock player = online.get(random.nextInt(online.size()));
+            String arguments = TOP_COMMANDS[random.nextInt(TOP_COMMANDS.length)];
+            start = System.nanoTime();
+            player.performCommand(arguments.isEmpty() ? "leveltop" : "leveltop " + arguments);
+            pluginNanos += System.nanoTime() - start;
+            drainMessages(player);
+        }
+    }
+
+    private void incrementStatistic(PlayerMock player) {
+        int read = random.nextInt(rules.getReadCount());
+        Statistic statistic = rules.getStatistic(read);
+        Material material = rules.getMaterial(read);
+        EntityType entityType = rules.getEntityType(read);
+        int amount = 1 + random.nextInt(3);
+
+        PlayerStatisticIncrementEvent event;
+        if (material != null) {
+            int previous = player.getStatistic(statistic, material);
+            player.setStatistic(statistic, material, previous + amount);
+            event = new PlayerStatisticIncrementEvent(player, statistic, previous, previous + amount, material);
+        } else if (entityType != null) {
+            int previous = player.getStatistic(statistic, entityType);
+            player.setStatistic(statistic, entityType, previous + amount);
+            event = new PlayerStatisticIncrementEvent(player, statistic, previous, previous + amount, entityType);
+        } else if (statistic.getType() == Statistic.Type.UNTYPED) {
+            int previous = player.getStatistic(statistic);
+            player.setStatistic(statistic, previous + amount);
+            event = new PlayerStatisticIncrementEvent(player, statistic, previous, previous + amount);
+        } else {
+            return;
+        }
+        long start = System.nanoTime();
+        server.getPluginManager().callEvent(event);
+        pluginNanos += System.nanoTime() - start;
+    }
+
+    private void join(PlayerMock player) {
+        offline.remove(player);
+        online.add(player);
+        player.reconnect();
+    }
+
+    private void quit(PlayerMock player) {
+        online.remove(player);
+        offline.add(player);
+        player.disconnect();
+        drainMessages(player);
+    }
+
+    // MockBukkit keeps every message sent to a player, which would look like a leak
+    private static void drainMessages(Player player) {
+        PlayerMock mock = (PlayerMock) player;
+        while (mock.nextMessage() != null) {
+            // Discard
+        }
+    }
+
+    private int report(double savesPerSecond, double heapGrowthMb) {
+        Metrics metrics = plugin.getMetrics();
+        log("Main thread per tick: mean " + millis((long) tickTime.getMeanNanos()) + ", p50 "
+                + millis(tickTime.getPercentileNanos(50)) + ", p99 " + millis(tickTime.getPercentileNanos(99))
+                + ", max " + millis(tickTime.getMaxNanos()));
+        log("Recompute slice: p99 " + millis(metrics.recomputeSlice.getPercentileNanos(99)) + ", placeholder render p99 "
+                + millis(metrics.placeholderRender.getPercentileNanos(99)));
+        log("Saves: " + String.format(Locale.ROOT, "%.0f", savesPerSecond) + " players/sec, peak "
+                + maxPending + " pending, " + plugin.getRewardDispatcher().getPendingPayouts() + " rewards pending");
+        log("Heap growth after warmup: " + String.format(Locale.ROOT, "%.1f", heapGrowthMb) + " MB");
+
+        int failures = 0;
+        failures += check("tick p99", tickTime.getPercentileNanos(99) / 1_000_000.0, maxTickP99Millis, true);
+        failures += check("tick mean", tickTime.getMeanNanos() / 1_000_000.0, maxTickMeanMillis, true);
+        failures += check("pending saves", maxPending, maxPendingSaves, true);
+        failures += check("saves per second", savesPerSecond, minSavesPerSecond, false);
+        failures += check("heap growth MB", heapGrowthMb, maxHeapGrowthMb, true);
+        log(failures == 0 ? "Soak test passed" : "Soak test failed: " + failures + " thresholds exceeded");
+        return failures;
+    }
+
+    private static int check(String name, double value, double limit, boolean maximum) {
+        boolean failed = maximum ? value > limit : value < limit;
+        if (failed) {
+            log("FAILED " + name + ": " + String.format(Locale.ROOT, "%.2f", value) + (maximum ? " > " : " < ") + limit);
+        }
+        return failed ? 1 : 0;
+    }
+
+    // The plugin depends on PlaceholderAPI, which can't run on MockBukkit; placeholders are polled directly
+    private static PluginDescriptionFile loadDescription() throws IOException, InvalidDescriptionException {
+        try (InputStream in = LoadSoak.class.getClassLoader().getResourceAsStream("plugin.yml")) {
+            if (in == null) throw new IOException("plugin.yml is not on the classpath");
+            String yaml = new String(in.readAllBytes(), StandardCharsets.UTF_8).replaceAll("(?m)^depend:.*$", "");
+            return new PluginDescriptionFile(new StringReader(yaml));
+        }
+    }
+
+    private static long usedHeapAfterGc(MemoryMXBean memory) {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static double doubleProperty(String name, double defaultValue) {
+        String value = System.getProperty(name);
+        return value != null && !value.isBlank() ? Double.parseDouble(value) : defaultValue;
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.2fms", nanos / 1_000_000.0);
+    }
+
+    private static void log(String message) {
+        System.out.println("[soak] " + message);
+    }
+}
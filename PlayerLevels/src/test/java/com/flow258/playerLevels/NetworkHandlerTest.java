@@ -0,0 +1,159 @@
+package com.flow258.playerLevels;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.InvalidDescriptionException;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.mockbukkit.mockbukkit.ServerMock;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The plugin's own network mode handler on a MockBukkit server, against a second
+ * server sharing its SQLite file. Changes found on database threads must reach
+ * cached players only on the main thread, and must not replace unsaved changes.
+ */
+class NetworkHandlerTest {
+
+    private static final Logger LOGGER = Logger.getLogger("NetworkHandlerTest");
+
+    private ServerMock server;
+    private PlayerLevels plugin;
+    private StorageExecutor otherStorage;
+    private NetworkSync otherSync;
+
+    @BeforeEach
+    void startServers() throws Exception {
+        server = MockBukkit.mock();
+        plugin = MockBukkit.loadWith(PlayerLevels.class, loadDescription());
+        while (!plugin.isReady()) {
+            server.getScheduler().performOneTick();
+            Thread.sleep(10);
+        }
+
+        YamlConfiguration network = new YamlConfiguration();
+        network.set("server-id", "server-a");
+        plugin.startNetworkSync(plugin.getStorage(), network);
+
+        String file = plugin.getDataFolder().toPath().resolve("playerlevels.db").toString();
+        otherStorage = StorageExecutor.open(LOGGER, "sqlite", file, null);
+        otherSync = NetworkSync.open(otherStorage, "server-b", TimeUnit.HOURS.toMillis(1), new NetworkSync.ChangeHandler() {
+            @Override
+            public void remoteChange(NetworkSync.Row stored) {
+            }
+
+            @Override
+            public void conflict(PlayerLevels.PlayerData local, NetworkSync.Row stored) {
+            }
+        }, LOGGER, new Metrics(null));
+    }
+
+    @AfterEach
+    void stopServers() {
+        otherStorage.shutdown(5, TimeUnit.SECONDS);
+        MockBukkit.unmock();
+    }
+
+    @Test
+    void remoteChangeIsAppliedOnTheMainThreadAndKeepsUnsavedChanges() {
+        PlayerLevels.PlayerData saved = saveHere(UUID.randomUUID(), "Alex", Xp.of(100));
+        PlayerLevels.PlayerData dirty = saveHere(UUID.randomUUID(), "Sam", Xp.of(100));
+
+        // An increment here that is not saved yet
+        dirty.setXp(Xp.of(150), plugin.calculateLevelMillis(Xp.of(150)));
+        plugin.getWriteBehindQueue().markDirty(dirty);
+
+        saveOnOtherServer(saved.getUuid(), "Alex", Xp.of(300), 1);
+        saveOnOtherServer(dirty.getUuid(), "Sam", Xp.of(300), 1);
+        assertEquals(2, plugin.getStorage().read("poll", plugin.getNetworkSync()::poll).join());
+
+        // Found on a reader thread, nothing changed before the next tick
+        assertEquals(Xp.of(100), saved.getXpMillis());
+        assertEquals(1, saved.getVersion());
+
+        server.getScheduler().performOneTick();
+        assertEquals(Xp.of(300), saved.getXpMillis());
+        assertEquals(plugin.calculateLevelMillis(Xp.of(300)), saved.getLevel());
+        assertEquals(2, saved.getVersion());
+        assertEquals(Xp.of(300), plugin.getLeaderboard().get(saved.getUuid()).getXp());
+
+        assertEquals(Xp.of(150), dirty.getXpMillis());
+        assertEquals(1, dirty.getVersion());
+        assertTrue(dirty.isDirty());
+    }
+
+    @Test
+    void conflictIsResolvedOnTheMainThread() {
+        PlayerLevels.PlayerData local = saveHere(UUID.randomUUID(), "Alex", Xp.of(100));
+        saveOnOtherServer(local.getUuid(), "Alex", Xp.of(300), 1);
+
+        // Saved here on top of version 1, which the other server has moved past
+        local.setXp(Xp.of(150), plugin.calculateLevelMillis(Xp.of(150)));
+        plugin.getWriteBehindQueue().markDirty(local);
+        plugin.getWriteBehindQueue().flush().join();
+        assertEquals(Xp.of(150), local.getXpMillis());
+
+        // The player is not online here, so the stored row wins
+        server.getScheduler().performOneTick();
+        assertEquals(Xp.of(300), local.getXpMillis());
+        assertEquals(2, local.getVersion());
+    }
+
+    // Caches the player and saves them through the write-behind queue, at version 1
+    private PlayerLevels.PlayerData saveHere(UUID uuid, String name, long xp) {
+        PlayerLevels.PlayerData data = new PlayerLevels.PlayerData(uuid, name, xp, plugin.calculateLevelMillis(xp));
+        plugin.getPlayerCache().put(data);
+        plugin.getWriteBehindQueue().markDirty(data);
+        plugin.getWriteBehindQueue().flush().join();
+        assertEquals(1, data.getVersion());
+        return data;
+    }
+
+    // Saves like the other server's WriteBehindQueue, on top of the given version
+    private void saveOnOtherServer(UUID uuid, String name, long xp, long version) {
+        PlayerLevels.PlayerData data = new PlayerLevels.PlayerData(uuid, name, xp, plugin.calculateLevelMillis(xp));
+        data.setVersion(version);
+        List<PlayerLevels.PlayerData> batch = List.of(data);
+        long[] versions = otherStorage.write("save", pooled -> {
+            Connection connection = pooled.getConnection();
+            long[] written;
+            connection.setAutoCommit(false);
+            try {
+                written = otherSync.write(pooled, true, batch);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+            otherSync.committed(pooled, batch, written);
+            return written;
+        }).join();
+        assertEquals(version + 1, versions[0]);
+    }
+
+    // The plugin depends on PlaceholderAPI, which can't run on MockBukkit
+    private static PluginDescriptionFile loadDescription() throws IOException, InvalidDescriptionException {
+        try (InputStream in = NetworkHandlerTest.class.getClassLoader().getResourceAsStream("plugin.yml")) {
+            if (in == null) throw new IOException("plugin.yml is not on the classpath");
+            String yaml = new String(in.readAllBytes(), StandardCharsets.UTF_8).replaceAll("(?m)^depend:.*$", "");
+            return new PluginDescriptionFile(new StringReader(yaml));
+        }
+    }
+}
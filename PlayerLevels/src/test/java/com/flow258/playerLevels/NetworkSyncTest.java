@@ -0,0 +1,214 @@
+package com.flow258.playerLevels;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Two servers, each with its own {@link StorageExecutor} and {@link NetworkSync},
+ * sharing one SQLite file the way network mode shares a MySQL database.
+ */
+class NetworkSyncTest {
+
+    private static final Logger LOGGER = Logger.getLogger("NetworkSyncTest");
+
+    /**
+     * Records what the sync hands to the plugin.
+     */
+    private static final class RecordingHandler implements NetworkSync.ChangeHandler {
+        final List<NetworkSync.Row> remoteChanges = new CopyOnWriteArrayList<>();
+        final List<PlayerLevels.PlayerData> conflicts = new CopyOnWriteArrayList<>();
+        final List<NetworkSync.Row> conflictRows = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void remoteChange(NetworkSync.Row stored) {
+            remoteChanges.add(stored);
+        }
+
+        @Override
+        public void conflict(PlayerLevels.PlayerData local, NetworkSync.Row stored) {
+            conflicts.add(local);
+            conflictRows.add(stored);
+        }
+    }
+
+    @TempDir
+    Path folder;
+
+    private StorageExecutor storageA;
+    private StorageExecutor storageB;
+    private RecordingHandler handlerA;
+    private RecordingHandler handlerB;
+    private Metrics metricsA;
+    private NetworkSync syncA;
+    private NetworkSync syncB;
+
+    @BeforeEach
+    void openServers() throws SQLException {
+        String file = folder.resolve("shared.db").toString();
+        storageA = StorageExecutor.open(LOGGER, "sqlite", file, null);
+        storageB = StorageExecutor.open(LOGGER, "sqlite", file, null);
+        storageA.write("migrate", pooled -> SchemaMigrations.migrate(pooled, true, LOGGER)).join();
+
+        handlerA = new RecordingHandler();
+        handlerB = new RecordingHandler();
+        metricsA = new Metrics(null);
+        syncA = NetworkSync.open(storageA, "server-a", TimeUnit.HOURS.toMillis(1), handlerA, LOGGER, metricsA);
+        syncB = NetworkSync.open(storageB, "server-b", TimeUnit.HOURS.toMillis(1), handlerB, LOGGER, new Metrics(null));
+    }
+
+    @AfterEach
+    void closeServers() {
+        storageA.shutdown(5, TimeUnit.SECONDS);
+        storageB.shutdown(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void staleVersionConflictsAndHandsTheStoredRowToTheHandler() {
+        UUID uuid = UUID.randomUUID();
+        PlayerLevels.PlayerData onA = new PlayerLevels.PlayerData(uuid, "Alex", Xp.of(100), 2);
+        assertEquals(1, save(storageA, syncA, onA)[0]);
+        assertEquals(1, onA.getVersion());
+
+        // Server B loads the player at version 1 and saves first
+        PlayerLevels.PlayerData onB = new PlayerLevels.PlayerData(uuid, "Alex", Xp.of(200), 3);
+        onB.setVersion(storageB.read("load", pooled -> syncB.readVersion(pooled, uuid)).join());
+        assertEquals(2, save(storageB, syncB, onB)[0]);
+
+        // A still holds version 1, so its save must not overwrite B's
+        onA.setXp(Xp.of(300), 4);
+        assertEquals(-1, save(storageA, syncA, onA)[0]);
+
+        assertEquals(1, handlerA.conflicts.size());
+        assertSame(onA, handlerA.conflicts.get(0));
+        NetworkSync.Row stored = handlerA.conflictRows.get(0);
+        assertNotNull(stored);
+        assertEquals(Xp.of(200), stored.xp());
+        assertEquals(2, stored.version());
+        assertEquals(1, metricsA.writeConflicts.sum());
+        assertEquals(Xp.of(200), storageA.read("check", pooled -> readXp(pooled, uuid)).join());
+        assertTrue(handlerB.conflicts.isEmpty());
+    }
+
+    @Test
+    void pollSkipsChangesOfItsOwnServer() {
+        UUID savedByA = UUID.randomUUID();
+        UUID savedByB = UUID.randomUUID();
+        save(storageA, syncA, new PlayerLevels.PlayerData(savedByA, "Alex", Xp.of(100), 2));
+        save(storageB, syncB, new PlayerLevels.PlayerData(savedByB, "Sam", Xp.of(50), 1));
+
+        assertEquals(1, storageA.read("poll", syncA::poll).join());
+        assertEquals(List.of(savedByB), handlerA.remoteChanges.stream().map(NetworkSync.Row::uuid).toList());
+        assertEquals(1, storageB.read("poll", syncB::poll).join());
+        assertEquals(List.of(savedByA), handlerB.remoteChanges.stream().map(NetworkSync.Row::uuid).toList());
+
+        // Both entries are behind the cursor now
+        assertEquals(0, storageA.read("poll", syncA::poll).join());
+        assertEquals(1, handlerA.remoteChanges.size());
+    }
+
+    @Test
+    void cursorWaitsForAMissingIdAndDeliversEachChangeOnce() {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        long cursor = syncA.getCursor();
+        insertPlayer(first, "Alex");
+        insertPlayer(second, "Sam");
+
+        // Id cursor + 1 belongs to a transaction that has not committed yet
+        logChange(cursor + 2, second);
+        assertEquals(1, storageA.read("poll", syncA::poll).join());
+        assertEquals(cursor, syncA.getCursor());
+
+        logChange(cursor + 1, first);
+        assertEquals(1, storageA.read("poll", syncA::poll).join());
+        assertEquals(cursor + 2, syncA.getCursor());
+        assertEquals(List.of(second, first), handlerA.remoteChanges.stream().map(NetworkSync.Row::uuid).toList());
+    }
+
+    @Test
+    void cursorMovesPastAGapThatOutlivesTheTimeout() throws InterruptedException {
+        UUID uuid = UUID.randomUUID();
+        syncA.setGapTimeout(1, TimeUnit.MILLISECONDS);
+        long cursor = syncA.getCursor();
+        insertPlayer(uuid, "Alex");
+
+        // Id cursor + 1 was rolled back and never shows up
+        logChange(cursor + 2, uuid);
+        assertEquals(1, storageA.read("poll", syncA::poll).join());
+        assertEquals(cursor, syncA.getCursor());
+
+        Thread.sleep(20);
+        assertEquals(0, storageA.read("poll", syncA::poll).join());
+        assertEquals(cursor + 2, syncA.getCursor());
+        assertEquals(1, handlerA.remoteChanges.size());
+    }
+
+    // Saves like WriteBehindQueue does in network mode
+    private static long[] save(StorageExecutor storage, NetworkSync sync, PlayerLevels.PlayerData data) {
+        List<PlayerLevels.PlayerData> batch = List.of(data);
+        return storage.write("save", pooled -> {
+            Connection connection = pooled.getConnection();
+            long[] versions;
+            connection.setAutoCommit(false);
+            try {
+                versions = sync.write(pooled, true, batch);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+            sync.committed(pooled, batch, versions);
+            return versions;
+        }).join();
+    }
+
+    private void insertPlayer(UUID uuid, String name) {
+        storageB.write("insert_player", pooled -> {
+            PreparedStatement statement = pooled.prepare(
+                    "INSERT INTO player_levels (uuid, name, xp, level, version) VALUES (?, ?, 0, 1, 1)");
+            statement.setBytes(1, StorageExecutor.toBytes(uuid));
+            statement.setString(2, name);
+            return statement.executeUpdate();
+        }).join();
+    }
+
+    // An entry of server B with a chosen id, as if ids became visible out of order
+    private void logChange(long id, UUID uuid) {
+        storageB.write("log_change", pooled -> {
+            PreparedStatement statement = pooled.prepare(
+                    "INSERT INTO level_changes (id, uuid, server_id, changed_at) VALUES (?, ?, 'server-b', ?)");
+            statement.setLong(1, id);
+            statement.setBytes(2, StorageExecutor.toBytes(uuid));
+            statement.setLong(3, System.currentTimeMillis());
+            return statement.executeUpdate();
+        }).join();
+    }
+
+    private static long readXp(StorageExecutor.PooledConnection pooled, UUID uuid) throws SQLException {
+        PreparedStatement statement = pooled.prepare("SELECT xp FROM player_levels WHERE uuid = ?");
+        statement.setBytes(1, StorageExecutor.toBytes(uuid));
+        try (ResultSet resultSet = statement.executeQuery()) {
+            return resultSet.next() ? resultSet.getLong("xp") : -1;
+        }
+    }
+}
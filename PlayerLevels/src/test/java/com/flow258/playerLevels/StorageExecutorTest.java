@@ -0,0 +1,78 @@
+package com.flow258.playerLevels;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Connections that die between units of work, and work submitted after shutdown.
+ */
+class StorageExecutorTest {
+
+    private static final Logger LOGGER = Logger.getLogger("StorageExecutorTest");
+
+    @TempDir
+    Path folder;
+
+    private StorageExecutor storage;
+
+    @BeforeEach
+    void open() throws SQLException {
+        storage = StorageExecutor.open(LOGGER, "sqlite", folder.resolve("storage.db").toString(), null);
+        storage.write("create", pooled -> pooled.prepare("CREATE TABLE counter (value INTEGER)").executeUpdate()).join();
+        storage.write("insert", pooled -> pooled.prepare("INSERT INTO counter VALUES (1)").executeUpdate()).join();
+    }
+
+    @AfterEach
+    void close() {
+        storage.shutdown(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void closedConnectionIsReopenedWithNewStatements() {
+        String sql = "SELECT value FROM counter";
+        PreparedStatement before = storage.write("select", pooled -> pooled.prepare(sql)).join();
+
+        // Like a server dropping the connection between two units of work
+        storage.write("close", pooled -> {
+            pooled.getConnection().close();
+            return null;
+        }).join();
+
+        PreparedStatement after = storage.write("select", pooled -> pooled.prepare(sql)).join();
+        assertNotSame(before, after);
+        assertEquals(1, storage.write("select", pooled -> {
+            try (ResultSet result = pooled.prepare(sql).executeQuery()) {
+                assertTrue(result.next());
+                return result.getInt(1);
+            }
+        }).join());
+    }
+
+    @Test
+    void workAfterShutdownFailsItsFuture() {
+        storage.shutdown(5, TimeUnit.SECONDS);
+
+        CompletableFuture<Integer> read = storage.read("late", pooled -> 1);
+        CompletableFuture<Integer> write = storage.write("late", pooled -> 1);
+
+        assertInstanceOf(SQLException.class, assertThrows(CompletionException.class, read::join).getCause());
+        assertInstanceOf(SQLException.class, assertThrows(CompletionException.class, write::join).getCause());
+    }
+}